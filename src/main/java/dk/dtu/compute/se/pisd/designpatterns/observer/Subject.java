@@ -22,6 +22,7 @@
 package dk.dtu.compute.se.pisd.designpatterns.observer;
 
 import java.util.Collections;
+import java.util.LinkedHashSet;
 import java.util.Set;
 import java.util.WeakHashMap;
 
@@ -35,9 +36,19 @@ import java.util.WeakHashMap;
  *
  */
 public abstract class Subject {
+
+	/**
+	 * The subjects which changed while notifications are deferred on
+	 * the respective thread (see {@link #deferNotifications(Runnable)}),
+	 * in the order of their last change; null if notifications are
+	 * not deferred.
+	 */
+	private static final ThreadLocal<Set<Subject>> deferred = new ThreadLocal<>();
 	
-	private Set<Observer> observers =
-			Collections.newSetFromMap(new WeakHashMap<>());
+	private Set<Observer> observers = null;
+	// Note: The set of observers is created only when the first observer
+	// registers, since most subjects (e.g. the spaces of large boards)
+	// never have observers.
 	// Note: In JavaFX, the views do not have a way to know when they are
 	// removed from the window, and therefore cannot always unregister
 	// themselves from subjects they observe before the views become garbage.
@@ -52,6 +63,9 @@ public abstract class Subject {
 	 * @param observer the observer who registers
 	 */
 	final public void attach(Observer observer) {
+		if (observers == null) {
+			observers = Collections.newSetFromMap(new WeakHashMap<>());
+		}
 		observers.add(observer);
 	}
 	
@@ -62,7 +76,9 @@ public abstract class Subject {
 	 * @param observer the observer who unregisters
 	 */
 	final public void detach(Observer observer) {
-		observers.remove(observer);
+		if (observers != null) {
+			observers.remove(observer);
+		}
 	}
 	
 	/**
@@ -71,9 +87,55 @@ public abstract class Subject {
 	 * relevant for the observer).
 	 */
 	final protected void notifyChange() {
+		if (observers == null) {
+			return;
+		}
+		Set<Subject> changed = deferred.get();
+		if (changed != null) {
+			// moved to the end, so that subjects are notified in the
+			// order of their last change
+			changed.remove(this);
+			changed.add(this);
+			return;
+		}
+		notifyObservers();
+	}
+
+	private void notifyObservers() {
+		if (observers == null) {
+			return;
+		}
 		for (Observer observer: observers) {
 			observer.update(this);
 		}
 	}
 
+	/**
+	 * Runs the given code with the notifications of all subjects changed by
+	 * this thread being deferred: while the code runs, observers are not
+	 * notified at all. Afterwards, every subject which changed is notified
+	 * exactly once, so that the observers (in particular views) update only
+	 * once for all the changes. If this method is called again while the
+	 * code runs, the notifications are deferred until the outermost call
+	 * finishes.
+	 *
+	 * @param runnable the code to run
+	 */
+	public static void deferNotifications(Runnable runnable) {
+		if (deferred.get() != null) {
+			runnable.run();
+			return;
+		}
+		Set<Subject> changed = new LinkedHashSet<>();
+		deferred.set(changed);
+		try {
+			runnable.run();
+		} finally {
+			deferred.remove();
+			for (Subject subject: changed) {
+				subject.notifyObservers();
+			}
+		}
+	}
+
 }
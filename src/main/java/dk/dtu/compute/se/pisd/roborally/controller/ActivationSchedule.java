@@ -0,0 +1,146 @@
+/*
+ *  This file is part of the initial project provided for the
+ *  course "Project in Software Development (02362)" held at
+ *  DTU Compute at the Technical University of Denmark.
+ *
+ *  Copyright (C) 2019, 2020: Ekkart Kindler, ekki@dtu.dk
+ *
+ *  This software is free software; you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation; version 2 of the License.
+ *
+ *  This project is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this project; if not, write to the Free Software
+ *  Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ *
+ */
+package dk.dtu.compute.se.pisd.roborally.controller;
+
+import dk.dtu.compute.se.pisd.roborally.model.Board;
+import dk.dtu.compute.se.pisd.roborally.model.ConveyorBelt;
+import dk.dtu.compute.se.pisd.roborally.model.Phase;
+import dk.dtu.compute.se.pisd.roborally.model.Player;
+import dk.dtu.compute.se.pisd.roborally.model.Space;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The schedule for activating the field actions of a board at the end of
+ * each register. The schedule is computed once, when the game controller is
+ * created: for every {@link ActivationStage}, it has the spaces with field
+ * actions of this stage. At the end of a register, the stages are activated
+ * in their order; in every stage, only the spaces of this stage on which
+ * there actually is a robot are looked at. The conveyor belts are activated
+ * for all robots at the same time by the {@link ConveyorBeltGraph}.
+ *
+ * New kinds of field actions are added to the schedule by their
+ * {@link FieldAction#getActivationStage() activation stage}.
+ */
+public class ActivationSchedule {
+
+    private final Board board;
+
+    private final ConveyorBeltGraph conveyorBelts;
+
+    private final Map<ActivationStage, Map<Space, FieldAction[]>> stages = new EnumMap<>(ActivationStage.class);
+
+    /**
+     * Computes the activation schedule of the given board.
+     *
+     * @param board the board
+     */
+    public ActivationSchedule(@NotNull Board board) {
+        this.board = board;
+        this.conveyorBelts = new ConveyorBeltGraph(board);
+        for (ActivationStage stage : ActivationStage.values()) {
+            stages.put(stage, new HashMap<>());
+        }
+
+        Map<ActivationStage, List<FieldAction>> spaceActions = new EnumMap<>(ActivationStage.class);
+        for (int x = 0; x < board.width; x++) {
+            for (int y = 0; y < board.height; y++) {
+                Space space = board.getSpace(x, y);
+                if (space.getActions().isEmpty()) {
+                    continue;
+                }
+                spaceActions.clear();
+                for (FieldAction action : space.getActions()) {
+                    if (action instanceof ConveyorBelt) {
+                        // conveyor belts are activated by the conveyor belt graph
+                        continue;
+                    }
+                    spaceActions.computeIfAbsent(action.getActivationStage(), stage -> new ArrayList<>()).add(action);
+                }
+                for (Map.Entry<ActivationStage, List<FieldAction>> entry : spaceActions.entrySet()) {
+                    stages.get(entry.getKey()).put(space, entry.getValue().toArray(new FieldAction[0]));
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the number of spaces with field actions of the given stage,
+     * not counting conveyor belts.
+     *
+     * @param stage the stage
+     * @return the number of spaces
+     */
+    public int getSpaces(@NotNull ActivationStage stage) {
+        return stages.get(stage).size();
+    }
+
+    /**
+     * Returns the conveyor belts of the board.
+     *
+     * @return the conveyor belt graph
+     */
+    public ConveyorBeltGraph getConveyorBelts() {
+        return conveyorBelts;
+    }
+
+    /**
+     * Activates the field actions of all stages for the robots on the board;
+     * every stage starts a new beat of the movement timeline of the game
+     * controller. The activation stops when the game is finished by a field
+     * action.
+     *
+     * @param gameController the game controller of the game
+     */
+    public void activate(@NotNull GameController gameController) {
+        MovementTimeline timeline = gameController.getMovementTimeline();
+        for (ActivationStage stage : ActivationStage.values()) {
+            timeline.nextBeat();
+            if (stage == ActivationStage.CONVEYOR_BELTS) {
+                conveyorBelts.activate(timeline, gameController.getUndoHistory());
+            }
+            Map<Space, FieldAction[]> spaces = stages.get(stage);
+            if (spaces.isEmpty()) {
+                continue;
+            }
+            for (int i = 0; i < board.getPlayersNumber(); i++) {
+                Player player = board.getPlayer(i);
+                Space space = player.getSpace();
+                FieldAction[] actions = space != null ? spaces.get(space) : null;
+                if (actions != null) {
+                    for (FieldAction action : actions) {
+                        action.doAction(gameController, space);
+                        if (board.getPhase() == Phase.FINISHED) {
+                            return;
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+}
@@ -24,6 +24,15 @@ package dk.dtu.compute.se.pisd.roborally.controller;
 import dk.dtu.compute.se.pisd.designpatterns.observer.Observer;
 import dk.dtu.compute.se.pisd.designpatterns.observer.Subject;
 import dk.dtu.compute.se.pisd.roborally.RoboRally;
+import dk.dtu.compute.se.pisd.roborally.dal.IRepository;
+import dk.dtu.compute.se.pisd.roborally.dal.RepositoryAccess;
+import dk.dtu.compute.se.pisd.roborally.fileaccess.GameArchive;
+import dk.dtu.compute.se.pisd.roborally.fileaccess.GameSnapshot;
+import dk.dtu.compute.se.pisd.roborally.fileaccess.ReplayRecorder;
+import dk.dtu.compute.se.pisd.roborally.fileaccess.SaveCatalog;
+import dk.dtu.compute.se.pisd.roborally.fileaccess.SaveFile;
+import dk.dtu.compute.se.pisd.roborally.fileaccess.SaveSlots;
+import dk.dtu.compute.se.pisd.roborally.fileaccess.WriteAheadLog;
 import dk.dtu.compute.se.pisd.roborally.model.Board;
 import dk.dtu.compute.se.pisd.roborally.model.Player;
 import javafx.application.Platform;
@@ -33,10 +42,17 @@ import javafx.scene.control.ButtonType;
 import javafx.scene.control.ChoiceDialog;
 import org.jetbrains.annotations.NotNull;
 
-import java.io.*;
-import java.util.Arrays;
-import java.util.List;
-import java.util.Optional;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.text.DateFormat;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
 
 
 
@@ -58,8 +74,92 @@ public class AppController implements Observer {
      */
     final private List<String> PLAYER_COLORS = Arrays.asList("red", "green", "blue", "orange", "grey", "magenta");
 
+    /**
+     * The prefix of the names of the files to which games are saved; every
+     * new game gets its own save file (see {@link #newSavePath()}), which
+     * matches {@link SaveCatalog#SAVE_FILE_PATTERN}.
+     */
+    final private static String SAVE_FILE_PREFIX = "roborally_save-";
+
+    final private static String SAVE_FILE_SUFFIX = ".dat";
+
+    /**
+     * The file with the save slots.
+     */
+    final private static String SLOT_FILE = "roborally_slots.dat";
+
+    /**
+     * The file with the slots for saving the game automatically.
+     */
+    final private static String AUTOSAVE_FILE = "roborally_autosave.dat";
+
+    /**
+     * The number of save slots.
+     */
+    final public static int NO_SLOTS = 8;
+
+    /**
+     * The number of slots for saving the game automatically.
+     */
+    final private static int NO_AUTOSAVE_SLOTS = 4;
+
+    /**
+     * The slot number for selecting the game which was saved automatically last.
+     */
+    final public static int LATEST_SLOT = -1;
+
+    /**
+     * The directory with the archive of finished games.
+     */
+    final private static String ARCHIVE_DIRECTORY = "roborally_archive";
+
+    /**
+     * The directory with the replays of new games.
+     */
+    final private static String REPLAY_DIRECTORY = "roborally_replays";
+
+    /**
+     * The time to wait for saves still being written when exiting.
+     */
+    final private static int SAVE_TIMEOUT_SECONDS = 10;
+
     final private RoboRally roboRally;
 
+    /**
+     * The executor encoding and writing saved games (and listing them)
+     * in the background, so that the JavaFX application thread is not blocked.
+     */
+    final private ExecutorService saveExecutor = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "RoboRally save");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private SaveSlots saveSlots;
+
+    /**
+     * The log of the changes of the current game since it was saved last.
+     */
+    private WriteAheadLog log;
+
+    private GameArchive archive;
+
+    /**
+     * The recorder of the replay of the current game, if it is a new game.
+     */
+    private ReplayRecorder replay;
+
+    /**
+     * The file to which the current game is saved.
+     */
+    private Path savePath;
+
+    /**
+     * The catalog of the saved games in the working directory, which is
+     * created and refreshed by the save executor only.
+     */
+    private SaveCatalog saveCatalog;
+
     private GameController gameController;
 
     /**
@@ -75,6 +175,8 @@ public class AppController implements Observer {
     public AppController(@NotNull RoboRally roboRally) {
 
         this.roboRally = roboRally;
+        // the boards are loaded in the background while the menu is shown
+        boardFactory.preload();
     }
 
     /**
@@ -83,7 +185,7 @@ public class AppController implements Observer {
      * @return The name of the selected board.
      */
     private String showBoardSelectionDialog() {
-        List<String> boardOptions = BoardFactory.getInstance().getAvailableBoardNames();
+        List<String> boardOptions = boardFactory.getAvailableBoardNames();
 
         ChoiceDialog<String> dialog = new ChoiceDialog<>(boardOptions.get(0), boardOptions);
         dialog.setTitle("Board Selection");
@@ -100,8 +202,8 @@ public class AppController implements Observer {
      */
     public void newGame() {
         String selectedBoard = showBoardSelectionDialog();
-        Board board = boardFactory.createBoard(selectedBoard);
-
+        // the board is created while the user selects the number of players
+        CompletableFuture<Board> futureBoard = boardFactory.createBoardAsync(selectedBoard);
 
         ChoiceDialog<Integer> dialog = new ChoiceDialog<>(PLAYER_NUMBER_OPTIONS.getFirst(), PLAYER_NUMBER_OPTIONS);
         dialog.setTitle("Player number");
@@ -110,6 +212,7 @@ public class AppController implements Observer {
 
         if (result.isPresent()) {
             int numberOfPlayers = result.get();
+            Board board = futureBoard.join();
 
             gameController = new GameController(board);
 
@@ -127,6 +230,11 @@ public class AppController implements Observer {
             }
 
             gameController.startProgrammingPhase();
+            startLog(gameController, newSavePath(), 0);
+            startAutosave(gameController);
+            startJournal(gameController);
+            startReplay(gameController);
+            archiveWhenFinished(gameController);
 
 
             //Platform.runLater(() ->
@@ -137,50 +245,395 @@ public class AppController implements Observer {
 
     /**
      * Saves the current game state to a file.
-     * The saved game data includes the board and its state.
+     * The saved game data includes the board and its state. Since all
+     * changes are logged anyway, this only compacts the log of the game.
+     * A snapshot of the game is taken right away, but it is encoded and
+     * written in the background; the outcome is reported when done.
+     *
+     * @see SaveFile
+     * @see WriteAheadLog
      */
 
     public void saveGame() {
+        CompletableFuture<Void> save;
+        if (log != null) {
+            save = log.compact();
+        } else {
+            GameSnapshot snapshot = GameSnapshot.of(gameController.board);
+            long timestamp = System.currentTimeMillis();
+            Path savePath = this.savePath;
+            save = CompletableFuture.runAsync(() -> {
+                try {
+                    SaveFile.save(snapshot, timestamp, savePath);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }, saveExecutor);
+        }
+        save.whenComplete((result, error) -> Platform.runLater(() -> {
+            if (error == null) {
+                System.out.println("RoboRally game saved successfully.");
+            } else {
+                Throwable cause = error instanceof CompletionException ? error.getCause() : error;
+                System.err.println("Error saving RoboRally game: " + cause.getMessage());
+                Alert alert = new Alert(AlertType.ERROR);
+                alert.setTitle("Saving failed");
+                alert.setContentText("The game could not be saved: " + cause.getMessage());
+                alert.show();
+            }
+        }));
+    }
 
-        try (ObjectOutputStream out = new ObjectOutputStream(new FileOutputStream("roborally_save.dat"))) {
-            out.writeObject(gameController.board);
-            System.out.println("RoboRally game saved successfully.");
-        } catch (IOException e) {
-            System.err.println("Error saving RoboRally game: " + e.getMessage());
+    /**
+     * Undoes the last operation of the current game, if there is one.
+     *
+     * @see GameController#undo()
+     */
+    public void undo() {
+        if (gameController != null) {
+            gameController.undo();
+        }
+    }
+
+    /**
+     * Redoes the last operation of the current game which was undone.
+     *
+     * @see GameController#redo()
+     */
+    public void redo() {
+        if (gameController != null) {
+            gameController.redo();
         }
     }
 
     /**
      * Loads a previously saved game state from a file.
-     * The game data is deserialized and used to restore the game state.
-     * If loading fails, a new game is started.
+     * The game data is decoded and used to restore the game state,
+     * and the changes logged after saving are replayed on it.
+     * If loading fails, a new game is started. The saved games are
+     * listed in the background; the dialog for selecting one of them
+     * is shown when they are listed.
      */
     public void loadGame() {
         // Implemented by Liam
 
 
         // Implemented by Liam
-        try (ObjectInputStream in = new ObjectInputStream(new FileInputStream("roborally_save.dat"))) {
-            Board loadedBoard = (Board) in.readObject(); // Deserialize the Board object
-            gameController = new GameController(loadedBoard); // Initialize GameController with the loaded board
-            System.out.println("RoboRally game loaded successfully.");
+        listSavedGames().thenAccept(entries -> Platform.runLater(() -> {
+            Path path = showSaveSelectionDialog(entries);
+            if (path != null) {
+                loadGame(path);
+            }
 
-            // Update UI with the loaded game
-            roboRally.createBoardView(gameController);
+            // If loading failed and gameController is null, start a new game as a fallback
+            if (gameController == null) {
+                System.out.println("Loading failed, starting a new game...");
+                newGame();
+            }
+        }));
+    }
+
+    /**
+     * Refreshes the catalog of saved games in the working directory in the
+     * background. Since this is done by the save executor, the saves still
+     * being written are listed too.
+     *
+     * @return the future with the saved games, the newest first
+     */
+    private CompletableFuture<List<SaveCatalog.Entry>> listSavedGames() {
+        return CompletableFuture.supplyAsync(() -> {
+            if (saveCatalog == null) {
+                saveCatalog = new SaveCatalog(Path.of("."));
+            }
+            try {
+                return saveCatalog.refresh();
+            } catch (IOException e) {
+                System.err.println("Error listing saved RoboRally games: " + e.getMessage());
+                return saveCatalog.getEntries();
+            }
+        }, saveExecutor);
+    }
+
+    /**
+     * Displays a dialog for selecting one of the saved games.
+     *
+     * @param entries the saved games, as listed from the catalog
+     * @return the save file of the selected game, or null if there is none
+     */
+    private Path showSaveSelectionDialog(List<SaveCatalog.Entry> entries) {
+        if (entries.isEmpty()) {
+            return null;
+        } else if (entries.size() == 1) {
+            return Path.of(entries.getFirst().fileName);
+        }
+
+        Map<String, SaveCatalog.Entry> options = new LinkedHashMap<>();
+        DateFormat dateFormat = DateFormat.getDateTimeInstance(DateFormat.SHORT, DateFormat.SHORT);
+        for (SaveCatalog.Entry entry : entries) {
+            SaveFile.Header header = entry.header;
+            options.put(dateFormat.format(new Date(header.timestamp)) + ": " + header.boardName + ", " +
+                    header.playerCount + " players, " + header.phase + " (" + entry.fileName + ")", entry);
+        }
+        List<String> optionNames = new ArrayList<>(options.keySet());
+        ChoiceDialog<String> dialog = new ChoiceDialog<>(optionNames.getFirst(), optionNames);
+        dialog.setTitle("Load game");
+        dialog.setHeaderText("Select a saved game");
+        Optional<String> result = dialog.showAndWait();
+        return result.map(option -> Path.of(options.get(option).fileName)).orElse(null);
+    }
+
+    /**
+     * Loads the game from the given save file and replays the changes
+     * logged after saving on it.
+     *
+     * @param path the save file
+     */
+    private void loadGame(Path path) {
+        try {
+            long timestamp = SaveFile.readHeader(path).timestamp;
+            Board loadedBoard = SaveFile.load(path).restore();
+            if (loadedBoard != null) {
+                int changes = WriteAheadLog.replay(loadedBoard, path, timestamp);
+                if (changes > 0) {
+                    System.out.println("Recovered " + changes + " changes made after the game was saved.");
+                }
+                gameController = new GameController(loadedBoard); // Initialize GameController with the loaded board
+                startLog(gameController, path, timestamp);
+                startAutosave(gameController);
+                startJournal(gameController);
+                archiveWhenFinished(gameController);
+                System.out.println("RoboRally game loaded successfully.");
+
+                // Update UI with the loaded game
+                roboRally.createBoardView(gameController);
+            } else {
+                System.err.println("Error loading RoboRally game: the board of the game is not available.");
+            }
 
         } catch (IOException e) {
             System.err.println("Error loading RoboRally game (IO issue): " + e.getMessage());
-        } catch (ClassNotFoundException e) {
-            System.err.println("Error loading RoboRally game (Class issue): " + e.getMessage());
+        }
+    }
+
+    /**
+     * Saves the current game state to the given save slot.
+     *
+     * @param slot the slot, between 0 and {@link #NO_SLOTS} - 1
+     * @see SaveSlots
+     */
+    public void saveGame(int slot) {
+        try {
+            getSaveSlots().save(gameController.board, slot);
+            System.out.println("RoboRally game saved to slot " + slot + ".");
+        } catch (IOException e) {
+            System.err.println("Error saving RoboRally game: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Loads the game saved in the given save slot.
+     * If loading fails, a new game is started.
+     *
+     * @param slot the slot, or {@link #LATEST_SLOT} for the game which
+     *             was saved automatically last
+     */
+    public void loadGame(int slot) {
+        try {
+            SaveSlots slots = getSaveSlots();
+            GameSnapshot snapshot = slot == LATEST_SLOT ? slots.loadAutosave() : slots.load(slot);
+            Board loadedBoard = snapshot != null ? snapshot.restore() : null;
+            if (loadedBoard != null) {
+                gameController = new GameController(loadedBoard);
+                // the game continues in a save file of its own, so that
+                // the save file of another game is not overwritten
+                startLog(gameController, newSavePath(), 0);
+                startAutosave(gameController);
+                startJournal(gameController);
+                archiveWhenFinished(gameController);
+                System.out.println("RoboRally game loaded from slot " + slot + ".");
+                roboRally.createBoardView(gameController);
+            } else {
+                System.err.println("Error loading RoboRally game: no valid game in slot " + slot + ".");
+            }
+        } catch (IOException e) {
+            System.err.println("Error loading RoboRally game (IO issue): " + e.getMessage());
         }
 
-        // If loading failed and gameController is null, start a new game as a fallback
         if (gameController == null) {
             System.out.println("Loading failed, starting a new game...");
             newGame();
         }
     }
 
+    private SaveSlots getSaveSlots() throws IOException {
+        if (saveSlots == null) {
+            saveSlots = new SaveSlots(Path.of(SLOT_FILE), NO_SLOTS, Path.of(AUTOSAVE_FILE), NO_AUTOSAVE_SLOTS);
+        }
+        return saveSlots;
+    }
+
+    /**
+     * Returns a new save file for a game, whose name is made unique by the
+     * current time.
+     *
+     * @return the path of the new save file
+     */
+    private Path newSavePath() {
+        long time = System.currentTimeMillis();
+        Path path = Path.of(SAVE_FILE_PREFIX + time + SAVE_FILE_SUFFIX);
+        while (Files.exists(path)) {
+            path = Path.of(SAVE_FILE_PREFIX + ++time + SAVE_FILE_SUFFIX);
+        }
+        return path;
+    }
+
+    /**
+     * Saves the game automatically after every register, to the slots
+     * for automatic saves, which are separate from the save slots.
+     *
+     * @param gameController the controller of the game
+     */
+    private void startAutosave(GameController gameController) {
+        gameController.addGameListener(new GameListener() {
+            @Override
+            public void registerFinished(int register) {
+                try {
+                    getSaveSlots().autosave(gameController.board);
+                } catch (IOException e) {
+                    System.err.println("Error saving RoboRally game automatically: " + e.getMessage());
+                }
+            }
+        });
+    }
+
+    /**
+     * Saves the game and starts logging its changes, so that no changes
+     * are lost in case the program crashes. The log and the replay of the
+     * previous game (if any) are closed.
+     *
+     * @param gameController the controller of the game
+     * @param savePath the file to which the game is saved
+     * @param previous the time of saving of the save file, if the game was
+     *                 loaded from it, or 0
+     */
+    private void startLog(GameController gameController, Path savePath, long previous) {
+        stopLog();
+        stopReplay();
+        this.savePath = savePath;
+        try {
+            log = WriteAheadLog.start(gameController.board, savePath, previous, saveExecutor);
+            gameController.addGameListener(log);
+        } catch (IOException e) {
+            System.err.println("Error starting the log of the RoboRally game: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Stores the game in the database and attaches the journal of the game
+     * to its controller, if a database is configured (see
+     * {@link RepositoryAccess#isConfigured()}). A game which is not in the
+     * database yet is created there first. The journal is written only in
+     * the persistence mode <code>JOURNAL</code>. Connecting to the database
+     * (and migrating its schema on first use) is done by the save executor
+     * in the background; the journal is attached in the JavaFX application
+     * thread when it is open, unless another game was started meanwhile.
+     *
+     * @param gameController the controller of the game
+     */
+    private void startJournal(GameController gameController) {
+        if (!RepositoryAccess.isConfigured()) {
+            return;
+        }
+        CompletableFuture.supplyAsync(() -> {
+            IRepository repository = RepositoryAccess.getRepository();
+            Board board = gameController.board;
+            if (board.getGameId() == null && !repository.createGameInDB(board)) {
+                System.err.println("Error storing the RoboRally game in the database.");
+                return null;
+            }
+            return repository.openJournal(board);
+        }, saveExecutor).whenComplete((journal, exception) -> {
+            if (exception != null) {
+                // the connector reports a database which is not reachable this way
+                Throwable cause = exception instanceof CompletionException ? exception.getCause() : exception;
+                System.err.println("Error connecting to the RoboRally database: " + cause.getMessage());
+            } else if (journal != null) {
+                Platform.runLater(() -> {
+                    if (this.gameController == gameController) {
+                        gameController.addGameListener(journal);
+                    }
+                });
+            }
+        });
+    }
+
+    /**
+     * Starts recording the replay of a new game. The replay of the previous
+     * game (if any) is finished.
+     *
+     * @param gameController the controller of the game
+     */
+    private void startReplay(GameController gameController) {
+        stopReplay();
+        try {
+            Path directory = Path.of(REPLAY_DIRECTORY);
+            Files.createDirectories(directory);
+            replay = ReplayRecorder.start(gameController,
+                    directory.resolve("game-" + System.currentTimeMillis() + ReplayRecorder.SUFFIX));
+        } catch (IOException e) {
+            System.err.println("Error starting the replay of the RoboRally game: " + e.getMessage());
+        }
+    }
+
+    private void stopReplay() {
+        if (replay != null) {
+            try {
+                replay.close();
+            } catch (IOException e) {
+                System.err.println("Error closing the replay of the RoboRally game: " + e.getMessage());
+            }
+            replay = null;
+        }
+    }
+
+    /**
+     * Appends the game to the archive of finished games when it is won.
+     * The snapshot of the game is taken right away, but compressing and
+     * writing it is done by the save executor in the background (which is
+     * the only thread accessing the archive).
+     *
+     * @param gameController the controller of the game
+     */
+    private void archiveWhenFinished(GameController gameController) {
+        gameController.addGameListener(new GameListener() {
+            @Override
+            public void gameFinished(Player winner) {
+                GameSnapshot snapshot = GameSnapshot.of(gameController.board);
+                saveExecutor.execute(() -> {
+                    try {
+                        if (archive == null) {
+                            archive = new GameArchive(Path.of(ARCHIVE_DIRECTORY));
+                        }
+                        archive.append(snapshot);
+                    } catch (IOException e) {
+                        System.err.println("Error archiving RoboRally game: " + e.getMessage());
+                    }
+                });
+            }
+        });
+    }
+
+    private void stopLog() {
+        if (log != null) {
+            try {
+                log.close();
+            } catch (IOException e) {
+                System.err.println("Error closing the log of the RoboRally game: " + e.getMessage());
+            }
+            log = null;
+        }
+    }
+
     /**
      * Stop playing the current game, giving the user the option to save
      * the game or to cancel stopping the game. The method returns true
@@ -199,6 +652,8 @@ public class AppController implements Observer {
 
             // here we save the game (without asking the user).
             saveGame();
+            stopLog();
+            stopReplay();
 
             gameController = null;
             roboRally.createBoardView(null);
@@ -226,6 +681,27 @@ public class AppController implements Observer {
         // If the user did not cancel, the RoboRally application will exit
         // after the option to save the game
         if (gameController == null || stopGame()) {
+            // the saves still being written are waited for by a thread of
+            // its own, which keeps the program running until they are done
+            saveExecutor.shutdown();
+            SaveSlots saveSlots = this.saveSlots;
+            Thread shutdown = new Thread(() -> {
+                try {
+                    if (!saveExecutor.awaitTermination(SAVE_TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+                        System.err.println("Saving RoboRally game did not finish in time.");
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                if (saveSlots != null) {
+                    try {
+                        saveSlots.close();
+                    } catch (IOException e) {
+                        System.err.println("Error closing the save slots: " + e.getMessage());
+                    }
+                }
+            }, "RoboRally shutdown");
+            shutdown.start();
             Platform.exit();
         }
     }
@@ -1,11 +1,16 @@
 package dk.dtu.compute.se.pisd.roborally.controller;
 
+import dk.dtu.compute.se.pisd.roborally.fileaccess.LoadBoard;
 import dk.dtu.compute.se.pisd.roborally.model.Board;
 import dk.dtu.compute.se.pisd.roborally.model.CheckPoint;
 import dk.dtu.compute.se.pisd.roborally.model.Heading;
 import dk.dtu.compute.se.pisd.roborally.model.Space;
 
+import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 /**
  * A factory for creating boards. The factory itself is implemented as a singleton.
@@ -19,6 +24,17 @@ public class BoardFactory {
      */
     private static BoardFactory instance = null;
 
+    /**
+     * The names of the boards which are created in code by this factory.
+     */
+    private static final List<String> BUILT_IN_BOARDS = List.of("Board1", "Board2");
+
+    /**
+     * The names of the boards discovered in the board resources, or null
+     * if they were not discovered yet.
+     */
+    private volatile List<String> discoveredBoards = null;
+
     /**
      * Constructor for BoardFactory. It is private in order to make the factory a singleton.
      */
@@ -26,11 +42,13 @@ public class BoardFactory {
     }
 
     /**
-     * Returns the singleton instance of BoardFactory.
+     * Returns the singleton instance of BoardFactory. The method is
+     * synchronized, since boards are also created and preloaded in
+     * background threads (see {@link #preload()}).
      *
      * @return the single instance of the BoardFactory
      */
-    public static BoardFactory getInstance() {
+    public static synchronized BoardFactory getInstance() {
         if (instance == null) {
             instance = new BoardFactory();
         }
@@ -39,17 +57,64 @@ public class BoardFactory {
 
     /**
      * Returns a list of available board names that can be selected to create a board.
-     * The method defines the available board names as "Board1" and "Board2".
+     * These are the boards "Board1" and "Board2", which are created in code, followed
+     * by the boards discovered in the board resources (see {@link LoadBoard#getBoardNames()}).
+     * The board resources are discovered only once.
      *
      * @return a list of available board names.
      */
     public List<String> getAvailableBoardNames() {
+        List<String> result = new ArrayList<>(BUILT_IN_BOARDS);
+        for (String name : getDiscoveredBoards()) {
+            if (!result.contains(name)) {
+                result.add(name);
+            }
+        }
+        return result;
+    }
 
-        return List.of("Board1", "Board2");
+    private List<String> getDiscoveredBoards() {
+        List<String> boards = discoveredBoards;
+        if (boards == null) {
+            boards = List.copyOf(LoadBoard.getBoardNames());
+            discoveredBoards = boards;
+        }
+        return boards;
     }
 
     /**
-     * Creates a new board based on the given name.
+     * Discovers the boards in the board resources and loads them in the
+     * background, each on its own virtual thread, so that creating one of
+     * these boards later on does not need to wait for its board file being
+     * read. The returned future completes when all boards are loaded.
+     *
+     * @return the future completing when all boards are loaded
+     */
+    public CompletableFuture<Void> preload() {
+        ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+        CompletableFuture<Void> result = CompletableFuture.supplyAsync(this::getDiscoveredBoards, executor).
+                thenCompose(boards -> CompletableFuture.allOf(boards.stream().
+                        map(name -> CompletableFuture.runAsync(() -> LoadBoard.preloadBoard(name), executor)).
+                        toArray(CompletableFuture[]::new)));
+        result.whenComplete((r, e) -> executor.shutdown());
+        return result;
+    }
+
+    /**
+     * Creates a new board based on the given name in the background, so
+     * that the caller can go on (for example with showing dialogs) while
+     * the board is created.
+     *
+     * @param name the given board name
+     * @return the future of the new board
+     */
+    public CompletableFuture<Board> createBoardAsync(String name) {
+        return CompletableFuture.supplyAsync(() -> createBoard(name), Thread::startVirtualThread);
+    }
+
+    /**
+     * Creates a new board based on the given name. Boards which are not
+     * created in code are loaded from the board resources.
      *
      * @param name the given board name
      * @return the new board corresponding to that name
@@ -64,8 +129,14 @@ public class BoardFactory {
             board = new Board(14, 8, "Board2");
             setupBoard2(board);
         } else {
-            board = new Board(8, 8, "<none>");
-            setupBoard1(board);
+            board = null;
+            if (name != null && getDiscoveredBoards().contains(name)) {
+                board = LoadBoard.loadBoardResource(name);
+            }
+            if (board == null) {
+                board = new Board(8, 8, "<none>");
+                setupBoard1(board);
+            }
         }
         board.updateBoard();
         return board;
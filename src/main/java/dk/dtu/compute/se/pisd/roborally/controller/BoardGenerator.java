@@ -0,0 +1,212 @@
+/*
+ *  This file is part of the initial project provided for the
+ *  course "Project in Software Development (02362)" held at
+ *  DTU Compute at the Technical University of Denmark.
+ *
+ *  Copyright (C) 2019, 2020: Ekkart Kindler, ekki@dtu.dk
+ *
+ *  This software is free software; you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation; version 2 of the License.
+ *
+ *  This project is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this project; if not, write to the Free Software
+ *  Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ *
+ */
+package dk.dtu.compute.se.pisd.roborally.controller;
+
+import dk.dtu.compute.se.pisd.roborally.model.Board;
+import dk.dtu.compute.se.pisd.roborally.model.CheckPoint;
+import dk.dtu.compute.se.pisd.roborally.model.ConveyorBelt;
+import dk.dtu.compute.se.pisd.roborally.model.Heading;
+import dk.dtu.compute.se.pisd.roborally.model.Space;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * A generator for boards of arbitrary size, which are generated randomly
+ * from a seed; the same seed and settings always result in the same board.
+ * The generator is meant for stress testing the game and the views with
+ * large boards.
+ *
+ * The generated boards have walls and conveyor belts on a share of the spaces
+ * given by their respective density, and the given number of checkpoints.
+ * The checkpoints are placed such that each checkpoint can be reached from
+ * the previous one (and the first one from the start space in the upper
+ * left corner) by moving over the board, taking walls into account.
+ */
+public class BoardGenerator {
+
+    /**
+     * The maximal width and height of generated boards.
+     */
+    public static final int MAX_SIZE = 1024;
+
+    /**
+     * The minimal width and height of generated boards; every board has
+     * some conveyor belts up to position (7, 7) (see {@link Board}).
+     */
+    public static final int MIN_SIZE = 8;
+
+    private final long seed;
+
+    private double wallDensity = 0.1;
+
+    private double conveyorBeltDensity = 0.05;
+
+    private int checkPoints = 3;
+
+    /**
+     * Creates a generator for boards with the given seed.
+     *
+     * @param seed the seed of the random generator
+     */
+    public BoardGenerator(long seed) {
+        this.seed = seed;
+    }
+
+    /**
+     * Sets the share of spaces with a wall (between 0 and 1).
+     *
+     * @param wallDensity the share of spaces with a wall
+     * @return this generator
+     */
+    public BoardGenerator setWallDensity(double wallDensity) {
+        if (wallDensity < 0 || wallDensity > 1) {
+            throw new IllegalArgumentException("Wall density must be between 0 and 1");
+        }
+        this.wallDensity = wallDensity;
+        return this;
+    }
+
+    /**
+     * Sets the share of spaces with a conveyor belt (between 0 and 1).
+     *
+     * @param conveyorBeltDensity the share of spaces with a conveyor belt
+     * @return this generator
+     */
+    public BoardGenerator setConveyorBeltDensity(double conveyorBeltDensity) {
+        if (conveyorBeltDensity < 0 || conveyorBeltDensity > 1) {
+            throw new IllegalArgumentException("Conveyor belt density must be between 0 and 1");
+        }
+        this.conveyorBeltDensity = conveyorBeltDensity;
+        return this;
+    }
+
+    /**
+     * Sets the number of checkpoints, which are numbered from 1 on.
+     *
+     * @param checkPoints the number of checkpoints
+     * @return this generator
+     */
+    public BoardGenerator setCheckPoints(int checkPoints) {
+        if (checkPoints < 0) {
+            throw new IllegalArgumentException("Number of checkpoints must not be negative");
+        }
+        this.checkPoints = checkPoints;
+        return this;
+    }
+
+    /**
+     * Generates a board.
+     *
+     * @param width the width of the board
+     * @param height the height of the board
+     * @param name the name of the board
+     * @return the generated board
+     * @throws IllegalStateException if the checkpoints could not be placed
+     *         reachably, which can happen only for very high wall densities
+     */
+    public Board generate(int width, int height, @NotNull String name) {
+        if (width < MIN_SIZE || height < MIN_SIZE || width > MAX_SIZE || height > MAX_SIZE) {
+            throw new IllegalArgumentException("Board size must be between " + MIN_SIZE + " and " + MAX_SIZE);
+        }
+        Random random = new Random(seed);
+        Board board = new Board(width, height, name);
+        Heading[] headings = Heading.values();
+
+        for (int x = 0; x < width; x++) {
+            for (int y = 0; y < height; y++) {
+                Space space = board.getSpace(x, y);
+                // the lists are changed directly, since adding walls and
+                // actions with the methods of the space is logged
+                if (random.nextDouble() < wallDensity) {
+                    space.getWalls().add(headings[random.nextInt(headings.length)]);
+                }
+                if (space.getActions().isEmpty() && random.nextDouble() < conveyorBeltDensity) {
+                    ConveyorBelt conveyorBelt = new ConveyorBelt();
+                    conveyorBelt.setHeading(headings[random.nextInt(headings.length)]);
+                    space.getActions().add(conveyorBelt);
+                }
+            }
+        }
+
+        int[] distances = new int[width * height];
+        int[] queue = new int[width * height];
+        Space start = board.getSpace(0, 0);
+        for (int number = 1; number <= checkPoints; number++) {
+            int reachable = reachable(board, start, distances, queue);
+            Space target = null;
+            // the candidates are tried in random order, starting at a random
+            // reachable space, so that the choice depends on the seed only
+            int offset = reachable > 1 ? 1 + random.nextInt(reachable - 1) : 0;
+            for (int i = 0; i < reachable - 1 && target == null; i++) {
+                int index = queue[1 + (offset - 1 + i) % (reachable - 1)];
+                Space space = board.getSpace(index % width, index / width);
+                if (!space.hasAction(CheckPoint.class)) {
+                    target = space;
+                }
+            }
+            if (target == null) {
+                throw new IllegalStateException("Checkpoint " + number + " could not be placed reachably on board " + name);
+            }
+            target.getActions().clear();
+            target.getActions().add(new CheckPoint(number));
+            start = target;
+        }
+        return board;
+    }
+
+    /**
+     * Computes all spaces reachable from the given space by a breadth-first
+     * search, moving the same way as robots do (see {@link Board#getNeighbour(Space, Heading)}).
+     *
+     * @param board the board
+     * @param start the start space
+     * @param distances the distances of the spaces from the start space, or -1 if not reachable
+     * @param queue the indices (<code>y * width + x</code>) of the reachable spaces, in the order of their distance
+     * @return the number of reachable spaces, including the start space
+     */
+    static int reachable(Board board, Space start, int[] distances, int[] queue) {
+        Arrays.fill(distances, -1);
+        int width = board.width;
+        int head = 0;
+        int tail = 0;
+        queue[tail++] = start.y * width + start.x;
+        distances[start.y * width + start.x] = 0;
+        while (head < tail) {
+            int index = queue[head++];
+            Space space = board.getSpace(index % width, index / width);
+            for (Heading heading : Heading.values()) {
+                Space neighbour = board.getNeighbour(space, heading);
+                if (neighbour != null) {
+                    int next = neighbour.y * width + neighbour.x;
+                    if (distances[next] < 0) {
+                        distances[next] = distances[index] + 1;
+                        queue[tail++] = next;
+                    }
+                }
+            }
+        }
+        return tail;
+    }
+
+}
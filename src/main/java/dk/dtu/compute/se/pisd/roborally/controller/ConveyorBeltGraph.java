@@ -0,0 +1,293 @@
+/*
+ *  This file is part of the initial project provided for the
+ *  course "Project in Software Development (02362)" held at
+ *  DTU Compute at the Technical University of Denmark.
+ *
+ *  Copyright (C) 2019, 2020: Ekkart Kindler, ekki@dtu.dk
+ *
+ *  This software is free software; you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation; version 2 of the License.
+ *
+ *  This project is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this project; if not, write to the Free Software
+ *  Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ *
+ */
+package dk.dtu.compute.se.pisd.roborally.controller;
+
+import dk.dtu.compute.se.pisd.roborally.model.Board;
+import dk.dtu.compute.se.pisd.roborally.model.ConveyorBelt;
+import dk.dtu.compute.se.pisd.roborally.model.Heading;
+import dk.dtu.compute.se.pisd.roborally.model.Player;
+import dk.dtu.compute.se.pisd.roborally.model.Space;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.Arrays;
+
+/**
+ * The conveyor belts of a board, compiled into a graph: for every space with
+ * a conveyor belt, the graph has the space to which the belt moves a robot
+ * (its successor), whether it is an express belt, and how a robot is turned
+ * when it is moved onto the successor (which is the case if the successor
+ * is a belt turning into another direction). The graph is compiled once,
+ * when the game controller is created.
+ *
+ * When the conveyor belts are activated, all robots on belts are moved at
+ * the same time: first, the robots on express belts are moved by one space,
+ * then the robots on all belts. A robot is not moved, if its belt does not
+ * lead anywhere (for example, because of a wall), if another robot is moved
+ * to the same space, if the robot on the target space is not moved away, or
+ * if the robot on the target space would be moved to its space (robots
+ * cannot swap places). Robots standing in a loop of belts are all moved
+ * around the loop. Moving the robots takes time linear in the number of
+ * robots, independently of the size of the board.
+ */
+public class ConveyorBeltGraph {
+
+    private static final int NONE = -1;
+
+    private final Board board;
+
+    /**
+     * The successors of the spaces, by the index <code>y * width + x</code>
+     * of the space: {@link #NONE} if there is no belt on the space, or the
+     * space itself if the belt does not lead anywhere.
+     */
+    private final int[] successors;
+
+    private final boolean[] express;
+
+    /**
+     * The number of clockwise quarter turns of a robot moved from the belt
+     * onto its successor.
+     */
+    private final byte[] turns;
+
+    /**
+     * The robot (by its number among the robots moved) moved from and to
+     * a space, by the index of the space, or {@link #NONE}. These are
+     * needed only while moving the robots, but allocated once with the
+     * graph; after moving, the entries which were set are reset to
+     * {@link #NONE}, so that moving does not depend on the size of the board.
+     */
+    private final int[] moverAt;
+    private final int[] moverTo;
+
+    /**
+     * Compiles the conveyor belts on the given board into a graph.
+     *
+     * @param board the board
+     */
+    public ConveyorBeltGraph(@NotNull Board board) {
+        this.board = board;
+        int size = board.width * board.height;
+        successors = new int[size];
+        express = new boolean[size];
+        turns = new byte[size];
+        moverAt = new int[size];
+        moverTo = new int[size];
+        Arrays.fill(successors, NONE);
+        Arrays.fill(moverAt, NONE);
+        Arrays.fill(moverTo, NONE);
+
+        for (int x = 0; x < board.width; x++) {
+            for (int y = 0; y < board.height; y++) {
+                Space space = board.getSpace(x, y);
+                ConveyorBelt belt = getConveyorBelt(space);
+                if (belt == null || belt.getHeading() == null) {
+                    continue;
+                }
+                int index = index(space);
+                express[index] = belt.isExpress();
+                Space target = board.getNeighbour(space, belt.getHeading());
+                if (target == null) {
+                    successors[index] = index;
+                    continue;
+                }
+                successors[index] = index(target);
+                ConveyorBelt next = getConveyorBelt(target);
+                if (next != null && next.getHeading() != null &&
+                        next.getHeading() != belt.getHeading() &&
+                        next.getHeading() != belt.getHeading().opposite()) {
+                    turns[index] = (byte) ((next.getHeading().ordinal() - belt.getHeading().ordinal() + 4) % 4);
+                }
+            }
+        }
+    }
+
+    private static ConveyorBelt getConveyorBelt(Space space) {
+        for (FieldAction action : space.getActions()) {
+            if (action instanceof ConveyorBelt) {
+                return (ConveyorBelt) action;
+            }
+        }
+        return null;
+    }
+
+    private int index(Space space) {
+        return space.y * board.width + space.x;
+    }
+
+    /**
+     * Returns whether there is a conveyor belt on the given space.
+     *
+     * @param space the space
+     * @return true if there is a conveyor belt on the space
+     */
+    public boolean isConveyorBelt(@NotNull Space space) {
+        return successors[index(space)] != NONE;
+    }
+
+    /**
+     * Activates all conveyor belts: first, the robots on express belts
+     * are moved, then the robots on all belts.
+     */
+    public void activate() {
+        activate(null, null);
+    }
+
+    /**
+     * Activates all conveyor belts, and records the movements of the
+     * robots in the given timeline, each of the two moves in its own beat,
+     * and in the given undo history.
+     *
+     * @param timeline the timeline, or null if the movements are not recorded
+     * @param history the undo history, or null if the changes are not recorded
+     */
+    public void activate(MovementTimeline timeline, UndoHistory history) {
+        move(true, timeline, history);
+        if (timeline != null) {
+            timeline.nextBeat();
+        }
+        move(false, timeline, history);
+    }
+
+    /**
+     * Moves all robots on belts by one space at the same time.
+     *
+     * @param expressOnly whether only robots on express belts are moved
+     */
+    void move(boolean expressOnly) {
+        move(expressOnly, null, null);
+    }
+
+    private void move(boolean expressOnly, MovementTimeline timeline, UndoHistory history) {
+        int players = board.getPlayersNumber();
+        Player[] movers = new Player[players];
+        int[] from = new int[players];
+        int[] to = new int[players];
+        int count = 0;
+        for (int i = 0; i < players; i++) {
+            Player player = board.getPlayer(i);
+            Space space = player.getSpace();
+            if (space == null) {
+                continue;
+            }
+            int index = index(space);
+            int successor = successors[index];
+            if (successor != NONE && successor != index && (!expressOnly || express[index])) {
+                movers[count] = player;
+                from[count] = index;
+                to[count] = successor;
+                count++;
+            }
+        }
+        if (count == 0) {
+            return;
+        }
+
+        boolean[] stays = new boolean[count];
+        // the robots which stay, but did not block other robots yet; every
+        // robot is pushed at most once, so the stack needs count entries
+        int[] staying = new int[count];
+        int top = 0;
+        for (int k = 0; k < count; k++) {
+            moverAt[from[k]] = k;
+            int other = moverTo[to[k]];
+            if (other == NONE) {
+                moverTo[to[k]] = k;
+            } else {
+                // two robots are moved to the same space: both stay
+                top = stay(other, stays, staying, top);
+                top = stay(k, stays, staying, top);
+            }
+        }
+        for (int k = 0; k < count; k++) {
+            int occupant = moverAt[to[k]];
+            if (occupant == NONE) {
+                Space target = board.getSpace(to[k] % board.width, to[k] / board.width);
+                if (target.getPlayer() != null) {
+                    // the target is occupied by a robot not on a moving belt
+                    top = stay(k, stays, staying, top);
+                }
+            } else if (to[occupant] == from[k]) {
+                // robots cannot swap places
+                top = stay(k, stays, staying, top);
+            }
+        }
+        // a robot staying blocks the robot which would be moved onto its space
+        while (top > 0) {
+            int k = staying[--top];
+            int blocked = moverTo[from[k]];
+            if (blocked != NONE) {
+                top = stay(blocked, stays, staying, top);
+            }
+        }
+        for (int k = 0; k < count; k++) {
+            moverAt[from[k]] = NONE;
+            moverTo[to[k]] = NONE;
+        }
+
+        for (int k = 0; k < count; k++) {
+            if (!stays[k]) {
+                if (history != null) {
+                    history.recordPosition(movers[k], movers[k].getSpace(), null);
+                }
+                movers[k].setSpace(null);
+            }
+        }
+        for (int k = 0; k < count; k++) {
+            if (!stays[k]) {
+                Player player = movers[k];
+                Space target = board.getSpace(to[k] % board.width, to[k] / board.width);
+                player.setSpace(target);
+                Heading oldHeading = player.getHeading();
+                Heading heading = oldHeading;
+                for (int turn = 0; turn < turns[from[k]]; turn++) {
+                    heading = heading.next();
+                }
+                player.setHeading(heading);
+                if (history != null) {
+                    history.recordPosition(player, null, target);
+                    history.recordHeading(player, oldHeading, heading);
+                }
+                if (timeline != null) {
+                    timeline.record(MovementTimeline.Type.BELT, player,
+                            board.getSpace(from[k] % board.width, from[k] / board.width), target,
+                            oldHeading, heading);
+                }
+            }
+        }
+    }
+
+    /**
+     * Marks a robot as staying and pushes it on the stack of staying robots,
+     * unless it was marked already.
+     *
+     * @return the new size of the stack
+     */
+    private static int stay(int k, boolean[] stays, int[] staying, int top) {
+        if (!stays[k]) {
+            stays[k] = true;
+            staying[top++] = k;
+        }
+        return top;
+    }
+
+}
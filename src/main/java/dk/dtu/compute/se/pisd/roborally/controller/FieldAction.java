@@ -44,4 +44,15 @@ public abstract class FieldAction {
      */
     public abstract boolean doAction(GameController gameController, Space space);
 
+    /**
+     * Returns the stage in which this field action is activated at the end of
+     * a register (see {@link ActivationSchedule}). Kinds of field actions which
+     * need to be activated earlier than at the end must override this method.
+     *
+     * @return the activation stage of this field action
+     */
+    public ActivationStage getActivationStage() {
+        return ActivationStage.CHECKPOINTS;
+    }
+
 }
@@ -21,11 +21,14 @@
  */
 package dk.dtu.compute.se.pisd.roborally.controller;
 
+import dk.dtu.compute.se.pisd.designpatterns.observer.Subject;
 import dk.dtu.compute.se.pisd.roborally.model.*;
 import org.jetbrains.annotations.NotNull;
 import dk.dtu.compute.se.pisd.roborally.model.Command;
 
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Random;
 
 
 /**
@@ -43,18 +46,90 @@ public class GameController {
 
     final public Board board;
 
+    private final List<GameListener> listeners = new ArrayList<>();
+
+    /**
+     * The schedule for activating the field actions of the board, which
+     * is computed when the controller is created.
+     */
+    private final ActivationSchedule activationSchedule;
+
+    /**
+     * The movements of the robots in the current register.
+     */
+    private final MovementTimeline timeline = new MovementTimeline();
+
+    /**
+     * The changes made to the game, which can be undone and redone.
+     */
+    private final UndoHistory history;
+
+    /**
+     * The seed of the random number generator dealing the cards, which is
+     * needed for replaying the game.
+     */
+    private final long seed;
+
+    private final Random random;
+
     /**
-     * Constructs a GameController with the specified board.
+     * Constructs a GameController with the specified board, and a random
+     * number generator with a random seed.
      *
      * @param board The game board to be controlled.
      */
     public GameController(@NotNull Board board) {
+        this(board, new Random().nextLong());
+    }
+
+    /**
+     * Constructs a GameController with the specified board, and a random
+     * number generator with the given seed; with the same seed, the same
+     * cards are dealt in every game.
+     *
+     * @param board The game board to be controlled.
+     * @param seed  The seed of the random number generator.
+     */
+    public GameController(@NotNull Board board, long seed) {
         this.board = board;
+        this.seed = seed;
+        this.random = new Random(seed);
+        this.activationSchedule = new ActivationSchedule(board);
+        this.history = new UndoHistory(board);
         System.out.println("GameController initialized with Board: " + board);
 
 
     }
 
+    /**
+     * Adds a listener, which is informed about the progress of the game.
+     *
+     * @param listener the listener
+     */
+    public void addGameListener(@NotNull GameListener listener) {
+        if (!listeners.contains(listener)) {
+            listeners.add(listener);
+        }
+    }
+
+    /**
+     * Returns the seed of the random number generator of this game.
+     *
+     * @return the seed
+     */
+    public long getSeed() {
+        return seed;
+    }
+
+    /**
+     * Removes a listener again.
+     *
+     * @param listener the listener
+     */
+    public void removeGameListener(@NotNull GameListener listener) {
+        listeners.remove(listener);
+    }
+
     /**
      * Moves the game to the next step, switching players and updating the phase if necessary.
      *
@@ -64,19 +139,60 @@ public class GameController {
     private void advanceToNextStep(Player currentPlayer, int step) {
         int nextPlayerNumber = board.getPlayerNumber(currentPlayer) + 1;
         if (nextPlayerNumber < board.getPlayersNumber()) {
-            board.setCurrentPlayer(board.getPlayer(nextPlayerNumber));
+            setCurrentPlayer(board.getPlayer(nextPlayerNumber));
         } else {
+            finishRegister(step);
             step++;
-            if (step < Player.NO_REGISTERS) {
+            if (board.getPhase() == Phase.FINISHED) {
+                return;
+            } else if (step < Player.NO_REGISTERS) {
                 makeProgramFieldsVisible(step);
-                board.setStep(step);
-                board.setCurrentPlayer(board.getPlayer(0));
+                setStep(step);
+                setCurrentPlayer(board.getPlayer(0));
             } else {
                 startProgrammingPhase();
             }
         }
     }
 
+    /**
+     * Finishes a register after it was executed for all players: the
+     * field actions on the spaces of all players are activated according
+     * to the {@link ActivationSchedule} of the board, and the listeners
+     * are informed.
+     *
+     * @param register the number of the register
+     */
+    private void finishRegister(int register) {
+        activationSchedule.activate(this);
+
+        MovementTimeline recorded = timeline.copy();
+        timeline.clear();
+        for (GameListener listener : listeners) {
+            listener.movementsRecorded(register, recorded);
+        }
+
+        for (GameListener listener : listeners) {
+            listener.registerFinished(register);
+        }
+    }
+
+    /**
+     * Finishes the game, since the given player has won it. The game
+     * stays on the board in the phase {@link Phase#FINISHED}, and the
+     * listeners are informed.
+     *
+     * @param winner the player who won the game
+     */
+    public void finishGame(@NotNull Player winner) {
+        if (board.getPhase() != Phase.FINISHED) {
+            setPhase(Phase.FINISHED);
+            for (GameListener listener : listeners) {
+                listener.gameFinished(winner);
+            }
+        }
+    }
+
     /**
      * This is just some dummy controller operation to make a simple move to see something
      * happening on the board. This method should eventually be deleted!
@@ -86,6 +202,8 @@ public class GameController {
     public void moveCurrentPlayerToSpace(@NotNull Space space) {
         Player currentPlayer = board.getCurrentPlayer(); // Get the current player
         if (space.getPlayer() == null) { // Check if the player exists and the space is free
+            history.begin();
+            history.recordPosition(currentPlayer, currentPlayer.getSpace(), space);
             if (currentPlayer.getSpace() != null) {
                 currentPlayer.getSpace().setPlayer(null);
             }
@@ -94,7 +212,7 @@ public class GameController {
             space.setPlayer(currentPlayer); // Set the player in the new space
 
             int nextPlayerIndex = (board.getPlayerNumber(currentPlayer) + 1) % board.getPlayersNumber();
-            board.setCurrentPlayer(board.getPlayer(nextPlayerIndex));
+            setCurrentPlayer(board.getPlayer(nextPlayerIndex));
         }
     }
 
@@ -102,22 +220,23 @@ public class GameController {
      * Starts the programming phase where players receive and program command cards.
      */
     public void startProgrammingPhase() {
-        board.setPhase(Phase.PROGRAMMING);
-        board.setCurrentPlayer(board.getPlayer(0));
-        board.setStep(0);
+        history.begin();
+        setPhase(Phase.PROGRAMMING);
+        setCurrentPlayer(board.getPlayer(0));
+        setStep(0);
 
         for (int i = 0; i < board.getPlayersNumber(); i++) {
             Player player = board.getPlayer(i);
             if (player != null) {
                 for (int j = 0; j < Player.NO_REGISTERS; j++) {
                     CommandCardField field = player.getProgramField(j);
-                    field.setCard(null);
-                    field.setVisible(true);
+                    setCard(field, null);
+                    setVisible(field, true);
                 }
                 for (int j = 0; j < Player.NO_CARDS; j++) {
                     CommandCardField field = player.getCardField(j);
-                    field.setCard(generateRandomCommandCard());
-                    field.setVisible(true);
+                    setCard(field, generateRandomCommandCard());
+                    setVisible(field, true);
                 }
             }
         }
@@ -130,19 +249,23 @@ public class GameController {
      */
     private CommandCard generateRandomCommandCard() {
         Command[] commands = Command.values();
-        int random = (int) (Math.random() * commands.length);
-        return new CommandCard(commands[random]);
+        return new CommandCard(commands[random.nextInt(commands.length)]);
     }
 
     /**
      * Executes the next step in the current phase of the game.
      */
     public void finishProgrammingPhase() {
+        history.begin();
         makeProgramFieldsInvisible();
         makeProgramFieldsVisible(0);
-        board.setPhase(Phase.ACTIVATION);
-        board.setCurrentPlayer(board.getPlayer(0));
-        board.setStep(0);
+        setPhase(Phase.ACTIVATION);
+        setCurrentPlayer(board.getPlayer(0));
+        setStep(0);
+
+        for (GameListener listener : listeners) {
+            listener.programmingFinished();
+        }
     }
 
     // XXX V2
@@ -151,7 +274,7 @@ public class GameController {
             for (int i = 0; i < board.getPlayersNumber(); i++) {
                 Player player = board.getPlayer(i);
                 CommandCardField field = player.getProgramField(register);
-                field.setVisible(true);
+                setVisible(field, true);
             }
         }
     }
@@ -162,19 +285,28 @@ public class GameController {
             Player player = board.getPlayer(i);
             for (int j = 0; j < Player.NO_REGISTERS; j++) {
                 CommandCardField field = player.getProgramField(j);
-                field.setVisible(false);
+                setVisible(field, false);
             }
         }
     }
 
-    // XXX V2
+    /**
+     * Executes the rest of the activation phase at once. The views are not
+     * updated while the programs are executed; they are updated only once at
+     * the end, for all the spaces, players and the board that changed (see
+     * {@link Subject#deferNotifications(Runnable)}).
+     */
     public void executePrograms() {
-        board.setStepMode(false);
-        continuePrograms();
+        history.begin();
+        Subject.deferNotifications(() -> {
+            board.setStepMode(false);
+            continuePrograms();
+        });
     }
 
     // XXX V2
     public void executeStep() {
+        history.begin();
         board.setStepMode(true);
         continuePrograms();
     }
@@ -198,7 +330,7 @@ public class GameController {
 
         if (board.getPhase() == Phase.PLAYER_INTERACTION) {
             System.out.println("Player interaction complete. Resuming activation phase.");
-            board.setPhase(Phase.ACTIVATION);
+            setPhase(Phase.ACTIVATION);
             executeNextStep(); // Resume activation phase
             return;
         }
@@ -210,28 +342,27 @@ public class GameController {
                 if (card != null) {
                     Command command = card.command;
                     if (command == Command.LEFT_OR_RIGHT) {
-                        board.setPhase(Phase.PLAYER_INTERACTION);
+                        setPhase(Phase.PLAYER_INTERACTION);
                         return; // Wait for player input
                     }
                     executeCommand(currentPlayer, command);
+                    for (GameListener listener : listeners) {
+                        listener.commandExecuted(currentPlayer, command);
+                    }
                 }
                 int nextPlayerNumber = board.getPlayerNumber(currentPlayer) + 1;
                 if (nextPlayerNumber < board.getPlayersNumber()) {
-                    board.setCurrentPlayer(board.getPlayer(nextPlayerNumber));
+                    setCurrentPlayer(board.getPlayer(nextPlayerNumber));
                 } else {
-                    for (int i = 0; i < board.getPlayersNumber(); i++) {
-                        Player player = board.getPlayer(i);
-                        List<FieldAction> actions = player.getSpace().getActions();
-                        for (int j = 0; j < actions.size(); j++) {
-                            actions.get(j).doAction(this, player.getSpace());
-                        }
-                    }
+                    finishRegister(step);
 
                     step++;
-                    if (step < Player.NO_REGISTERS) {
+                    if (board.getPhase() == Phase.FINISHED) {
+                        return;
+                    } else if (step < Player.NO_REGISTERS) {
                         makeProgramFieldsVisible(step);
-                        board.setStep(step);
-                        board.setCurrentPlayer(board.getPlayer(0));
+                        setStep(step);
+                        setCurrentPlayer(board.getPlayer(0));
                     } else {
                         startProgrammingPhase();
                     }
@@ -249,12 +380,17 @@ public class GameController {
     // XXX V2
     public void playerTurnChoice(int direction) {
         Player currentPlayer = board.getCurrentPlayer();
+        history.begin();
         if (direction == -1) {
             turnLeft(currentPlayer);
         } else {
             turnRight(currentPlayer);
         }
-        board.setPhase(Phase.ACTIVATION);
+        for (GameListener listener : listeners) {
+            listener.turnChosen(currentPlayer, direction);
+            listener.commandExecuted(currentPlayer, Command.LEFT_OR_RIGHT);
+        }
+        setPhase(Phase.ACTIVATION);
         //executeNextStep();
         //continuePrograms();
         advanceToNextStep(currentPlayer, board.getStep());
@@ -263,6 +399,7 @@ public class GameController {
     // XXX V2
     private void executeCommand(@NotNull Player player, Command command) {
         if (player != null && player.board == board && command != null) {
+            timeline.nextBeat();
             // XXX This is a very simplistic way of dealing with some basic cards and
             //     their execution. This should eventually be done in a more elegant way
             //     (this concerns the way cards are modelled as well as the way they are executed).
@@ -299,39 +436,23 @@ public class GameController {
      * @return true if the player successfully moved forward, false otherwise.
      */
     public boolean moveForward(@NotNull Player player) {
-        if (player.board == board) {
-            Space space = player.getSpace();
-            Heading heading = player.getHeading();
-
-            Space target = board.getNeighbour(space, heading);
-
-            if (target != null) {
-                try {
-                    moveToSpace(player, target, heading);
-                    board.incrementMoveCount();
-                    return true;
-                    //player moved forward
-                } catch (ImpossibleMoveException e) {
-                    //Don't do anything, other than catch exception
-                    return false;
-                    //movement failed
-                }
-            }
-        }
-        return false;
+        return move(player, player.getHeading(), 1) > 0;
     }
 
     /**
-     * Exception indicating an impossible move.
+     * Exception indicating an impossible move. Since it is used for
+     * signalling that a move is blocked, and not for actual errors, it
+     * does not have a stack trace.
      */
     public static class ImpossibleMoveException extends Exception {
         public ImpossibleMoveException() {
+            super(null, null, false, false);
         }
     }
 
-
     /**
-     * Moves a player to a specified space in a given direction, handling potential collisions.
+     * Moves a player to a specified space in a given direction, pushing the
+     * robots in the way.
      *
      * @param pusher  The player attempting to move.
      * @param space   The target space to move to.
@@ -340,25 +461,235 @@ public class GameController {
      */
     public void moveToSpace(@NotNull Player pusher, @NotNull Space space, @NotNull Heading heading) throws ImpossibleMoveException {
         assert board.getNeighbour(pusher.getSpace(), heading) == space;
-        Player pushed = space.getPlayer();
-        if (pushed != null) {
-            Space nextSpace = board.getNeighbour(space, heading);
-            if (nextSpace != null) {
-                moveToSpace(pushed, nextSpace, heading);
+        if (push(pusher, heading, 1) == 0) {
+            throw new ImpossibleMoveException();
+        }
+    }
 
-                assert space.getPlayer() == null : "Space for the player is not free!";
-            } else {
-                throw new ImpossibleMoveException();
+    /**
+     * Moves a player by the given number of spaces in the given direction,
+     * pushing the robots in the way, as far as possible. The move count is
+     * incremented for every space the player moved.
+     *
+     * @param player the player
+     * @param heading the direction of the move
+     * @param steps the number of spaces
+     * @return the number of spaces the player actually moved
+     */
+    public int move(@NotNull Player player, @NotNull Heading heading, int steps) {
+        if (player.board != board || player.getSpace() == null) {
+            return 0;
+        }
+        int moved = push(player, heading, steps);
+        for (int i = 0; i < moved; i++) {
+            incrementMoveCount();
+        }
+        return moved;
+    }
+
+    /**
+     * Moves a player by up to the given number of spaces, pushing the
+     * robots in the way, in a single resolution. First, the line of spaces
+     * ahead of the player is scanned until there are as many free spaces
+     * as steps, or until a wall blocks the way. All robots found on the way
+     * are pushed, and end up in a row in front of the player, directly
+     * behind the last scanned space; the player moved by the number of free
+     * spaces found. Then, the robots are moved to their final spaces in a
+     * single pass backwards, starting with the front-most robot, so that
+     * every robot is moved to a free space. No objects are created.
+     *
+     * @param player the player
+     * @param heading the direction of the move
+     * @param steps the maximal number of spaces
+     * @return the number of spaces the player moved
+     */
+    private int push(@NotNull Player player, @NotNull Heading heading, int steps) {
+        Space start = player.getSpace();
+        // the line ahead wraps around the board like getNeighbour does;
+        // it must not run into the player itself again
+        int maxLength = (heading == Heading.EAST || heading == Heading.WEST) ? board.width - 1 : board.height - 1;
+
+        int free = 0;
+        int length = 0;
+        Space space = start;
+        while (free < steps && length < maxLength) {
+            Space next = board.getNeighbour(space, heading);
+            if (next == null) {
+                break;
             }
+            space = next;
+            length++;
+            if (space.getPlayer() == null) {
+                free++;
+            }
+        }
+        if (free == 0) {
+            return 0;
+        }
+
+        int target = length;
+        for (int position = length; position >= 0; position--) {
+            Space current = spaceAhead(start, heading, position);
+            Player robot = current.getPlayer();
+            if (robot != null) {
+                if (position != target) {
+                    Space targetSpace = spaceAhead(start, heading, target);
+                    history.recordPosition(robot, current, targetSpace);
+                    robot.setSpace(targetSpace);
+                    timeline.record(robot == player ? MovementTimeline.Type.MOVE : MovementTimeline.Type.PUSH,
+                            robot, current, targetSpace, robot.getHeading(), robot.getHeading());
+                }
+                target--;
+            }
+        }
+        return free;
+    }
+
+    private Space spaceAhead(@NotNull Space space, @NotNull Heading heading, int distance) {
+        int x = space.x;
+        int y = space.y;
+        switch (heading) {
+            case SOUTH:
+                y = Math.floorMod(y + distance, board.height);
+                break;
+            case WEST:
+                x = Math.floorMod(x - distance, board.width);
+                break;
+            case NORTH:
+                y = Math.floorMod(y - distance, board.height);
+                break;
+            case EAST:
+                x = Math.floorMod(x + distance, board.width);
+                break;
         }
-        pusher.setSpace(space);
-        space.setPlayer(pusher);
+        return board.getSpace(x, y);
     }
 
     private void rotate(@NotNull Player player, int steps) {
         Heading currentDirection = player.getHeading();
         Heading newDirection = Heading.values()[(currentDirection.ordinal() + steps + Heading.values().length) % Heading.values().length];
-        player.setHeading(newDirection);
+        setHeading(player, newDirection);
+        recordRotation(player, currentDirection);
+    }
+
+    private void recordRotation(@NotNull Player player, @NotNull Heading oldHeading) {
+        if (player.getSpace() != null && player.getHeading() != oldHeading) {
+            timeline.record(MovementTimeline.Type.ROTATE, player, player.getSpace(), player.getSpace(),
+                    oldHeading, player.getHeading());
+        }
+    }
+
+    /**
+     * Returns the timeline, in which the movements of the robots in the
+     * current register are recorded. Field actions moving robots should
+     * record their movements here.
+     *
+     * @return the movement timeline of the current register
+     */
+    public MovementTimeline getMovementTimeline() {
+        return timeline;
+    }
+
+    /**
+     * Returns the history of the changes made to the game, which can be
+     * undone. Field actions changing the game should record their changes
+     * here.
+     *
+     * @return the undo history of the game
+     */
+    public UndoHistory getUndoHistory() {
+        return history;
+    }
+
+    /**
+     * Undoes the last operation of this controller (for example, the
+     * execution of a step, or moving a card). The views are updated once
+     * for all changes, and the listeners are informed afterwards.
+     *
+     * @return true if an operation was undone
+     */
+    public boolean undo() {
+        boolean[] undone = new boolean[1];
+        Subject.deferNotifications(() -> undone[0] = history.undo());
+        if (undone[0]) {
+            stateRestored();
+        }
+        return undone[0];
+    }
+
+    /**
+     * Redoes the last operation of this controller which was undone.
+     *
+     * @return true if an operation was redone
+     */
+    public boolean redo() {
+        boolean[] redone = new boolean[1];
+        Subject.deferNotifications(() -> redone[0] = history.redo());
+        if (redone[0]) {
+            stateRestored();
+        }
+        return redone[0];
+    }
+
+    private void stateRestored() {
+        for (GameListener listener : listeners) {
+            listener.stateRestored();
+        }
+    }
+
+    /**
+     * Moves the card from one card field to another, if the source has a
+     * card and the target is empty. The fields may belong to different
+     * players' program or hand.
+     *
+     * @param source the field with the card
+     * @param target the empty field
+     * @return true if the card was moved
+     */
+    public boolean moveCards(@NotNull CommandCardField source, @NotNull CommandCardField target) {
+        CommandCard sourceCard = source.getCard();
+        if (sourceCard != null && target.getCard() == null && source != target) {
+            history.begin();
+            setCard(target, sourceCard);
+            setCard(source, null);
+            return true;
+        }
+        return false;
+    }
+
+    private void setPhase(@NotNull Phase phase) {
+        history.recordPhase(board.getPhase(), phase);
+        board.setPhase(phase);
+    }
+
+    private void setStep(int step) {
+        history.recordStep(board.getStep(), step);
+        board.setStep(step);
+    }
+
+    private void setCurrentPlayer(Player player) {
+        history.recordCurrentPlayer(board.getCurrentPlayer(), player);
+        board.setCurrentPlayer(player);
+    }
+
+    private void setHeading(@NotNull Player player, @NotNull Heading heading) {
+        history.recordHeading(player, player.getHeading(), heading);
+        player.setHeading(heading);
+    }
+
+    private void setCard(@NotNull CommandCardField field, CommandCard card) {
+        history.recordCard(field, field.getCard(), card);
+        field.setCard(card);
+    }
+
+    private void setVisible(@NotNull CommandCardField field, boolean visible) {
+        history.recordVisible(field, field.isVisible(), visible);
+        field.setVisible(visible);
+    }
+
+    private void incrementMoveCount() {
+        history.recordMoveCount(board.getMoveCount(), board.getMoveCount() + 1);
+        board.incrementMoveCount();
     }
 
     public void turnRight(@NotNull Player player) {
@@ -370,9 +701,7 @@ public class GameController {
     }
 
     public void fastForward(@NotNull Player player) {
-        if (moveForward(player)) {
-            moveForward(player);
-        }
+        move(player, player.getHeading(), 2);
     }
 
     // Implemented by Hannah
@@ -384,7 +713,8 @@ public class GameController {
         Heading newDirection = Heading.values()[(currentDirection.ordinal() + Heading.values().length - 2) % Heading.values().length];
 
         // Update the player's direction
-        player.setHeading(newDirection);
+        setHeading(player, newDirection);
+        recordRotation(player, currentDirection);
     }
 
     // Implemented by Leon
@@ -402,10 +732,13 @@ public class GameController {
         }
 
         if (newSpace.getPlayer() == null) {
+            history.recordPosition(player, currentSpace, newSpace);
             currentSpace.setPlayer(null);
             newSpace.setPlayer(player);
             player.setSpace(newSpace);
-            board.incrementMoveCount();
+            timeline.record(MovementTimeline.Type.MOVE, player, currentSpace, newSpace,
+                    player.getHeading(), player.getHeading());
+            incrementMoveCount();
             return true;
         }
 
@@ -0,0 +1,102 @@
+/*
+ *  This file is part of the initial project provided for the
+ *  course "Project in Software Development (02362)" held at
+ *  DTU Compute at the Technical University of Denmark.
+ *
+ *  Copyright (C) 2019, 2020: Ekkart Kindler, ekki@dtu.dk
+ *
+ *  This software is free software; you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation; version 2 of the License.
+ *
+ *  This project is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this project; if not, write to the Free Software
+ *  Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ *
+ */
+package dk.dtu.compute.se.pisd.roborally.controller;
+
+import dk.dtu.compute.se.pisd.roborally.model.Command;
+import dk.dtu.compute.se.pisd.roborally.model.Player;
+
+/**
+ * A listener which is informed by the {@link GameController} about the
+ * progress of the game. This can be used for recording or persisting a
+ * game while it is played, without the game controller knowing about
+ * the details. All methods have an empty default implementation, so
+ * that listeners implement only what they need.
+ */
+public interface GameListener {
+
+    /**
+     * Called when the programming phase is finished and the activation
+     * phase starts, i.e. when the registers of all players are fixed.
+     */
+    default void programmingFinished() {
+    }
+
+    /**
+     * Called after the command of a player's register was executed
+     * (including the choice of an interactive command).
+     *
+     * @param player the player whose register was executed
+     * @param command the executed command
+     */
+    default void commandExecuted(Player player, Command command) {
+    }
+
+    /**
+     * Called when a player chose the direction of an interactive command
+     * (see {@link GameController#playerTurnChoice(int)}), before the
+     * command is reported as executed.
+     *
+     * @param player the player who chose
+     * @param direction the chosen direction, -1 for left and 1 for right
+     */
+    default void turnChosen(Player player, int direction) {
+    }
+
+    /**
+     * Called after a register was executed for all players and the field
+     * actions of the board were activated, with the movements of the robots
+     * during the register; this is called before {@link #registerFinished(int)}.
+     * The timeline belongs to the listeners and is not changed anymore.
+     *
+     * @param register the number of the register
+     * @param timeline the movements of the robots in the register
+     */
+    default void movementsRecorded(int register, MovementTimeline timeline) {
+    }
+
+    /**
+     * Called after a register was executed for all players and the
+     * field actions of the board were activated.
+     *
+     * @param register the number of the register
+     */
+    default void registerFinished(int register) {
+    }
+
+    /**
+     * Called after an operation of the game controller was undone or redone
+     * (see {@link GameController#undo()}). The game might have changed in
+     * any way then, so that listeners keeping a history of the game need to
+     * catch up with its current state.
+     */
+    default void stateRestored() {
+    }
+
+    /**
+     * Called when the game is finished, since a player has won it.
+     *
+     * @param winner the player who won the game
+     */
+    default void gameFinished(Player winner) {
+    }
+
+}
@@ -0,0 +1,172 @@
+/*
+ *  This file is part of the initial project provided for the
+ *  course "Project in Software Development (02362)" held at
+ *  DTU Compute at the Technical University of Denmark.
+ *
+ *  Copyright (C) 2019, 2020: Ekkart Kindler, ekki@dtu.dk
+ *
+ *  This software is free software; you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation; version 2 of the License.
+ *
+ *  This project is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this project; if not, write to the Free Software
+ *  Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ *
+ */
+package dk.dtu.compute.se.pisd.roborally.controller;
+
+import dk.dtu.compute.se.pisd.roborally.model.Heading;
+import dk.dtu.compute.se.pisd.roborally.model.Player;
+import dk.dtu.compute.se.pisd.roborally.model.Space;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.Arrays;
+
+/**
+ * A timeline of the movements of the robots during a register, which the
+ * {@link GameController} records while it executes the register and passes
+ * on to its listeners when the register is finished (see
+ * {@link GameListener#movementsRecorded(int, MovementTimeline)}). Views can
+ * play back the timeline at their own speed, while the game itself is
+ * already ahead.
+ *
+ * The events of the timeline are grouped into beats: all events of the same
+ * beat happen at the same time (for example, a robot moving and the robots
+ * pushed by it, or all robots moved by conveyor belts). The events are stored
+ * compactly as numbers, and are decoded only when they are accessed.
+ */
+public class MovementTimeline {
+
+    /**
+     * The types of movement events.
+     */
+    public enum Type {
+        /** A robot moves by its own command. */
+        MOVE,
+        /** A robot is pushed by another robot. */
+        PUSH,
+        /** A robot turns. */
+        ROTATE,
+        /** A robot is transported by a conveyor belt. */
+        BELT,
+        /** A robot reaches a checkpoint. */
+        CHECKPOINT
+    }
+
+    /**
+     * A movement event of a robot: the type, the beat, the number of the
+     * player, and the position and heading of the robot before and after
+     * the event.
+     */
+    public record Event(Type type, int beat, int player, int fromX, int fromY, int toX, int toY,
+                        Heading fromHeading, Heading toHeading) {
+    }
+
+    private static final int STRIDE = 8;
+
+    private int[] events = new int[16 * STRIDE];
+
+    private int size = 0;
+
+    private int beat = 0;
+
+    /**
+     * Starts a new beat; the events recorded from now on happen after
+     * the events recorded before. A beat without events is skipped.
+     */
+    public void nextBeat() {
+        if (size > 0 && events[(size - 1) * STRIDE + 1] == beat) {
+            beat++;
+        }
+    }
+
+    /**
+     * Records an event of the current beat.
+     *
+     * @param type the type of the event
+     * @param player the player whose robot moved
+     * @param from the space of the robot before the event
+     * @param to the space of the robot after the event
+     * @param fromHeading the heading of the robot before the event
+     * @param toHeading the heading of the robot after the event
+     */
+    public void record(@NotNull Type type, @NotNull Player player, @NotNull Space from, @NotNull Space to,
+                       @NotNull Heading fromHeading, @NotNull Heading toHeading) {
+        if ((size + 1) * STRIDE > events.length) {
+            events = Arrays.copyOf(events, 2 * events.length);
+        }
+        int i = size * STRIDE;
+        events[i] = type.ordinal();
+        events[i + 1] = beat;
+        events[i + 2] = player.board.getPlayerNumber(player);
+        events[i + 3] = from.x;
+        events[i + 4] = from.y;
+        events[i + 5] = to.x;
+        events[i + 6] = to.y;
+        events[i + 7] = fromHeading.ordinal() << 2 | toHeading.ordinal();
+        size++;
+    }
+
+    /**
+     * Returns the number of events.
+     *
+     * @return the number of events
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Returns the number of beats with events.
+     *
+     * @return the number of beats
+     */
+    public int getBeats() {
+        return size > 0 ? events[(size - 1) * STRIDE + 1] + 1 : 0;
+    }
+
+    /**
+     * Returns an event of the timeline.
+     *
+     * @param index the index of the event, in the order of recording
+     * @return the event
+     */
+    public Event get(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException(index);
+        }
+        int i = index * STRIDE;
+        Heading[] headings = Heading.values();
+        return new Event(Type.values()[events[i]], events[i + 1], events[i + 2],
+                events[i + 3], events[i + 4], events[i + 5], events[i + 6],
+                headings[events[i + 7] >> 2], headings[events[i + 7] & 3]);
+    }
+
+    /**
+     * Returns a copy of this timeline.
+     *
+     * @return the copy
+     */
+    public MovementTimeline copy() {
+        MovementTimeline copy = new MovementTimeline();
+        copy.events = Arrays.copyOf(events, Math.max(size, 1) * STRIDE);
+        copy.size = size;
+        copy.beat = beat;
+        return copy;
+    }
+
+    /**
+     * Removes all events.
+     */
+    public void clear() {
+        size = 0;
+        beat = 0;
+    }
+
+}
@@ -0,0 +1,431 @@
+/*
+ *  This file is part of the initial project provided for the
+ *  course "Project in Software Development (02362)" held at
+ *  DTU Compute at the Technical University of Denmark.
+ *
+ *  Copyright (C) 2019, 2020: Ekkart Kindler, ekki@dtu.dk
+ *
+ *  This software is free software; you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation; version 2 of the License.
+ *
+ *  This project is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this project; if not, write to the Free Software
+ *  Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ *
+ */
+package dk.dtu.compute.se.pisd.roborally.controller;
+
+import dk.dtu.compute.se.pisd.roborally.model.*;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * The history of the changes the {@link GameController} made to the game,
+ * which allows undoing and redoing them. Instead of copies of the board,
+ * the history records every change as a small delta with the old and the
+ * new value (for example, the old and the new space of a robot), so that a
+ * change can be undone and redone by setting the old or the new value
+ * again. The deltas are grouped into steps, one for every operation of the
+ * game controller, which are undone and redone as a whole.
+ *
+ * The deltas are stored as numbers in a ring buffer of a fixed capacity.
+ * When the buffer is full, the oldest steps are dropped, so that the memory
+ * used by the history is bounded, no matter how long the game runs. A step
+ * which alone has more changes than fit into the buffer cannot be undone;
+ * then, the history is cleared.
+ */
+public class UndoHistory {
+
+    /**
+     * The default number of deltas in the history.
+     */
+    public static final int DEFAULT_CAPACITY = 4096;
+
+    private static final int BEGIN = 0;
+    private static final int POSITION = 1;
+    private static final int HEADING = 2;
+    private static final int PHASE = 3;
+    private static final int STEP = 4;
+    private static final int CURRENT_PLAYER = 5;
+    private static final int MOVE_COUNT = 6;
+    private static final int CHECKPOINT = 7;
+    private static final int CARD = 8;
+    private static final int VISIBLE = 9;
+
+    private static final int STRIDE = 4;
+
+    private static final int NONE = -1;
+
+    private final Board board;
+
+    private final int capacity;
+
+    private final int[] deltas;
+
+    /**
+     * The position of the oldest delta, the next delta to be recorded, and
+     * the end of the deltas which can be redone; the positions count the
+     * deltas since the start of the history.
+     */
+    private long tail = 0;
+    private long head = 0;
+    private long redoEnd = 0;
+
+    /**
+     * Whether the current step did not fit into the history; the rest of
+     * its changes is not recorded then.
+     */
+    private boolean truncated = false;
+
+    /**
+     * Creates a history with the {@link #DEFAULT_CAPACITY default capacity}.
+     *
+     * @param board the board of the game
+     */
+    public UndoHistory(@NotNull Board board) {
+        this(board, DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Creates a history for the given number of deltas.
+     *
+     * @param board the board of the game
+     * @param capacity the maximal number of deltas
+     */
+    public UndoHistory(@NotNull Board board, int capacity) {
+        if (capacity < 2) {
+            throw new IllegalArgumentException("The capacity of the history must be at least 2!");
+        }
+        this.board = board;
+        this.capacity = capacity;
+        this.deltas = new int[capacity * STRIDE];
+    }
+
+    /**
+     * Starts a new step; the changes recorded from now on are undone
+     * together. The steps which were undone cannot be redone anymore.
+     */
+    public void begin() {
+        truncated = false;
+        if (head > tail && op(head - 1) == BEGIN) {
+            // the current step is still empty
+            redoEnd = head;
+            return;
+        }
+        write(BEGIN, 0, 0, 0);
+    }
+
+    /**
+     * Records that a robot moved from one space to another.
+     *
+     * @param player the player
+     * @param from the space before, or null if the robot was not on the board
+     * @param to the space after, or null if the robot was removed from the board
+     */
+    public void recordPosition(@NotNull Player player, Space from, Space to) {
+        if (from != to) {
+            record(POSITION, board.getPlayerNumber(player), index(from), index(to));
+        }
+    }
+
+    /**
+     * Records that a robot turned.
+     *
+     * @param player the player
+     * @param from the heading before
+     * @param to the heading after
+     */
+    public void recordHeading(@NotNull Player player, @NotNull Heading from, @NotNull Heading to) {
+        if (from != to) {
+            record(HEADING, board.getPlayerNumber(player), from.ordinal(), to.ordinal());
+        }
+    }
+
+    /**
+     * Records that the phase of the game changed.
+     *
+     * @param from the phase before
+     * @param to the phase after
+     */
+    public void recordPhase(@NotNull Phase from, @NotNull Phase to) {
+        if (from != to) {
+            record(PHASE, 0, from.ordinal(), to.ordinal());
+        }
+    }
+
+    /**
+     * Records that the step of the game changed.
+     *
+     * @param from the step before
+     * @param to the step after
+     */
+    public void recordStep(int from, int to) {
+        if (from != to) {
+            record(STEP, 0, from, to);
+        }
+    }
+
+    /**
+     * Records that the current player changed.
+     *
+     * @param from the current player before, or null
+     * @param to the current player after, or null
+     */
+    public void recordCurrentPlayer(Player from, Player to) {
+        if (from != to) {
+            record(CURRENT_PLAYER, 0, from != null ? board.getPlayerNumber(from) : NONE,
+                    to != null ? board.getPlayerNumber(to) : NONE);
+        }
+    }
+
+    /**
+     * Records that the move count changed.
+     *
+     * @param from the move count before
+     * @param to the move count after
+     */
+    public void recordMoveCount(int from, int to) {
+        if (from != to) {
+            record(MOVE_COUNT, 0, from, to);
+        }
+    }
+
+    /**
+     * Records that the checkpoint counter of a player changed.
+     *
+     * @param player the player
+     * @param from the counter before
+     * @param to the counter after
+     */
+    public void recordCheckPoint(@NotNull Player player, int from, int to) {
+        if (from != to) {
+            record(CHECKPOINT, board.getPlayerNumber(player), from, to);
+        }
+    }
+
+    /**
+     * Records that the card on a card field changed.
+     *
+     * @param field the card field
+     * @param from the card before, or null
+     * @param to the card after, or null
+     */
+    public void recordCard(@NotNull CommandCardField field, CommandCard from, CommandCard to) {
+        int before = from != null ? from.command.ordinal() : NONE;
+        int after = to != null ? to.command.ordinal() : NONE;
+        if (before != after) {
+            record(CARD, field(field), before, after);
+        }
+    }
+
+    /**
+     * Records that the visibility of a card field changed.
+     *
+     * @param field the card field
+     * @param from the visibility before
+     * @param to the visibility after
+     */
+    public void recordVisible(@NotNull CommandCardField field, boolean from, boolean to) {
+        if (from != to) {
+            record(VISIBLE, field(field), from ? 1 : 0, to ? 1 : 0);
+        }
+    }
+
+    /**
+     * Returns whether there is a step which can be undone.
+     *
+     * @return true if a step can be undone
+     */
+    public boolean canUndo() {
+        return findBegin() >= 0;
+    }
+
+    /**
+     * Returns whether there is a step which can be redone.
+     *
+     * @return true if a step can be redone
+     */
+    public boolean canRedo() {
+        return head < redoEnd;
+    }
+
+    /**
+     * Undoes the last step, by setting the old values of its changes again,
+     * in reverse order.
+     *
+     * @return true if a step was undone
+     */
+    public boolean undo() {
+        long begin = findBegin();
+        if (begin < 0) {
+            return false;
+        }
+        for (long position = head - 1; position > begin; position--) {
+            int i = offset(position);
+            apply(deltas[i], deltas[i + 1], deltas[i + 2]);
+        }
+        head = begin;
+        return true;
+    }
+
+    /**
+     * Redoes the last step which was undone, by setting the new values of
+     * its changes again.
+     *
+     * @return true if a step was redone
+     */
+    public boolean redo() {
+        if (head >= redoEnd) {
+            return false;
+        }
+        long position = head + 1;
+        while (position < redoEnd && op(position) != BEGIN) {
+            int i = offset(position);
+            apply(deltas[i], deltas[i + 1], deltas[i + 3]);
+            position++;
+        }
+        head = position;
+        return true;
+    }
+
+    /**
+     * Returns the number of deltas in the history, which can be undone.
+     *
+     * @return the number of deltas
+     */
+    public int size() {
+        return (int) (head - tail);
+    }
+
+    /**
+     * Removes all steps from the history.
+     */
+    public void clear() {
+        tail = head = redoEnd = 0;
+        truncated = false;
+    }
+
+    private void record(int op, int target, int from, int to) {
+        if (truncated) {
+            return;
+        }
+        if (head == tail) {
+            // changes made before the first step form a step of their own
+            write(BEGIN, 0, 0, 0);
+        }
+        write(op, target, from, to);
+    }
+
+    private void write(int op, int target, int from, int to) {
+        if (head - tail == capacity) {
+            // drop the oldest step
+            do {
+                tail++;
+            } while (tail < head && op(tail) != BEGIN);
+            if (tail == head && op != BEGIN) {
+                // the current step was dropped itself, since it is larger
+                // than the history; it cannot be undone at all
+                truncated = true;
+                redoEnd = head;
+                return;
+            }
+        }
+        int i = offset(head);
+        deltas[i] = op;
+        deltas[i + 1] = target;
+        deltas[i + 2] = from;
+        deltas[i + 3] = to;
+        head++;
+        redoEnd = head;
+    }
+
+    private long findBegin() {
+        for (long position = head - 1; position >= tail; position--) {
+            if (op(position) == BEGIN) {
+                return position;
+            }
+        }
+        return -1;
+    }
+
+    private void apply(int op, int target, int value) {
+        switch (op) {
+            case POSITION:
+                board.getPlayer(target).setSpace(value != NONE ? board.getSpace(value % board.width, value / board.width) : null);
+                break;
+            case HEADING:
+                board.getPlayer(target).setHeading(Heading.values()[value]);
+                break;
+            case PHASE:
+                board.setPhase(Phase.values()[value]);
+                break;
+            case STEP:
+                board.setStep(value);
+                break;
+            case CURRENT_PLAYER:
+                // the board does not allow resetting the current player to null
+                if (value != NONE) {
+                    board.setCurrentPlayer(board.getPlayer(value));
+                }
+                break;
+            case MOVE_COUNT:
+                board.setMoveCount(value);
+                break;
+            case CHECKPOINT:
+                board.getPlayer(target).setCheckPointCounter(value);
+                break;
+            case CARD:
+                field(target).setCard(value != NONE ? new CommandCard(Command.values()[value]) : null);
+                break;
+            case VISIBLE:
+                field(target).setVisible(value != 0);
+                break;
+            default:
+                // this should not happen
+                assert false;
+        }
+    }
+
+    private int op(long position) {
+        return deltas[offset(position)];
+    }
+
+    private int offset(long position) {
+        return (int) (position % capacity) * STRIDE;
+    }
+
+    private int index(Space space) {
+        return space != null ? space.y * board.width + space.x : NONE;
+    }
+
+    /**
+     * Encodes a card field by the number of its player, whether it is a
+     * program field, and its number.
+     */
+    private int field(@NotNull CommandCardField field) {
+        Player player = field.player;
+        for (int i = 0; i < Player.NO_REGISTERS; i++) {
+            if (player.getProgramField(i) == field) {
+                return board.getPlayerNumber(player) << 8 | i;
+            }
+        }
+        for (int i = 0; i < Player.NO_CARDS; i++) {
+            if (player.getCardField(i) == field) {
+                return board.getPlayerNumber(player) << 8 | 0x80 | i;
+            }
+        }
+        throw new IllegalArgumentException("The card field does not belong to its player!");
+    }
+
+    private CommandCardField field(int code) {
+        Player player = board.getPlayer(code >> 8);
+        int i = code & 0x7F;
+        return (code & 0x80) == 0 ? player.getProgramField(i) : player.getCardField(i);
+    }
+
+}
@@ -21,14 +21,11 @@
  */
 package dk.dtu.compute.se.pisd.roborally.dal;
 
-import dk.dtu.compute.se.pisd.roborally.fileaccess.IOUtil;
-
 import java.io.IOException;
 import java.io.InputStream;
 import java.sql.Connection;
 import java.sql.DriverManager;
 import java.sql.SQLException;
-import java.sql.Statement;
 
 import java.util.Properties;
 
@@ -45,6 +42,7 @@ class Connector {
 	private static final String  PROP_DB = "DATABASE";
 	private static final String  PROP_USERNAME = "USERNAME";
 	private static final String  PROP_PASSWORD = "PASSWORD";
+	private static final String  PROP_PERSISTENCE = "PERSISTENCE";
 
 	private static final String PATH_TO_PROPFILE = "properties/db.properties";
 
@@ -54,9 +52,9 @@ class Connector {
 	private final String USERNAME;
 	private final String PASSWORD;
 
-    private static final String DELIMITER = ";;";
-    
-    private Connection connection;
+	private final PersistenceMode PERSISTENCE;
+
+    private volatile Connection connection;
         
     Connector() {
 		try {
@@ -71,6 +69,8 @@ class Connector {
 			DATABASE = properties.getProperty(PROP_DB);
 			USERNAME = properties.getProperty(PROP_USERNAME);
 			PASSWORD = properties.getProperty(PROP_PASSWORD);
+			PERSISTENCE = PersistenceMode.valueOf(
+					properties.getProperty(PROP_PERSISTENCE, PersistenceMode.NORMALISED.name()).trim());
 
 			if ( HOST != null && port != null &&
 					DATABASE != null &&
@@ -80,15 +80,12 @@ class Connector {
 				throw new RuntimeException(
 						"Database access information are missing, incomplete or wrong in " +
 						"'db.properties' file.");
-		} catch (IOException | NumberFormatException e ) {
+		} catch (IOException | IllegalArgumentException e ) {
             throw new RuntimeException(e);
         }
 
         try {
-			// String url = "jdbc:mysql://" + HOST + ":" + PORT + "/" + DATABASE;
-			String url = "jdbc:mysql://" + HOST + ":" + PORT + "/" + DATABASE + "?serverTimezone=UTC";
-			connection = DriverManager.getConnection(url, USERNAME, PASSWORD);
-
+			connection = openConnection();
 			createDatabaseSchema();
 		} catch (SQLException e) {
 			// TODO we should try to diagnose and fix some problems here and
@@ -97,39 +94,61 @@ class Connector {
 		}
     }
     
-    private void createDatabaseSchema() {
-
-    	String createTablesStatement =
-				IOUtil.readResource("schemas/createschema.sql");
-
-    	try {
-    		connection.setAutoCommit(false);
-    		Statement statement = connection.createStatement();
-    		for (String sql : createTablesStatement.split(DELIMITER)) {
-    			if (!sql.isBlank()) {
-					try {
-						statement.executeUpdate(sql);
-					} catch (SQLException e) {}
-    			}
-    		}
-
-    		statement.close();
-    		connection.commit();
-    	} catch (SQLException e) {
-    		e.printStackTrace();
-    		// TODO error handling
-    		try {
-				connection.rollback();
-			} catch (SQLException e1) {}
-    	} finally {
+	/**
+	 * Returns whether the properties file with the database access
+	 * information is available.
+	 *
+	 * @return true if the properties file exists
+	 */
+	static boolean isConfigured() {
+		return Connector.class.getClassLoader().getResource(PATH_TO_PROPFILE) != null;
+	}
+
+	/**
+	 * Opens a new connection to the database, without replacing the
+	 * current connection (see {@link #replaceConnection(Connection)}).
+	 *
+	 * @return the new connection
+	 * @throws SQLException if the connection cannot be opened
+	 */
+	Connection openConnection() throws SQLException {
+		// String url = "jdbc:mysql://" + HOST + ":" + PORT + "/" + DATABASE;
+		String url = "jdbc:mysql://" + HOST + ":" + PORT + "/" + DATABASE + "?serverTimezone=UTC"
+				// send batches (used by the journal) as multi-row statements
+				+ "&rewriteBatchedStatements=true";
+		return DriverManager.getConnection(url, USERNAME, PASSWORD);
+	}
+
+	/**
+	 * Replaces the current connection by the given one and closes the
+	 * current connection (if it is still open). Note that statements
+	 * prepared on the old connection cannot be used anymore afterwards.
+	 *
+	 * @param connection the new connection
+	 */
+	void replaceConnection(Connection connection) {
+		Connection old = this.connection;
+		this.connection = connection;
+		if (old != null) {
 			try {
-				connection.setAutoCommit(true);
+				old.close();
 			} catch (SQLException e) {}
 		}
+	}
+
+    private void createDatabaseSchema() throws SQLException {
+		// checks the version of the schema and applies the missing
+		// migrations only; failing migrations are reported as an
+		// SQLException (and not silently ignored)
+		new SchemaMigrator(connection).migrate();
     }
     
     Connection getConnection() {
     	return connection; 
     }
+
+	PersistenceMode getPersistenceMode() {
+		return PERSISTENCE;
+	}
     
 }
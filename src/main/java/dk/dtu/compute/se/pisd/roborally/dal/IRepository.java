@@ -21,6 +21,7 @@
  */
 package dk.dtu.compute.se.pisd.roborally.dal;
 
+import dk.dtu.compute.se.pisd.roborally.controller.GameListener;
 import dk.dtu.compute.se.pisd.roborally.model.Board;
 
 import java.util.List;
@@ -41,4 +42,17 @@ public interface IRepository {
 	
 	List<GameInDB> getGames();
 
+	/**
+	 * Opens the journal for a game, which was already created in the database.
+	 * The returned listener must be added to the game's controller, so that
+	 * it can append the progress of the game to the journal. This is available
+	 * only if the repository is configured with the persistence mode
+	 * <code>JOURNAL</code>.
+	 *
+	 * @param game the game
+	 * @return the listener writing the journal, or null if the game is not
+	 *         journaled
+	 */
+	GameListener openJournal(Board game);
+
 }
@@ -0,0 +1,461 @@
+/*
+ *  This file is part of the initial project provided for the
+ *  course "Project in Software Development (02362)" held at
+ *  DTU Compute at the Technical University of Denmark.
+ *
+ *  Copyright (C) 2019, 2020: Ekkart Kindler, ekki@dtu.dk
+ *
+ *  This software is free software; you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation; version 2 of the License.
+ *
+ *  This project is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this project; if not, write to the Free Software
+ *  Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ *
+ */
+package dk.dtu.compute.se.pisd.roborally.dal;
+
+import dk.dtu.compute.se.pisd.roborally.controller.GameListener;
+import dk.dtu.compute.se.pisd.roborally.fileaccess.GameSnapshot;
+import dk.dtu.compute.se.pisd.roborally.model.*;
+
+import java.nio.ByteBuffer;
+import java.sql.*;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+
+/**
+ * The journal of a game in the persistence mode {@link PersistenceMode#JOURNAL}.
+ * Instead of updating the rows of the game in place, the journal appends a
+ * compact row for every robot whose position, heading or checkpoint counter
+ * changed by an executed command or by the field actions at the end of a
+ * register. The rows of a register are collected in a batch and handed
+ * to a writer when the register is finished, which inserts them together
+ * in the background; so the thread executing the game never waits for
+ * the database. At the beginning of each activation phase, a full snapshot
+ * of the game is appended, so that loading a game needs to replay only the
+ * journal of the current round.
+ *
+ * @see GameSnapshot
+ */
+class MoveJournal implements GameListener {
+
+	private static final String JOURNAL_SEQ = "seq";
+	private static final String JOURNAL_PLAYERID = "playerID";
+	private static final String JOURNAL_COMMAND = "command";
+	private static final String JOURNAL_STEP = "step";
+	private static final String JOURNAL_POSITION_X = "positionX";
+	private static final String JOURNAL_POSITION_Y = "positionY";
+	private static final String JOURNAL_HEADING = "heading";
+	private static final String JOURNAL_CHECKPOINTS = "checkpoints";
+
+	private static final String SNAPSHOT_SEQ = "seq";
+	private static final String SNAPSHOT_SNAPSHOT = "snapshot";
+
+	private static final String SQL_INSERT_JOURNAL =
+			"INSERT INTO MoveJournal(gameID, seq, playerID, command, step, " +
+			"positionX, positionY, heading, checkpoints) VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?)";
+
+	/**
+	 * Inserts a snapshot; if there is a snapshot with the same sequence number
+	 * already (no rows were appended to the journal since that snapshot), it
+	 * is replaced, since the new snapshot covers the same rows of the journal.
+	 */
+	private static final String SQL_INSERT_SNAPSHOT =
+			"INSERT INTO JournalSnapshot(gameID, seq, snapshot) VALUES (?, ?, ?) " +
+			"ON DUPLICATE KEY UPDATE snapshot = VALUES(snapshot)";
+
+	private static final String SQL_SELECT_MAX_SEQ =
+			"SELECT MAX(seq) FROM MoveJournal WHERE gameID = ?";
+
+	private static final String SQL_SELECT_LATEST_SNAPSHOT =
+			"SELECT seq, snapshot FROM JournalSnapshot WHERE gameID = ? ORDER BY seq DESC LIMIT 1";
+
+	/**
+	 * The command of a row in a batch for a player that did not execute
+	 * a command (but was pushed or moved by a field action).
+	 */
+	private static final int NO_COMMAND = -1;
+
+	private static final String SQL_SELECT_JOURNAL_TAIL =
+			"SELECT * FROM MoveJournal WHERE gameID = ? AND seq > ? ORDER BY seq ASC";
+
+	private final Connector connector;
+
+	private final Repository repository;
+
+	/**
+	 * The writer executing all access to the database after opening the
+	 * journal; it must execute the tasks in the order they were submitted.
+	 */
+	private final Executor writer;
+
+	private final Board game;
+
+	private final int gameId;
+
+	/**
+	 * The connection on which the statements below were prepared; when the
+	 * repository reconnects to the database, they are prepared again.
+	 */
+	private Connection connection;
+
+	private PreparedStatement insertJournal;
+
+	private PreparedStatement insertSnapshot;
+
+	/**
+	 * The sequence number of the last row appended to the journal.
+	 */
+	private int seq;
+
+	/**
+	 * The state of the players as last written to the journal (or
+	 * the snapshot), for finding out which players changed.
+	 */
+	private final int[] lastX;
+	private final int[] lastY;
+	private final int[] lastHeading;
+	private final int[] lastCheckPoints;
+
+	/**
+	 * The rows not handed to the writer yet; each row has the values
+	 * seq, playerID, command, step, positionX, positionY, heading and
+	 * checkpoints (in this order).
+	 */
+	private List<int[]> batch = new ArrayList<>();
+
+	/**
+	 * Opens the journal of a game, which must already exist in the database,
+	 * and appends a first snapshot of the current state of the game.
+	 *
+	 * @param connector the connector providing the connection to the database
+	 * @param repository the repository, on which all access to the connection
+	 *                   is synchronized and to which failures are reported
+	 * @param writer the single threaded executor writing the journal
+	 * @param game the game
+	 * @throws SQLException if the journal could not be opened
+	 */
+	MoveJournal(Connector connector, Repository repository, Executor writer, Board game) throws SQLException {
+		assert game.getGameId() != null;
+
+		this.connector = connector;
+		this.repository = repository;
+		this.writer = writer;
+		this.game = game;
+		this.gameId = game.getGameId();
+
+		int n = game.getPlayersNumber();
+		lastX = new int[n];
+		lastY = new int[n];
+		lastHeading = new int[n];
+		lastCheckPoints = new int[n];
+
+		synchronized (repository) {
+			Connection connection = connector.getConnection();
+			PreparedStatement ps = connection.prepareStatement(SQL_SELECT_MAX_SEQ);
+			ps.setInt(1, gameId);
+			ResultSet rs = ps.executeQuery();
+			if (rs.next()) {
+				seq = rs.getInt(1);
+			}
+			rs.close();
+			ps.close();
+
+			prepareStatements();
+		}
+
+		appendSnapshot();
+	}
+
+	@Override
+	public void programmingFinished() {
+		// the registers are fixed for the new round now, which is a
+		// good point for a snapshot (the rows of the last round are
+		// not needed anymore for loading the game then)
+		flush();
+		appendSnapshot();
+	}
+
+	@Override
+	public void commandExecuted(Player player, Command command) {
+		journalChanges(player, command);
+	}
+
+	@Override
+	public void registerFinished(int register) {
+		journalChanges(null, null);
+		flush();
+	}
+
+	@Override
+	public void stateRestored() {
+		// after undo or redo, the rows in the journal do not lead to the
+		// state of the game anymore; a snapshot covers all of them
+		flush();
+		appendSnapshot();
+	}
+
+	/**
+	 * Adds rows for all players that changed since the last row to the
+	 * current batch. The rows of players that were pushed are added before
+	 * the row of the player executing the command, so that the journal can
+	 * be replayed in order.
+	 */
+	private void journalChanges(Player active, Command command) {
+		for (int i = 0; i < lastX.length; i++) {
+			Player player = game.getPlayer(i);
+			if (player != active && hasChanged(i, player)) {
+				addRow(i, player, null);
+			}
+		}
+		if (active != null) {
+			addRow(game.getPlayerNumber(active), active, command);
+		}
+	}
+
+	/**
+	 * Prepares the statements of the journal, if they were not prepared yet
+	 * on the current connection of the connector. Must be called by the
+	 * writer while holding the lock of the repository.
+	 */
+	private void prepareStatements() throws SQLException {
+		Connection current = connector.getConnection();
+		if (current != connection) {
+			connection = current;
+			insertJournal = connection.prepareStatement(SQL_INSERT_JOURNAL);
+			insertSnapshot = connection.prepareStatement(SQL_INSERT_SNAPSHOT);
+		}
+	}
+
+	private boolean hasChanged(int i, Player player) {
+		Space space = player.getSpace();
+		return space == null ||
+				lastX[i] != space.x || lastY[i] != space.y ||
+				lastHeading[i] != player.getHeading().ordinal() ||
+				lastCheckPoints[i] != player.getCheckPointCounter();
+	}
+
+	private void addRow(int i, Player player, Command command) {
+		Space space = player.getSpace();
+		remember(i, player);
+		batch.add(new int[] {
+				++seq,
+				i,
+				command != null ? command.ordinal() : NO_COMMAND,
+				game.getStep(),
+				space != null ? space.x : -1,
+				space != null ? space.y : -1,
+				player.getHeading().ordinal(),
+				player.getCheckPointCounter()});
+	}
+
+	private void remember(int i, Player player) {
+		Space space = player.getSpace();
+		lastX[i] = space != null ? space.x : -1;
+		lastY[i] = space != null ? space.y : -1;
+		lastHeading[i] = player.getHeading().ordinal();
+		lastCheckPoints[i] = player.getCheckPointCounter();
+	}
+
+	/**
+	 * Hands the rows of the current batch to the writer, which inserts
+	 * them into the journal in the background.
+	 */
+	private void flush() {
+		if (!batch.isEmpty()) {
+			List<int[]> rows = batch;
+			batch = new ArrayList<>();
+			writer.execute(() -> writeRows(rows));
+		}
+	}
+
+	/**
+	 * Inserts rows into the journal; this runs in the thread of the writer.
+	 * If the connection is broken, the rows are lost, but the next snapshot
+	 * covers them.
+	 */
+	private void writeRows(List<int[]> rows) {
+		synchronized (repository) {
+			if (!repository.isAlive()) {
+				return;
+			}
+			try {
+				prepareStatements();
+				for (int[] row : rows) {
+					insertJournal.setInt(1, gameId);
+					insertJournal.setInt(2, row[0]);
+					insertJournal.setInt(3, row[1]);
+					if (row[2] != NO_COMMAND) {
+						insertJournal.setInt(4, row[2]);
+					} else {
+						insertJournal.setNull(4, Types.TINYINT);
+					}
+					for (int j = 3; j < row.length; j++) {
+						insertJournal.setInt(j + 2, row[j]);
+					}
+					insertJournal.addBatch();
+				}
+				insertJournal.executeBatch();
+			} catch (SQLException e) {
+				// TODO error handling
+				e.printStackTrace();
+				repository.connectionFailed(e);
+				System.err.println("Some DB error while journaling game " + gameId);
+			}
+		}
+	}
+
+	/**
+	 * Appends a full snapshot of the game, which covers all rows of the
+	 * journal up to the current sequence number. The snapshot is taken
+	 * right away, but written by the writer in the background.
+	 */
+	private void appendSnapshot() {
+		GameSnapshot snapshot = GameSnapshot.of(game);
+		for (int i = 0; i < lastX.length; i++) {
+			remember(i, game.getPlayer(i));
+		}
+		int snapshotSeq = seq;
+		writer.execute(() -> writeSnapshot(snapshotSeq, snapshot));
+	}
+
+	private void writeSnapshot(int snapshotSeq, GameSnapshot snapshot) {
+		synchronized (repository) {
+			if (!repository.isAlive()) {
+				return;
+			}
+			try {
+				prepareStatements();
+				insertSnapshot.setInt(1, gameId);
+				insertSnapshot.setInt(2, snapshotSeq);
+				insertSnapshot.setBytes(3, snapshot.toBytes());
+				insertSnapshot.executeUpdate();
+			} catch (SQLException e) {
+				// TODO error handling
+				e.printStackTrace();
+				repository.connectionFailed(e);
+				System.err.println("Some DB error while writing a snapshot of game " + gameId);
+			}
+		}
+	}
+
+	/**
+	 * Appends a snapshot of the game to the journal of a game (without
+	 * opening the journal). This is used instead of updating the rows
+	 * of the game in the persistence mode {@link PersistenceMode#JOURNAL}.
+	 *
+	 * @param connection the connection to the database
+	 * @param game the game
+	 * @throws SQLException if the snapshot could not be written
+	 */
+	static void appendSnapshot(Connection connection, Board game) throws SQLException {
+		int gameId = game.getGameId();
+		int seq = 0;
+		PreparedStatement ps = connection.prepareStatement(SQL_SELECT_MAX_SEQ);
+		ps.setInt(1, gameId);
+		ResultSet rs = ps.executeQuery();
+		if (rs.next()) {
+			seq = rs.getInt(1);
+		}
+		rs.close();
+		ps.close();
+
+		ps = connection.prepareStatement(SQL_INSERT_SNAPSHOT);
+		ps.setInt(1, gameId);
+		ps.setInt(2, seq);
+		ps.setBytes(3, GameSnapshot.of(game).toBytes());
+		ps.executeUpdate();
+		ps.close();
+	}
+
+	/**
+	 * Loads a game from its latest snapshot and replays the rows of the
+	 * journal appended after that snapshot.
+	 *
+	 * @param connection the connection to the database
+	 * @param gameId the id of the game
+	 * @return the game, or null if there is no snapshot for the game
+	 * @throws SQLException if the game could not be read
+	 */
+	static Board loadGame(Connection connection, int gameId) throws SQLException {
+		PreparedStatement ps = connection.prepareStatement(SQL_SELECT_LATEST_SNAPSHOT);
+		ps.setInt(1, gameId);
+		ResultSet rs = ps.executeQuery();
+		int snapshotSeq = -1;
+		byte[] bytes = null;
+		if (rs.next()) {
+			snapshotSeq = rs.getInt(SNAPSHOT_SEQ);
+			bytes = rs.getBytes(SNAPSHOT_SNAPSHOT);
+		}
+		rs.close();
+		ps.close();
+
+		if (bytes == null) {
+			return null;
+		}
+		Board game = GameSnapshot.readFrom(ByteBuffer.wrap(bytes)).restore();
+		if (game == null) {
+			return null;
+		}
+		game.setGameId(gameId);
+
+		ps = connection.prepareStatement(SQL_SELECT_JOURNAL_TAIL);
+		ps.setInt(1, gameId);
+		ps.setInt(2, snapshotSeq);
+		rs = ps.executeQuery();
+		int lastActive = -1;
+		int step = game.getStep();
+		while (rs.next()) {
+			Player player = game.getPlayer(rs.getInt(JOURNAL_PLAYERID));
+			if (player == null) {
+				// TODO error handling
+				continue;
+			}
+			player.setSpace(game.getSpace(rs.getInt(JOURNAL_POSITION_X), rs.getInt(JOURNAL_POSITION_Y)));
+			player.setHeading(Heading.values()[rs.getInt(JOURNAL_HEADING)]);
+			player.setCheckPointCounter(rs.getInt(JOURNAL_CHECKPOINTS));
+			rs.getInt(JOURNAL_COMMAND);
+			if (!rs.wasNull()) {
+				lastActive = game.getPlayerNumber(player);
+				step = rs.getInt(JOURNAL_STEP);
+			}
+		}
+		rs.close();
+		ps.close();
+
+		if (lastActive >= 0) {
+			// continue after the last player whose register was executed
+			int next = lastActive + 1;
+			if (next >= game.getPlayersNumber()) {
+				next = 0;
+				step++;
+			}
+			if (step < Player.NO_REGISTERS) {
+				game.setPhase(Phase.ACTIVATION);
+				game.setStep(step);
+				game.setCurrentPlayer(game.getPlayer(next));
+				for (int i = 0; i < game.getPlayersNumber(); i++) {
+					for (int j = 0; j <= step; j++) {
+						game.getPlayer(i).getProgramField(j).setVisible(true);
+					}
+				}
+			} else {
+				// the round was completed; the game controller needs to
+				// start a new programming phase (with new cards) then
+				game.setPhase(Phase.PROGRAMMING);
+				game.setStep(0);
+				game.setCurrentPlayer(game.getPlayer(0));
+			}
+		}
+		return game;
+	}
+
+}
@@ -0,0 +1,56 @@
+/*
+ *  This file is part of the initial project provided for the
+ *  course "Project in Software Development (02362)" held at
+ *  DTU Compute at the Technical University of Denmark.
+ *
+ *  Copyright (C) 2019, 2020: Ekkart Kindler, ekki@dtu.dk
+ *
+ *  This software is free software; you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation; version 2 of the License.
+ *
+ *  This project is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this project; if not, write to the Free Software
+ *  Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ *
+ */
+package dk.dtu.compute.se.pisd.roborally.dal;
+
+/**
+ * The different ways in which the {@link Repository} can store games in
+ * the database. The mode is configured by the optional property
+ * <code>PERSISTENCE</code> in the file <code>db.properties</code>;
+ * the default is {@link #NORMALISED}.
+ */
+enum PersistenceMode {
+
+    /**
+     * The state of a game is written row by row to the tables
+     * <code>Game</code> and <code>Player</code>.
+     */
+    NORMALISED,
+
+    /**
+     * The complete state of a game is written as a single binary snapshot
+     * to the <code>Game</code> row, so that saving and loading a game is
+     * a single row write resp. read. The normalised tables are still
+     * written, but asynchronously, so that they can be used for queries.
+     */
+    SNAPSHOT,
+
+    /**
+     * The game is persisted as an append-only journal: every executed
+     * register appends compact rows with the resulting positions and
+     * headings of the robots to the table <code>MoveJournal</code>, and
+     * full snapshots of the game are appended to <code>JournalSnapshot</code>
+     * at the beginning of every activation phase. A game is loaded from its
+     * latest snapshot and the rows of the journal after that snapshot.
+     */
+    JOURNAL
+
+}
@@ -22,16 +22,24 @@
 package dk.dtu.compute.se.pisd.roborally.dal;
 
 import dk.dtu.compute.se.pisd.roborally.controller.BoardFactory;
+import dk.dtu.compute.se.pisd.roborally.controller.GameListener;
+import dk.dtu.compute.se.pisd.roborally.fileaccess.GameSnapshot;
 import dk.dtu.compute.se.pisd.roborally.model.Board;
 import dk.dtu.compute.se.pisd.roborally.model.Heading;
 import dk.dtu.compute.se.pisd.roborally.model.Phase;
 import dk.dtu.compute.se.pisd.roborally.model.Player;
 
+import java.nio.ByteBuffer;
 import java.sql.*;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Date;
 import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
 
 /**
  * ...
@@ -65,48 +73,235 @@ class Repository implements IRepository {
 
 	private static final String PLAYER_HEADING = "heading";
 
+	private static final String GAME_SNAPSHOT = "snapshot";
+
 	private Connector connector;
+
+	private final PersistenceMode mode;
+
+	/**
+	 * The executor writing the normalised tables in the background, when
+	 * the repository is in persistence mode {@link PersistenceMode#SNAPSHOT}.
+	 * It has a single thread, so that these writes are done in the order
+	 * in which the games were saved.
+	 */
+	private ExecutorService normalisedWriter;
+
+	/**
+	 * The executor writing the journals of games in the background, when
+	 * the repository is in persistence mode {@link PersistenceMode#JOURNAL}.
+	 * It has a single thread, so that the rows of a journal are inserted
+	 * in the order in which they were appended.
+	 */
+	private ExecutorService journalWriter;
+
+	private static final long HEARTBEAT_INTERVAL_MILLIS = 10000;
+
+	private static final int VALIDATION_TIMEOUT_SECONDS = 5;
+
+	private static final long MIN_BACKOFF_MILLIS = 500;
+
+	private static final long MAX_BACKOFF_MILLIS = 30000;
+
+	/**
+	 * The class of SQL states indicating that the connection is broken.
+	 */
+	private static final String SQLSTATE_CONNECTION_EXCEPTION = "08";
+
+	/**
+	 * The executor running the {@link #heartbeat()} in the background.
+	 */
+	private final ScheduledExecutorService heartbeat;
+
+	/**
+	 * The next run of the heartbeat; there is at most one pending run,
+	 * which is replaced when the heartbeat is rescheduled.
+	 */
+	private ScheduledFuture<?> nextHeartbeat;
+
+	private volatile boolean healthy = true;
+
+	private long backoff = MIN_BACKOFF_MILLIS;
 	
 	Repository(Connector connector){
 		this.connector = connector;
+		this.mode = connector.getPersistenceMode();
+		this.heartbeat = Executors.newSingleThreadScheduledExecutor(runnable -> {
+			Thread thread = new Thread(runnable, "RoboRally DB heartbeat");
+			thread.setDaemon(true);
+			return thread;
+		});
+		scheduleHeartbeat(HEARTBEAT_INTERVAL_MILLIS);
+		if (mode == PersistenceMode.SNAPSHOT) {
+			normalisedWriter = Executors.newSingleThreadExecutor(runnable -> {
+				Thread thread = new Thread(runnable, "RoboRally normalised DB writer");
+				thread.setDaemon(true);
+				return thread;
+			});
+		} else if (mode == PersistenceMode.JOURNAL) {
+			journalWriter = Executors.newSingleThreadExecutor(runnable -> {
+				Thread thread = new Thread(runnable, "RoboRally DB journal writer");
+				thread.setDaemon(true);
+				return thread;
+			});
+		}
 	}
 
+	/**
+	 * Returns whether the connection to the database is considered to be
+	 * working. This does not access the database: the health is tracked by
+	 * a background heartbeat and by the failures of the actual statements.
+	 *
+	 * @return true if the connection is healthy
+	 */
 	boolean isAlive() {
-		boolean result;
-        try {
-            result = connector.getConnection().isValid(5);
-        } catch (Exception e) {
-			result = false;
-        }
-		if (!result) {
-			List<PreparedStatement> psList = Arrays.asList(
-					select_games_stmt,
-					insert_game_stmt,
-					select_game_stmt,
-					select_players_stmt,
-					select_players_asc_stmt);
-			for (PreparedStatement ps : psList) {
-				if (ps != null) {
-					try {
-						ps.close();
-					} catch (SQLException ex) {}
+		return healthy;
+	}
+
+	/**
+	 * Must be called when a statement failed. If the failure indicates
+	 * that the connection is broken, the connection is marked as unhealthy
+	 * and the heartbeat tries to reconnect right away.
+	 *
+	 * @param e the exception of the failed statement
+	 */
+	void connectionFailed(SQLException e) {
+		String state = e.getSQLState();
+		if (e instanceof SQLRecoverableException ||
+				e instanceof SQLNonTransientConnectionException ||
+				(state != null && state.startsWith(SQLSTATE_CONNECTION_EXCEPTION))) {
+			synchronized (this) {
+				if (healthy) {
+					healthy = false;
+					backoff = MIN_BACKOFF_MILLIS;
+					// replaces the pending heartbeat, so that there is
+					// still only one heartbeat reconnecting
+					scheduleHeartbeat(0);
 				}
 			}
+		}
+	}
 
-			Connection connection = connector.getConnection();
-			if (connection != null) {
+	private synchronized void scheduleHeartbeat(long delayMillis) {
+		if (nextHeartbeat != null) {
+			// does not interrupt the heartbeat if it is running right now
+			nextHeartbeat.cancel(false);
+		}
+		nextHeartbeat = heartbeat.schedule(this::heartbeat, delayMillis, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * The heartbeat, which runs in a background thread. While the connection
+	 * is healthy, it is validated in regular intervals. When the connection
+	 * is broken, the heartbeat tries to reconnect with an exponential backoff.
+	 * The connection is validated and the new connection is opened without
+	 * holding the lock of the repository, so that the statements of the game
+	 * never wait for the round trips of the heartbeat; only swapping in the
+	 * new connection is done while holding the lock. While the connection is
+	 * not healthy, the statements fail right away.
+	 */
+	private void heartbeat() {
+		if (healthy) {
+			boolean valid;
+			try {
+				valid = connector.getConnection().isValid(VALIDATION_TIMEOUT_SECONDS);
+			} catch (SQLException e) {
+				valid = false;
+			}
+			if (valid) {
+				scheduleHeartbeat(HEARTBEAT_INTERVAL_MILLIS);
+				return;
+			}
+			synchronized (this) {
+				healthy = false;
+				backoff = MIN_BACKOFF_MILLIS;
+			}
+		}
+
+		Connection connection;
+		try {
+			connection = connector.openConnection();
+		} catch (SQLException e) {
+			long delay;
+			synchronized (this) {
+				delay = backoff;
+				backoff = Math.min(2 * backoff, MAX_BACKOFF_MILLIS);
+			}
+			System.err.println("Reconnecting to the database failed (next attempt in " +
+					delay + " ms): " + e.getMessage());
+			scheduleHeartbeat(delay);
+			return;
+		}
+
+		synchronized (this) {
+			resetStatements();
+			connector.replaceConnection(connection);
+			healthy = true;
+		}
+		scheduleHeartbeat(HEARTBEAT_INTERVAL_MILLIS);
+	}
+
+	/**
+	 * Checks whether the connection is healthy, so that statements fail right
+	 * away instead of waiting for a broken connection, while the heartbeat
+	 * reconnects in the background.
+	 *
+	 * @return true if the connection is healthy
+	 */
+	private boolean checkAlive() {
+		if (!healthy) {
+			// TODO error handling
+			System.err.println("The DB is not available right now");
+			return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Closes all prepared statements, so that they will be prepared again
+	 * (on the new connection) when they are used next time.
+	 */
+	private void resetStatements() {
+		List<PreparedStatement> psList = Arrays.asList(
+				select_games_stmt,
+				insert_game_stmt,
+				select_game_stmt,
+				select_players_stmt,
+				select_game_state_stmt,
+				insert_game_snapshot_stmt,
+				update_game_snapshot_stmt,
+				select_game_snapshot_stmt,
+				update_current_player_stmt,
+				insert_player_stmt,
+				update_player_stmt);
+		for (PreparedStatement ps : psList) {
+			if (ps != null) {
 				try {
-					connection.close();
+					ps.close();
 				} catch (SQLException ex) {}
 			}
 		}
-
-		return result;
-    }
+		select_games_stmt = null;
+		insert_game_stmt = null;
+		select_game_stmt = null;
+		select_players_stmt = null;
+		select_game_state_stmt = null;
+		insert_game_snapshot_stmt = null;
+		update_game_snapshot_stmt = null;
+		select_game_snapshot_stmt = null;
+		update_current_player_stmt = null;
+		insert_player_stmt = null;
+		update_player_stmt = null;
+	}
 
 	@Override
-	public boolean createGameInDB(Board game) {
-		if (game.getGameId() == null) {
+	public synchronized boolean createGameInDB(Board game) {
+		if (!checkAlive()) {
+			return false;
+		}
+		if (game.getGameId() == null && mode == PersistenceMode.SNAPSHOT) {
+			return createGameSnapshotInDB(game);
+		} else if (game.getGameId() == null) {
 			Connection connection = connector.getConnection();
 			try {
 				connection.setAutoCommit(false);
@@ -161,10 +356,16 @@ class Repository implements IRepository {
 
 				connection.commit();
 				connection.setAutoCommit(true);
+
+				if (mode == PersistenceMode.JOURNAL) {
+					// the journal of the game starts with a snapshot
+					MoveJournal.appendSnapshot(connection, game);
+				}
 				return true;
 			} catch (SQLException e) {
 				// TODO error handling
 				e.printStackTrace();
+				connectionFailed(e);
 				System.err.println("Some DB error");
 				
 				try {
@@ -173,6 +374,7 @@ class Repository implements IRepository {
 				} catch (SQLException e1) {
 					// TODO error handling
 					e1.printStackTrace();
+					connectionFailed(e1);
 				}
 			}
 		} else {
@@ -182,9 +384,29 @@ class Repository implements IRepository {
 	}
 		
 	@Override
-	public boolean updateGameInDB(Board game) {
+	public synchronized boolean updateGameInDB(Board game) {
 		assert game.getGameId() != null;
-		
+		if (!checkAlive()) {
+			return false;
+		}
+		if (mode == PersistenceMode.SNAPSHOT) {
+			return updateGameSnapshotInDB(game);
+		} else if (mode == PersistenceMode.JOURNAL) {
+			// in the journal mode, the rows of the game are never updated;
+			// instead a snapshot of the game is appended
+			try {
+				MoveJournal.appendSnapshot(connector.getConnection(), game);
+				return true;
+			} catch (SQLException e) {
+				// TODO error handling
+				e.printStackTrace();
+				connectionFailed(e);
+				System.err.println("Some DB error");
+				return false;
+			}
+		}
+
+
 		Connection connection = connector.getConnection();
 		try {
 			connection.setAutoCommit(false);
@@ -214,6 +436,7 @@ class Repository implements IRepository {
 		} catch (SQLException e) {
 			// TODO error handling
 			e.printStackTrace();
+			connectionFailed(e);
 			System.err.println("Some DB error");
 			
 			try {
@@ -222,6 +445,7 @@ class Repository implements IRepository {
 			} catch (SQLException e1) {
 				// TODO error handling
 				e1.printStackTrace();
+				connectionFailed(e1);
 			}
 		}
 
@@ -229,37 +453,105 @@ class Repository implements IRepository {
 	}
 	
 	@Override
-	public Board loadGameFromDB(int id) {
-		Board game;
+	public synchronized Board loadGameFromDB(int id) {
+		if (!checkAlive()) {
+			return null;
+		}
+		if (mode != PersistenceMode.NORMALISED) {
+			Board game = null;
+			if (mode == PersistenceMode.SNAPSHOT) {
+				game = loadGameSnapshotFromDB(id);
+			} else {
+				try {
+					game = MoveJournal.loadGame(connector.getConnection(), id);
+				} catch (SQLException e) {
+					// TODO error handling
+					e.printStackTrace();
+					connectionFailed(e);
+					System.err.println("Some DB error");
+				} catch (IllegalArgumentException e) {
+					System.err.println("Snapshot of game " + id + " cannot be read: " + e.getMessage());
+				}
+			}
+			if (game != null) {
+				return game;
+			}
+			// games saved before the snapshot or journal mode was switched
+			// on do not have a snapshot; these are loaded from the normalised
+			// tables below
+		}
+
+		Board game = null;
 		try {
-			// XXX here, we could actually use a simpler statement
-			//     which is not updatable, but we reuse the one from
-			//     above for simplicity
-			PreparedStatement ps = getSelectGameStatementU();
+			// The game and all its players are fetched with a single joined
+			// query, which is streamed row by row from the server; this way,
+			// loading a game takes one round trip to the database, independently
+			// of the number of players.
+			PreparedStatement ps = getSelectGameStateStatement();
 			ps.setInt(1, id);
-			
-			ResultSet rs = ps.executeQuery();
+
 			int playerNo = -1;
-			if (rs.next()) {
-				// TODO V4b: and we should also store the name of the used game board
-				//      in the database, and load the corresponding board from the
-				//      JSON file. For now, we use the default game board.
-				game = BoardFactory.getInstance().createBoard(null);
-				if (game == null) {
-					return null;
+			int i = 0;
+			// the streamed result set must be closed on all paths, since no
+			// other statement can be executed on the connection before
+			try (ResultSet rs = ps.executeQuery()) {
+				while (rs.next()) {
+					if (game == null) {
+						// TODO V4b: and we should also store the name of the used game board
+						//      in the database, and load the corresponding board from the
+						//      JSON file. For now, we use the default game board.
+						game = BoardFactory.getInstance().createBoard(null);
+						if (game == null) {
+							return null;
+						}
+						playerNo = rs.getInt(GAME_CURRENTPLAYER);
+						int phase = rs.getInt(GAME_PHASE);
+						if (phase < 0 || phase >= Phase.values().length) {
+							// TODO error handling
+							System.err.println("Game " + id + " in DB has an invalid phase " + phase + "!");
+							return null;
+						}
+						// TODO currently we do not set the games name (needs to be added)
+						game.setPhase(Phase.values()[phase]);
+						game.setStep(rs.getInt(GAME_STEP));
+						game.setGameId(id);
+					}
+
+					int playerId = rs.getInt(PLAYER_PLAYERID);
+					if (rs.wasNull()) {
+						// the outer join returns a single row without a
+						// player, if the game does not have any players
+						continue;
+					}
+					if (i++ == playerId) {
+						// TODO this should be more defensive
+						String name = rs.getString(JOINED_PLAYER_NAME);
+						String colour = rs.getString(PLAYER_COLOUR);
+						int heading = rs.getInt(PLAYER_HEADING);
+						if (heading < 0 || heading >= Heading.values().length) {
+							// TODO error handling
+							System.err.println("Player " + playerId + " of game " + id +
+									" in DB has an invalid heading " + heading + "!");
+							return null;
+						}
+						Player player = new Player(game, colour, name);
+						game.addPlayer(player);
+
+						int x = rs.getInt(PLAYER_POSITION_X);
+						int y = rs.getInt(PLAYER_POSITION_Y);
+						player.setSpace(game.getSpace(x,y));
+						player.setHeading(Heading.values()[heading]);
+					} else {
+						// TODO error handling
+						System.err.println("Game in DB does not have a player with id " + i +"!");
+					}
 				}
-				playerNo = rs.getInt(GAME_CURRENTPLAYER);
-				// TODO currently we do not set the games name (needs to be added)
-				game.setPhase(Phase.values()[rs.getInt(GAME_PHASE)]);
-				game.setStep(rs.getInt(GAME_STEP));
-			} else {
+			}
+
+			if (game == null) {
 				// TODO error handling
 				return null;
 			}
-			rs.close();
-
-			game.setGameId(id);			
-			loadPlayersFromDB(game);
 
 			if (playerNo >= 0 && playerNo < game.getPlayersNumber()) {
 				game.setCurrentPlayer(game.getPlayer(playerNo));
@@ -268,7 +560,10 @@ class Repository implements IRepository {
 				return null;
 			}
 
-			/* TODO V4a: this method needs to be implemented first
+			/* TODO V4a: the card fields should be added to the joined query
+			         SQL_SELECT_GAME_STATE (or be returned as an additional
+			         result set of the same statement), so that loading
+			         a game still takes only one round trip.
 			loadCardFieldsFromDB(game);
 			*/
 
@@ -276,18 +571,37 @@ class Repository implements IRepository {
 		} catch (SQLException e) {
 			// TODO error handling
 			e.printStackTrace();
+			connectionFailed(e);
 			System.err.println("Some DB error");
 		}
 		return null;
 	}
 	
 	@Override
-	public List<GameInDB> getGames() {
+	public synchronized GameListener openJournal(Board game) {
+		if (mode == PersistenceMode.JOURNAL && game.getGameId() != null && checkAlive()) {
+			try {
+				return new MoveJournal(connector, this, journalWriter, game);
+			} catch (SQLException e) {
+				// TODO error handling
+				e.printStackTrace();
+				connectionFailed(e);
+				System.err.println("Some DB error");
+			}
+		}
+		return null;
+	}
+
+	@Override
+	public synchronized List<GameInDB> getGames() {
 		// TODO when there are many games in the DB, fetching all available games
 		//      from the DB is a bit extreme; eventually there should a
 		//      method that can filter the returned games in order to
 		//      reduce the number of the returned games.
 		List<GameInDB> result = new ArrayList<>();
+		if (!checkAlive()) {
+			return result;
+		}
 		try {
 			PreparedStatement ps = getSelectGameIdsStatement();
 			ResultSet rs = ps.executeQuery();
@@ -300,10 +614,180 @@ class Repository implements IRepository {
 		} catch (SQLException e) {
 			// TODO proper error handling
 			e.printStackTrace();
+			connectionFailed(e);
 		}
 		return result;		
 	}
 
+	/**
+	 * Creates the game in the database by inserting a single Game row with
+	 * the binary snapshot of the game. The rows of the players are inserted
+	 * asynchronously afterwards.
+	 */
+	private boolean createGameSnapshotInDB(Board game) {
+		GameSnapshot snapshot = GameSnapshot.of(game);
+		try {
+			PreparedStatement ps = getInsertGameSnapshotStatementRGK();
+			// TODO: the name should eventually be set by the user
+			ps.setString(1, "Date: " +  new Date()); // instead of name
+			ps.setInt(2, snapshot.phase.ordinal());
+			ps.setInt(3, snapshot.step);
+			ps.setBytes(4, snapshot.toBytes());
+
+			int affectedRows = ps.executeUpdate();
+			ResultSet generatedKeys = ps.getGeneratedKeys();
+			if (affectedRows == 1 && generatedKeys.next()) {
+				game.setGameId(generatedKeys.getInt(1));
+			}
+			generatedKeys.close();
+		} catch (SQLException e) {
+			// TODO error handling
+			e.printStackTrace();
+			connectionFailed(e);
+			System.err.println("Some DB error");
+			return false;
+		}
+
+		if (game.getGameId() != null) {
+			int gameId = game.getGameId();
+			normalisedWriter.submit(() -> writePlayersFromSnapshot(gameId, snapshot, true));
+			return true;
+		}
+		return false;
+	}
+
+	/**
+	 * Updates the game in the database by writing the binary snapshot of the
+	 * game to its Game row, which is a single row update. The rows of the
+	 * players are updated asynchronously afterwards.
+	 */
+	private boolean updateGameSnapshotInDB(Board game) {
+		GameSnapshot snapshot = GameSnapshot.of(game);
+		int gameId = game.getGameId();
+		try {
+			PreparedStatement ps = getUpdateGameSnapshotStatement();
+			ps.setInt(1, snapshot.phase.ordinal());
+			ps.setInt(2, snapshot.step);
+			ps.setBytes(3, snapshot.toBytes());
+			ps.setInt(4, gameId);
+			if (ps.executeUpdate() != 1) {
+				// TODO error handling
+				System.err.println("Game " + gameId + " does not exist in the DB!");
+				return false;
+			}
+		} catch (SQLException e) {
+			// TODO error handling
+			e.printStackTrace();
+			connectionFailed(e);
+			System.err.println("Some DB error");
+			return false;
+		}
+
+		normalisedWriter.submit(() -> writePlayersFromSnapshot(gameId, snapshot, false));
+		return true;
+	}
+
+	/**
+	 * Loads a game from the binary snapshot in its Game row.
+	 *
+	 * @return the game, or null if the game does not have a (readable) snapshot
+	 */
+	private Board loadGameSnapshotFromDB(int id) {
+		try {
+			PreparedStatement ps = getSelectGameSnapshotStatement();
+			ps.setInt(1, id);
+
+			byte[] bytes = null;
+			ResultSet rs = ps.executeQuery();
+			if (rs.next()) {
+				bytes = rs.getBytes(GAME_SNAPSHOT);
+			}
+			rs.close();
+
+			if (bytes != null) {
+				Board game = GameSnapshot.readFrom(ByteBuffer.wrap(bytes)).restore();
+				if (game != null) {
+					game.setGameId(id);
+				}
+				return game;
+			}
+		} catch (SQLException e) {
+			// TODO error handling
+			e.printStackTrace();
+			connectionFailed(e);
+			System.err.println("Some DB error");
+		} catch (IllegalArgumentException e) {
+			System.err.println("Snapshot of game " + id + " cannot be read: " + e.getMessage());
+		}
+		return null;
+	}
+
+	/**
+	 * Writes the players of a snapshot to the normalised Player table and sets
+	 * the current player of the Game row. This runs in the background thread
+	 * of {@link #normalisedWriter}; it works on the snapshot only, so that
+	 * the game itself may be changed in the meantime.
+	 */
+	private void writePlayersFromSnapshot(int gameId, GameSnapshot snapshot, boolean create) {
+		synchronized (this) {
+			Connection connection = connector.getConnection();
+			try {
+				connection.setAutoCommit(false);
+
+				PreparedStatement ps = create ?
+						getInsertPlayerStatement() : getUpdatePlayerStatement();
+				for (int i = 0; i < snapshot.players.length; i++) {
+					GameSnapshot.PlayerState player = snapshot.players[i];
+					if (create) {
+						ps.setInt(1, gameId);
+						ps.setInt(2, i);
+						ps.setString(3, player.name);
+						ps.setString(4, player.color);
+						ps.setInt(5, player.x);
+						ps.setInt(6, player.y);
+						ps.setInt(7, player.heading.ordinal());
+					} else {
+						ps.setInt(1, player.x);
+						ps.setInt(2, player.y);
+						ps.setInt(3, player.heading.ordinal());
+						ps.setInt(4, gameId);
+						ps.setInt(5, i);
+					}
+					ps.addBatch();
+				}
+				ps.executeBatch();
+
+				// the current player can be set only after the players are
+				// inserted, since it is a foreign key
+				ps = getUpdateCurrentPlayerStatement();
+				if (snapshot.currentPlayer >= 0) {
+					ps.setInt(1, snapshot.currentPlayer);
+				} else {
+					ps.setNull(1, Types.TINYINT);
+				}
+				ps.setInt(2, gameId);
+				ps.executeUpdate();
+
+				connection.commit();
+				connection.setAutoCommit(true);
+			} catch (SQLException e) {
+				// TODO error handling
+				e.printStackTrace();
+				connectionFailed(e);
+				System.err.println("Some DB error while writing the players of game " + gameId);
+
+				try {
+					connection.rollback();
+					connection.setAutoCommit(true);
+				} catch (SQLException e1) {
+					// TODO error handling
+					e1.printStackTrace();
+					connectionFailed(e1);
+				}
+			}
+		}
+	}
+
 	private void createPlayersInDB(Board game) throws SQLException {
 		// TODO code should be more defensive
 		PreparedStatement ps = getSelectPlayersStatementU();
@@ -326,34 +810,6 @@ class Repository implements IRepository {
 		rs.close();
 	}
 	
-	private void loadPlayersFromDB(Board game) throws SQLException {
-		PreparedStatement ps = getSelectPlayersASCStatement();
-		ps.setInt(1, game.getGameId());
-		
-		ResultSet rs = ps.executeQuery();
-		int i = 0;
-		while (rs.next()) {
-			int playerId = rs.getInt(PLAYER_PLAYERID);
-			if (i++ == playerId) {
-				// TODO this should be more defensive
-				String name = rs.getString(PLAYER_NAME);
-				String colour = rs.getString(PLAYER_COLOUR);
-				Player player = new Player(game, colour, name);
-				game.addPlayer(player);
-				
-				int x = rs.getInt(PLAYER_POSITION_X);
-				int y = rs.getInt(PLAYER_POSITION_Y);
-				player.setSpace(game.getSpace(x,y));
-				int heading = rs.getInt(PLAYER_HEADING);
-				player.setHeading(Heading.values()[heading]);
-			} else {
-				// TODO error handling
-				System.err.println("Game in DB does not have a player with id " + i +"!");
-			}
-		}
-		rs.close();
-	}
-	
 	private void updatePlayersInDB(Board game) throws SQLException {
 		PreparedStatement ps = getSelectPlayersStatementU();
 		ps.setInt(1, game.getGameId());
@@ -391,11 +847,135 @@ class Repository implements IRepository {
 			} catch (SQLException e) {
 				// TODO error handling
 				e.printStackTrace();
+				connectionFailed(e);
 			}
 		}
 		return insert_game_stmt;
 	}
 
+	private static final String SQL_INSERT_GAME_SNAPSHOT =
+			"INSERT INTO Game(name, currentPlayer, phase, step, snapshot) VALUES (?, NULL, ?, ?, ?)";
+
+	private PreparedStatement insert_game_snapshot_stmt = null;
+
+	private PreparedStatement getInsertGameSnapshotStatementRGK() {
+		if (insert_game_snapshot_stmt == null) {
+			Connection connection = connector.getConnection();
+			try {
+				insert_game_snapshot_stmt = connection.prepareStatement(
+						SQL_INSERT_GAME_SNAPSHOT,
+						Statement.RETURN_GENERATED_KEYS);
+			} catch (SQLException e) {
+				// TODO error handling
+				e.printStackTrace();
+				connectionFailed(e);
+			}
+		}
+		return insert_game_snapshot_stmt;
+	}
+
+	private static final String SQL_UPDATE_GAME_SNAPSHOT =
+			"UPDATE Game SET phase = ?, step = ?, snapshot = ? WHERE gameID = ?";
+
+	private PreparedStatement update_game_snapshot_stmt = null;
+
+	private PreparedStatement getUpdateGameSnapshotStatement() {
+		if (update_game_snapshot_stmt == null) {
+			Connection connection = connector.getConnection();
+			try {
+				update_game_snapshot_stmt = connection.prepareStatement(
+						SQL_UPDATE_GAME_SNAPSHOT);
+			} catch (SQLException e) {
+				// TODO error handling
+				e.printStackTrace();
+				connectionFailed(e);
+			}
+		}
+		return update_game_snapshot_stmt;
+	}
+
+	private static final String SQL_SELECT_GAME_SNAPSHOT =
+			"SELECT snapshot FROM Game WHERE gameID = ?";
+
+	private PreparedStatement select_game_snapshot_stmt = null;
+
+	private PreparedStatement getSelectGameSnapshotStatement() {
+		if (select_game_snapshot_stmt == null) {
+			Connection connection = connector.getConnection();
+			try {
+				select_game_snapshot_stmt = connection.prepareStatement(
+						SQL_SELECT_GAME_SNAPSHOT);
+			} catch (SQLException e) {
+				// TODO error handling
+				e.printStackTrace();
+				connectionFailed(e);
+			}
+		}
+		return select_game_snapshot_stmt;
+	}
+
+	private static final String SQL_UPDATE_CURRENT_PLAYER =
+			"UPDATE Game SET currentPlayer = ? WHERE gameID = ?";
+
+	private PreparedStatement update_current_player_stmt = null;
+
+	private PreparedStatement getUpdateCurrentPlayerStatement() {
+		if (update_current_player_stmt == null) {
+			Connection connection = connector.getConnection();
+			try {
+				update_current_player_stmt = connection.prepareStatement(
+						SQL_UPDATE_CURRENT_PLAYER);
+			} catch (SQLException e) {
+				// TODO error handling
+				e.printStackTrace();
+				connectionFailed(e);
+			}
+		}
+		return update_current_player_stmt;
+	}
+
+	private static final String SQL_INSERT_PLAYER =
+			"INSERT INTO Player(gameID, playerID, name, colour, positionX, positionY, heading) " +
+			"VALUES (?, ?, ?, ?, ?, ?, ?)";
+
+	private PreparedStatement insert_player_stmt = null;
+
+	private PreparedStatement getInsertPlayerStatement() {
+		if (insert_player_stmt == null) {
+			Connection connection = connector.getConnection();
+			try {
+				insert_player_stmt = connection.prepareStatement(
+						SQL_INSERT_PLAYER);
+			} catch (SQLException e) {
+				// TODO error handling
+				e.printStackTrace();
+				connectionFailed(e);
+			}
+		}
+		return insert_player_stmt;
+	}
+
+	private static final String SQL_UPDATE_PLAYER =
+			"UPDATE Player SET positionX = ?, positionY = ?, heading = ? " +
+			"WHERE gameID = ? AND playerID = ?";
+
+	private PreparedStatement update_player_stmt = null;
+
+	private PreparedStatement getUpdatePlayerStatement() {
+		if (update_player_stmt == null) {
+			Connection connection = connector.getConnection();
+			try {
+				update_player_stmt = connection.prepareStatement(
+						SQL_UPDATE_PLAYER);
+			} catch (SQLException e) {
+				// TODO error handling
+				e.printStackTrace();
+				connectionFailed(e);
+			}
+		}
+		return update_player_stmt;
+	}
+
 	private static final String SQL_SELECT_GAME =
 			"SELECT * FROM Game WHERE gameID = ?";
 	
@@ -412,6 +992,7 @@ class Repository implements IRepository {
 			} catch (SQLException e) {
 				// TODO error handling
 				e.printStackTrace();
+				connectionFailed(e);
 			}
 		}
 		return select_game_stmt;
@@ -433,29 +1014,42 @@ class Repository implements IRepository {
 			} catch (SQLException e) {
 				// TODO error handling
 				e.printStackTrace();
+				connectionFailed(e);
 			}
 		}
 		return select_players_stmt;
 	}
 
-	private static final String SQL_SELECT_PLAYERS_ASC =
-			"SELECT * FROM Player WHERE gameID = ? ORDER BY playerID ASC";
-	
-	private PreparedStatement select_players_asc_stmt = null;
-	
-	private PreparedStatement getSelectPlayersASCStatement() {
-		if (select_players_asc_stmt == null) {
+	private static final String JOINED_PLAYER_NAME = "playerName";
+
+	private static final String SQL_SELECT_GAME_STATE =
+			"SELECT g.gameID, g.currentPlayer, g.phase, g.step, " +
+			"p.playerID, p.name AS " + JOINED_PLAYER_NAME + ", p.colour, " +
+			"p.positionX, p.positionY, p.heading " +
+			"FROM Game g LEFT JOIN Player p ON p.gameID = g.gameID " +
+			"WHERE g.gameID = ? ORDER BY p.playerID ASC";
+
+	private PreparedStatement select_game_state_stmt = null;
+
+	private PreparedStatement getSelectGameStateStatement() {
+		if (select_game_state_stmt == null) {
 			Connection connection = connector.getConnection();
 			try {
-				// This statement does not need to be updatable
-				select_players_asc_stmt = connection.prepareStatement(
-						SQL_SELECT_PLAYERS_ASC);
+				// This statement is read only and forward only; with the
+				// fetch size Integer.MIN_VALUE, the MySQL driver streams
+				// the rows instead of buffering the complete result.
+				select_game_state_stmt = connection.prepareStatement(
+						SQL_SELECT_GAME_STATE,
+						ResultSet.TYPE_FORWARD_ONLY,
+						ResultSet.CONCUR_READ_ONLY);
+				select_game_state_stmt.setFetchSize(Integer.MIN_VALUE);
 			} catch (SQLException e) {
 				// TODO error handling
 				e.printStackTrace();
+				connectionFailed(e);
 			}
 		}
-		return select_players_asc_stmt;
+		return select_game_state_stmt;
 	}
 	
 	private static final String SQL_SELECT_GAMES =
@@ -472,6 +1066,7 @@ class Repository implements IRepository {
 			} catch (SQLException e) {
 				// TODO error handling
 				e.printStackTrace();
+				connectionFailed(e);
 			}
 		}
 		return select_games_stmt;
@@ -31,11 +31,29 @@ public class RepositoryAccess {
     
 	private static Repository repository;
 	
+	/**
+	 * Returns the repository, which is created on first use. A broken
+	 * connection does not result in a new repository: the repository
+	 * notices that itself and reconnects in the background.
+	 *
+	 * @return the repository
+	 */
 	public static IRepository getRepository() {
-		if (repository == null || !repository.isAlive()) {
+		if (repository == null) {
 			repository = new Repository(new Connector());
 		}
 		return repository;
 	}
+
+	/**
+	 * Returns whether a database is configured, i.e. whether the file
+	 * <code>db.properties</code> is available. Without it, the repository
+	 * cannot be created.
+	 *
+	 * @return true if a database is configured
+	 */
+	public static boolean isConfigured() {
+		return Connector.isConfigured();
+	}
 	
 }
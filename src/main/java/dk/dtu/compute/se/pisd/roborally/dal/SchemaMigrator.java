@@ -0,0 +1,167 @@
+/*
+ *  This file is part of the initial project provided for the
+ *  course "Project in Software Development (02362)" held at
+ *  DTU Compute at the Technical University of Denmark.
+ *
+ *  Copyright (C) 2019, 2020: Ekkart Kindler, ekki@dtu.dk
+ *
+ *  This software is free software; you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation; version 2 of the License.
+ *
+ *  This project is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this project; if not, write to the Free Software
+ *  Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ *
+ */
+package dk.dtu.compute.se.pisd.roborally.dal;
+
+import dk.dtu.compute.se.pisd.roborally.fileaccess.IOUtil;
+
+import java.sql.*;
+
+/**
+ * Brings the schema of the database up to date. The version of the schema
+ * is recorded in the table <code>SchemaVersion</code>, with one row for
+ * every applied migration. On startup, this costs a single query for the
+ * current version; only if the database is older than this program, the
+ * missing migrations are applied in order.
+ *
+ * The migrations are SQL scripts in the resource folder <code>schemas</code>,
+ * whose statements are separated by <code>;;</code>. New migrations must be
+ * appended to {@link #MIGRATIONS}; migrations which were released already
+ * must never be changed.
+ */
+class SchemaMigrator {
+
+	/**
+	 * The migrations in the order in which they are applied; the migration
+	 * at index i brings the schema to version i+1.
+	 */
+	private static final String[] MIGRATIONS = {
+			"schemas/V1__create_game_and_player.sql",
+			"schemas/V2__add_game_snapshot.sql",
+			"schemas/V3__create_move_journal.sql"
+	};
+
+	/**
+	 * The version of the schema this program works with.
+	 */
+	static final int SCHEMA_VERSION = MIGRATIONS.length;
+
+	private static final String DELIMITER = ";;";
+
+	private static final String SQL_SELECT_VERSION =
+			"SELECT MAX(version) FROM SchemaVersion";
+
+	private static final String SQL_CREATE_VERSION_TABLE =
+			"CREATE TABLE IF NOT EXISTS SchemaVersion (" +
+			"version int NOT NULL, " +
+			"appliedAt timestamp NOT NULL DEFAULT CURRENT_TIMESTAMP, " +
+			"PRIMARY KEY (version))";
+
+	private static final String SQL_INSERT_VERSION =
+			"INSERT INTO SchemaVersion(version) VALUES (?)";
+
+	/**
+	 * SQL state of MySQL when a table does not exist.
+	 */
+	private static final String SQLSTATE_NO_SUCH_TABLE = "42S02";
+
+	/**
+	 * MySQL error code for adding a column that exists already.
+	 */
+	private static final int ER_DUP_FIELDNAME = 1060;
+
+	private final Connection connection;
+
+	SchemaMigrator(Connection connection) {
+		this.connection = connection;
+	}
+
+	/**
+	 * Applies all migrations which are missing in the database.
+	 *
+	 * @throws SQLException if a migration fails; the schema version is then
+	 *         the version of the last migration that succeeded
+	 */
+	void migrate() throws SQLException {
+		int version = getVersion();
+		if (version == SCHEMA_VERSION) {
+			return;
+		} else if (version > SCHEMA_VERSION) {
+			throw new SQLException("The database schema has version " + version +
+					", which is newer than the version " + SCHEMA_VERSION +
+					" supported by this program.");
+		}
+
+		try (Statement statement = connection.createStatement()) {
+			statement.executeUpdate(SQL_CREATE_VERSION_TABLE);
+		}
+		for (int i = version; i < SCHEMA_VERSION; i++) {
+			apply(i + 1, MIGRATIONS[i]);
+		}
+	}
+
+	/**
+	 * Returns the current version of the schema in the database; a
+	 * database without a version table has version 0.
+	 */
+	private int getVersion() throws SQLException {
+		try (Statement statement = connection.createStatement();
+			 ResultSet rs = statement.executeQuery(SQL_SELECT_VERSION)) {
+			return rs.next() ? rs.getInt(1) : 0;
+		} catch (SQLException e) {
+			if (SQLSTATE_NO_SUCH_TABLE.equals(e.getSQLState())) {
+				return 0;
+			}
+			throw e;
+		}
+	}
+
+	private void apply(int version, String resource) throws SQLException {
+		if (SchemaMigrator.class.getClassLoader().getResource(resource) == null) {
+			throw new SQLException("Migration " + resource + " is missing.");
+		}
+		String script = IOUtil.readResource(resource);
+		if (script.isBlank()) {
+			throw new SQLException("Migration " + resource + " is missing or empty.");
+		}
+
+		// Note that MySQL commits DDL statements implicitly, so that a
+		// failing migration cannot be rolled back completely. Therefore,
+		// migrations should consist of a single DDL statement if possible.
+		try (Statement statement = connection.createStatement()) {
+			for (String sql : script.split(DELIMITER)) {
+				if (!sql.isBlank()) {
+					try {
+						statement.executeUpdate(sql);
+					} catch (SQLException e) {
+						if (e.getErrorCode() == ER_DUP_FIELDNAME) {
+							// databases created before the schema was versioned
+							// might have this column already
+							System.err.println("Migration to schema version " + version +
+									": " + e.getMessage() + " (ignored)");
+						} else {
+							throw new SQLException("Migration to schema version " + version +
+									" (" + resource + ") failed: " + e.getMessage(),
+									e.getSQLState(), e.getErrorCode(), e);
+						}
+					}
+				}
+			}
+		}
+
+		try (PreparedStatement ps = connection.prepareStatement(SQL_INSERT_VERSION)) {
+			ps.setInt(1, version);
+			ps.executeUpdate();
+		}
+		System.out.println("Database schema migrated to version " + version + ".");
+	}
+
+}
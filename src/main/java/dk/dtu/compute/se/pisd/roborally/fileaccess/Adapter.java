@@ -24,6 +24,9 @@ package dk.dtu.compute.se.pisd.roborally.fileaccess;
 import com.google.gson.*;
 
 import java.lang.reflect.Type;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * A generic type adapter for Gson, which deals with structures, where
@@ -34,6 +37,13 @@ import java.lang.reflect.Type;
  * the class hierarchy resp. to the static type, which is dynamically sub-typed
  * in the structure. Note that this solution does not work if instances of
  * E itself need to be serialized (typically E would be abstract).
+ *
+ * Version 2 of the format uses short type names instead of class names:
+ * an instance is serialized as its own object with an additional property
+ * {@value #TYPE}, whose value is resolved through a table of registered
+ * types. Objects in the original format (with the properties {@value #CLASSNAME}
+ * and {@value #INSTANCE}) can still be read; their classes are looked up
+ * only once per class name.
  * 
  * @author Menelaos Perdikeas, https://github.com/mperdikeas
  * @author Ekkart Kindler, ekki@dtu.dk
@@ -44,15 +54,56 @@ public class Adapter<E> implements JsonSerializer<E>, JsonDeserializer<E>{
 
     private static final String CLASSNAME = "CLASSNAME";
     private static final String INSTANCE  = "INSTANCE";
+    private static final String TYPE = "type";
+
+    /**
+     * The classes of the original format, by class name.
+     */
+    private static final Map<String, Class<?>> classes = new ConcurrentHashMap<>();
+
+    private final Map<String, Class<? extends E>> types;
+
+    private final Map<Class<?>, String> typeNames = new HashMap<>();
+
+    /**
+     * Creates an adapter for the original format, which uses the
+     * class names of the instances.
+     */
+    public Adapter() {
+        this(Map.of());
+    }
+
+    /**
+     * Creates an adapter, which uses the given short type names for the
+     * registered classes (and the class names for all other classes).
+     *
+     * @param types the registered classes by their type names
+     */
+    public Adapter(Map<String, Class<? extends E>> types) {
+        this.types = types;
+        for (Map.Entry<String, Class<? extends E>> entry : types.entrySet()) {
+            typeNames.put(entry.getValue(), entry.getKey());
+        }
+    }
 
     @Override
     public JsonElement serialize(E src, Type typeOfSrc,
             JsonSerializationContext context) {
 
+        JsonElement elem = context.serialize(src);
+        String typeName = typeNames.get(src.getClass());
+        if (typeName != null && elem.isJsonObject()) {
+            JsonObject retValue = new JsonObject();
+            retValue.addProperty(TYPE, typeName);
+            for (Map.Entry<String, JsonElement> property : elem.getAsJsonObject().entrySet()) {
+                retValue.add(property.getKey(), property.getValue());
+            }
+            return retValue;
+        }
+
         JsonObject retValue = new JsonObject();
         String className = src.getClass().getName();
         retValue.addProperty(CLASSNAME, className);
-        JsonElement elem = context.serialize(src); 
         retValue.add(INSTANCE, elem);
         return retValue;
     }
@@ -61,16 +112,28 @@ public class Adapter<E> implements JsonSerializer<E>, JsonDeserializer<E>{
     public E deserialize(JsonElement json, Type typeOfT,
             JsonDeserializationContext context) throws JsonParseException  {
         JsonObject jsonObject = json.getAsJsonObject();
+        JsonElement type = jsonObject.get(TYPE);
+        if (type != null) {
+            Class<? extends E> klass = types.get(type.getAsString());
+            if (klass == null) {
+                throw new JsonParseException("Unknown type " + type.getAsString());
+            }
+            return context.deserialize(jsonObject, klass);
+        }
+
         JsonPrimitive prim = (JsonPrimitive) jsonObject.get(CLASSNAME);
         String className = prim.getAsString();
 
-        Class<?> klass;
-        try {
-            klass = Class.forName(className);
-        } catch (ClassNotFoundException e) {
-            e.printStackTrace();
-            throw new JsonParseException(e.getMessage());
+        Class<?> klass = classes.get(className);
+        if (klass == null) {
+            try {
+                klass = Class.forName(className);
+            } catch (ClassNotFoundException e) {
+                e.printStackTrace();
+                throw new JsonParseException(e.getMessage());
+            }
+            classes.put(className, klass);
         }
         return context.deserialize(jsonObject.get(INSTANCE), klass);
     }
-}
\ No newline at end of file
+}
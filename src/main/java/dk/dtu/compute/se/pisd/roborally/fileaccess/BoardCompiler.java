@@ -0,0 +1,365 @@
+/*
+ *  This file is part of the initial project provided for the
+ *  course "Project in Software Development (02362)" held at
+ *  DTU Compute at the Technical University of Denmark.
+ *
+ *  Copyright (C) 2019, 2020: Ekkart Kindler, ekki@dtu.dk
+ *
+ *  This software is free software; you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation; version 2 of the License.
+ *
+ *  This project is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this project; if not, write to the Free Software
+ *  Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ *
+ */
+package dk.dtu.compute.se.pisd.roborally.fileaccess;
+
+import dk.dtu.compute.se.pisd.roborally.fileaccess.model.ActionTemplate;
+import dk.dtu.compute.se.pisd.roborally.fileaccess.model.CheckPointTemplate;
+import dk.dtu.compute.se.pisd.roborally.fileaccess.model.ConveyorBeltTemplate;
+import dk.dtu.compute.se.pisd.roborally.model.Heading;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.CRC32;
+
+/**
+ * Compiles board files from JSON into a compact binary format, which can be
+ * loaded at runtime without any parsing. The compiler is run by the build
+ * (see the <code>pom.xml</code>) on all board files in the <code>boards</code>
+ * folder of the compiled resources, and writes the binary board next to each
+ * JSON board file, with the extension {@value #BINARY_EXT}.
+ *
+ * A binary board consists of a header of fixed size with the dimensions of
+ * the board and the checksum of the JSON board file it was compiled from,
+ * a grid with one byte per space, in which the walls of the space are
+ * set as bits (bit <code>i</code> for the heading with ordinal <code>i</code>),
+ * and a table of the actions on the board, ordered by space. Each action
+ * is an entry of fixed size with the index of its space, the type of the
+ * action and its parameters.
+ */
+public class BoardCompiler {
+
+    /**
+     * The extension of binary board files.
+     */
+    public static final String BINARY_EXT = "rrb";
+
+    /**
+     * The version of the binary board format.
+     */
+    static final short FORMAT_VERSION = 1;
+
+    static final int HEADER_SIZE = 28;
+
+    static final int ACTION_SIZE = 12;
+
+    private static final int MAGIC = 0x52524242; // "RRBB"
+
+    private static final byte CONVEYOR_BELT = 1;
+
+    private static final byte CHECK_POINT = 2;
+
+    private static final byte EXPRESS = 2;
+
+    private static final Heading[] NO_WALLS = new Heading[0];
+
+    private static final ActionTemplate[] NO_ACTIONS = new ActionTemplate[0];
+
+    private BoardCompiler() {
+    }
+
+    /**
+     * Compiles all JSON board files in the given folders into binary board
+     * files next to them.
+     *
+     * @param args the folders with the board files
+     * @throws IOException if a board file could not be read or written
+     */
+    public static void main(String[] args) throws IOException {
+        for (String folder : args) {
+            Path directory = Path.of(folder);
+            if (!Files.isDirectory(directory)) {
+                continue;
+            }
+            try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, "*.json")) {
+                for (Path file : files) {
+                    String fileName = file.getFileName().toString();
+                    String name = fileName.substring(0, fileName.length() - ".json".length());
+                    Path target = directory.resolve(name + "." + BINARY_EXT);
+                    compile(name, file, target);
+                    System.out.println("Compiled board " + name + " to " + target);
+                }
+            }
+        }
+    }
+
+    /**
+     * Compiles a JSON board file into a binary board file.
+     *
+     * @param name the name of the board
+     * @param source the JSON board file
+     * @param target the binary board file
+     * @throws IOException if the board file could not be read or written
+     */
+    public static void compile(@NotNull String name, @NotNull Path source, @NotNull Path target) throws IOException {
+        byte[] json = Files.readAllBytes(source);
+        CRC32 crc = new CRC32();
+        crc.update(json);
+        BoardTemplateCache.CompiledBoard board;
+        try (Reader reader = Files.newBufferedReader(source)) {
+            board = BoardReader.read(name, crc.getValue(), reader);
+        }
+
+        ByteBuffer buffer = ByteBuffer.allocate(encodedSize(board));
+        write(board, buffer);
+        buffer.flip();
+
+        Path temp = target.resolveSibling(target.getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+        }
+        Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Returns the size of the binary encoding of the given board.
+     *
+     * @param board the board
+     * @return the size in bytes
+     */
+    static int encodedSize(BoardTemplateCache.CompiledBoard board) {
+        int actions = 0;
+        for (ActionTemplate[] spaceActions : board.actions) {
+            actions += spaceActions.length;
+        }
+        return HEADER_SIZE + gridSize(board.width, board.height) + actions * ACTION_SIZE;
+    }
+
+    private static int gridSize(int width, int height) {
+        // the grid is padded to a multiple of 4, so that the action
+        // table is aligned
+        return (width * height + 3) & ~3;
+    }
+
+    /**
+     * Writes the binary encoding of the given board to the buffer.
+     *
+     * @param board the board
+     * @param buffer the buffer
+     * @throws IllegalArgumentException if a conveyor belt of the board has no heading
+     */
+    static void write(BoardTemplateCache.CompiledBoard board, ByteBuffer buffer) {
+        int width = board.width;
+        int height = board.height;
+        byte[] grid = new byte[gridSize(width, height)];
+        List<long[]> actions = new ArrayList<>();
+        List<ActionTemplate> templates = new ArrayList<>();
+
+        for (int i = 0; i < board.xs.length; i++) {
+            int x = board.xs[i];
+            int y = board.ys[i];
+            if (x >= width || y >= height) {
+                continue;
+            }
+            int index = y * width + x;
+            for (Heading wall : board.walls[i]) {
+                grid[index] |= (byte) (1 << wall.ordinal());
+            }
+            for (ActionTemplate action : board.actions[i]) {
+                if (action instanceof ConveyorBeltTemplate conveyorBelt && conveyorBelt.heading == null) {
+                    throw new IllegalArgumentException("Conveyor belt without heading at (" + x + ", " + y +
+                            ") in board " + board.name);
+                }
+                if (action instanceof ConveyorBeltTemplate || action instanceof CheckPointTemplate) {
+                    actions.add(new long[]{index, templates.size()});
+                    templates.add(action);
+                }
+            }
+        }
+        // stable, so that the order of the actions of a space is kept
+        actions.sort((a, b) -> Long.compare(a[0], b[0]));
+
+        buffer.putInt(MAGIC);
+        buffer.putShort(FORMAT_VERSION);
+        buffer.putShort((short) 0); // reserved
+        buffer.putLong(board.checksum);
+        buffer.putInt(width);
+        buffer.putInt(height);
+        buffer.putInt(actions.size());
+        buffer.put(grid);
+        for (long[] entry : actions) {
+            ActionTemplate action = templates.get((int) entry[1]);
+            buffer.putInt((int) entry[0]);
+            if (action instanceof ConveyorBeltTemplate conveyorBelt) {
+                buffer.put(CONVEYOR_BELT);
+                buffer.put(conveyorBelt.express ? EXPRESS : 0);
+                buffer.putShort((short) 0); // reserved
+                buffer.putInt(conveyorBelt.heading.ordinal());
+            } else {
+                CheckPointTemplate checkPoint = (CheckPointTemplate) action;
+                buffer.put(CHECK_POINT);
+                buffer.put((byte) 0); // reserved
+                buffer.putShort((short) 0); // reserved
+                buffer.putInt(checkPoint.number);
+            }
+        }
+    }
+
+    /**
+     * Returns the checksum of the JSON board file from which the binary
+     * board in the buffer was compiled, without reading the rest of it.
+     *
+     * @param buffer the buffer with the binary board
+     * @return the checksum of the JSON board file
+     * @throws IllegalArgumentException if the buffer does not contain a binary board
+     */
+    static long readChecksum(ByteBuffer buffer) {
+        if (buffer.remaining() < HEADER_SIZE || buffer.getInt(0) != MAGIC) {
+            throw new IllegalArgumentException("Not a RoboRally binary board");
+        }
+        short version = buffer.getShort(4);
+        if (version != FORMAT_VERSION) {
+            throw new IllegalArgumentException("Unsupported binary board version " + version);
+        }
+        return buffer.getLong(8);
+    }
+
+    /**
+     * Reads a binary board from the buffer.
+     *
+     * @param name the name of the board
+     * @param buffer the buffer with the binary board
+     * @return the compiled board
+     * @throws IllegalArgumentException if the buffer does not contain a valid binary board
+     */
+    static BoardTemplateCache.CompiledBoard read(String name, ByteBuffer buffer) {
+        long checksum = readChecksum(buffer);
+        int width = buffer.getInt(16);
+        int height = buffer.getInt(20);
+        int count = buffer.getInt(24);
+        if (width < 0 || height < 0 || count < 0 ||
+                (long) HEADER_SIZE + gridSize(width, height) + (long) count * ACTION_SIZE > buffer.limit()) {
+            throw new IllegalArgumentException("Invalid binary board " + name);
+        }
+        int table = HEADER_SIZE + gridSize(width, height);
+
+        int spaces = 0;
+        int[] xs = new int[16];
+        int[] ys = new int[16];
+        List<Heading[]> walls = new ArrayList<>();
+        List<ActionTemplate[]> actions = new ArrayList<>();
+        List<ActionTemplate> spaceActions = new ArrayList<>();
+        Heading[] headings = Heading.values();
+
+        int action = 0;
+        int next = count > 0 ? buffer.getInt(table) : Integer.MAX_VALUE;
+        for (int index = 0; index < width * height; index++) {
+            byte bits = buffer.get(HEADER_SIZE + index);
+            if (bits == 0 && next != index) {
+                continue;
+            }
+            spaceActions.clear();
+            while (next == index) {
+                int entry = table + action * ACTION_SIZE;
+                spaceActions.add(readAction(buffer.get(entry + 4), buffer.get(entry + 5), buffer.getInt(entry + 8)));
+                action++;
+                next = action < count ? buffer.getInt(table + action * ACTION_SIZE) : Integer.MAX_VALUE;
+            }
+
+            Heading[] spaceWalls = NO_WALLS;
+            if (bits != 0) {
+                spaceWalls = new Heading[Integer.bitCount(bits & 0xFF)];
+                int wall = 0;
+                for (Heading heading : headings) {
+                    if ((bits & (1 << heading.ordinal())) != 0) {
+                        spaceWalls[wall++] = heading;
+                    }
+                }
+            }
+
+            if (spaces == xs.length) {
+                xs = Arrays.copyOf(xs, 2 * spaces);
+                ys = Arrays.copyOf(ys, 2 * spaces);
+            }
+            xs[spaces] = index % width;
+            ys[spaces] = index / width;
+            walls.add(spaceWalls);
+            actions.add(spaceActions.isEmpty() ? NO_ACTIONS : spaceActions.toArray(NO_ACTIONS));
+            spaces++;
+        }
+        if (action != count) {
+            throw new IllegalArgumentException("Invalid action table in binary board " + name);
+        }
+
+        return new BoardTemplateCache.CompiledBoard(name, checksum, width, height,
+                Arrays.copyOf(xs, spaces), Arrays.copyOf(ys, spaces),
+                walls.toArray(new Heading[0][]), actions.toArray(new ActionTemplate[0][]));
+    }
+
+    private static ActionTemplate readAction(byte type, byte flags, int value) {
+        switch (type) {
+            case CONVEYOR_BELT:
+                if (value < 0 || value >= Heading.values().length) {
+                    throw new IllegalArgumentException("Invalid heading " + value + " in binary board");
+                }
+                ConveyorBeltTemplate conveyorBelt = new ConveyorBeltTemplate();
+                conveyorBelt.heading = Heading.values()[value];
+                conveyorBelt.express = (flags & EXPRESS) != 0;
+                return conveyorBelt;
+            case CHECK_POINT:
+                CheckPointTemplate checkPoint = new CheckPointTemplate();
+                checkPoint.number = value;
+                return checkPoint;
+            default:
+                throw new IllegalArgumentException("Unknown action type " + type + " in binary board");
+        }
+    }
+
+    /**
+     * Maps the binary board at the given resource URL into memory; if the
+     * resource is not a file (for example, if it is contained in a jar
+     * file), its contents are read into a buffer instead.
+     *
+     * @param url the URL of the resource
+     * @return the contents of the resource
+     * @throws IOException if the resource could not be read
+     */
+    static ByteBuffer map(@NotNull URL url) throws IOException {
+        if ("file".equals(url.getProtocol())) {
+            try (FileChannel channel = FileChannel.open(Path.of(url.toURI()))) {
+                return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            } catch (URISyntaxException e) {
+                throw new IOException("Invalid resource URL " + url, e);
+            }
+        }
+        try (InputStream inputStream = url.openStream()) {
+            return ByteBuffer.wrap(inputStream.readAllBytes());
+        }
+    }
+
+}
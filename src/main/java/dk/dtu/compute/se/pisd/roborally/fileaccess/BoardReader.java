@@ -0,0 +1,265 @@
+/*
+ *  This file is part of the initial project provided for the
+ *  course "Project in Software Development (02362)" held at
+ *  DTU Compute at the Technical University of Denmark.
+ *
+ *  Copyright (C) 2019, 2020: Ekkart Kindler, ekki@dtu.dk
+ *
+ *  This software is free software; you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation; version 2 of the License.
+ *
+ *  This project is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this project; if not, write to the Free Software
+ *  Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ *
+ */
+package dk.dtu.compute.se.pisd.roborally.fileaccess;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParseException;
+import com.google.gson.stream.JsonReader;
+import dk.dtu.compute.se.pisd.roborally.fileaccess.model.ActionTemplate;
+import dk.dtu.compute.se.pisd.roborally.model.Heading;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A streaming reader for board files, which reads the spaces of a board one
+ * by one with a {@link JsonReader} and adds the walls and actions of the
+ * non-empty spaces directly to a compiled board (see
+ * {@link BoardTemplateCache.CompiledBoard}). Other than reading the file
+ * into a {@link dk.dtu.compute.se.pisd.roborally.fileaccess.model.BoardTemplate}
+ * first, this does not build any objects for empty spaces or for the JSON
+ * structure of the file, so that even very large boards are read in linear
+ * time and with memory proportional to the actual layout of the board.
+ * Only the (small) object of a single action is read as a JSON tree, so
+ * that actions are read by the {@link Adapter} in all versions of the format.
+ *
+ * Version 3 of the format is sparse: instead of a list of spaces, it has
+ * a list of <code>walls</code> in runs and a list of <code>actions</code>
+ * with delta-encoded positions. Positions are indices of the spaces in row
+ * order (<code>y * width + x</code>). The wall runs are a flat list of
+ * numbers, where each run consists of the number of spaces skipped since the
+ * end of the previous run, the length of the run and, for each space of the
+ * run, the bitmask of its walls (bit <code>i</code> for the heading with
+ * ordinal <code>i</code>); runs do not extend over the end of a row. Each
+ * action has an additional property <code>d</code> with the difference of
+ * its position to the position of the previous action. This way, the size
+ * of a board file and the time for reading it are proportional to the
+ * number of walls and actions on the board, and not to its size.
+ */
+class BoardReader {
+
+    private static final Heading[] NO_WALLS = new Heading[0];
+
+    private static final ActionTemplate[] NO_ACTIONS = new ActionTemplate[0];
+
+    private int width;
+    private int height;
+
+    private int spaces = 0;
+    private int[] xs = new int[16];
+    private int[] ys = new int[16];
+    private final List<Heading[]> walls = new ArrayList<>();
+    private final List<ActionTemplate[]> actions = new ArrayList<>();
+
+    private final List<Heading> spaceWalls = new ArrayList<>();
+    private final List<ActionTemplate> spaceActions = new ArrayList<>();
+
+    private int wallCount = 0;
+    private int[] wallIndices = new int[16];
+    private int[] wallMasks = new int[16];
+
+    private int actionCount = 0;
+    private int[] actionIndices = new int[16];
+    private final List<ActionTemplate> sparseActions = new ArrayList<>();
+
+    private BoardReader() {
+    }
+
+    /**
+     * Reads a board file.
+     *
+     * @param name the name of the board
+     * @param checksum the checksum of the board file
+     * @param in the contents of the board file
+     * @return the compiled board
+     * @throws IOException if the board file could not be read or is not valid
+     */
+    static BoardTemplateCache.CompiledBoard read(String name, long checksum, Reader in) throws IOException {
+        BoardReader boardReader = new BoardReader();
+        try (JsonReader reader = LoadBoard.GSON.newJsonReader(in)) {
+            boardReader.readBoard(reader);
+        } catch (JsonParseException | IllegalStateException | IllegalArgumentException e) {
+            throw new IOException("Invalid board file for board " + name + ": " + e.getMessage(), e);
+        }
+        return boardReader.compile(name, checksum);
+    }
+
+    private void readBoard(JsonReader reader) throws IOException {
+        reader.beginObject();
+        while (reader.hasNext()) {
+            switch (reader.nextName()) {
+                case "width" -> width = reader.nextInt();
+                case "height" -> height = reader.nextInt();
+                case "spaces" -> {
+                    reader.beginArray();
+                    while (reader.hasNext()) {
+                        readSpace(reader);
+                    }
+                    reader.endArray();
+                }
+                case "walls" -> readWallRuns(reader);
+                case "actions" -> readActions(reader);
+                default -> reader.skipValue();
+            }
+        }
+        reader.endObject();
+    }
+
+    private void readWallRuns(JsonReader reader) throws IOException {
+        int index = 0;
+        reader.beginArray();
+        while (reader.hasNext()) {
+            int gap = reader.nextInt();
+            int length = reader.nextInt();
+            if (gap < 0 || length < 0) {
+                throw new IllegalArgumentException("Invalid wall run after position " + index);
+            }
+            index += gap;
+            for (int i = 0; i < length; i++) {
+                if (wallCount == wallIndices.length) {
+                    wallIndices = Arrays.copyOf(wallIndices, 2 * wallCount);
+                    wallMasks = Arrays.copyOf(wallMasks, 2 * wallCount);
+                }
+                wallIndices[wallCount] = index++;
+                wallMasks[wallCount] = reader.nextInt();
+                wallCount++;
+            }
+        }
+        reader.endArray();
+    }
+
+    private void readActions(JsonReader reader) throws IOException {
+        int index = 0;
+        reader.beginArray();
+        while (reader.hasNext()) {
+            JsonObject object = LoadBoard.GSON.fromJson(reader, JsonObject.class);
+            JsonElement delta = object.remove("d");
+            int d = delta != null ? delta.getAsInt() : 0;
+            if (d < 0) {
+                throw new IllegalArgumentException("Invalid action position after position " + index);
+            }
+            index += d;
+            ActionTemplate action = LoadBoard.GSON.fromJson(object, ActionTemplate.class);
+            if (action != null) {
+                if (actionCount == actionIndices.length) {
+                    actionIndices = Arrays.copyOf(actionIndices, 2 * actionCount);
+                }
+                actionIndices[actionCount++] = index;
+                sparseActions.add(action);
+            }
+        }
+        reader.endArray();
+    }
+
+    /**
+     * Adds the walls and actions read in the sparse format (version 3) to
+     * the spaces, merging the walls and actions of the same position.
+     */
+    private void mergeSparse() {
+        if (width <= 0) {
+            return;
+        }
+        Heading[] headings = Heading.values();
+        int wall = 0;
+        int action = 0;
+        while (wall < wallCount || action < actionCount) {
+            int index = Math.min(wall < wallCount ? wallIndices[wall] : Integer.MAX_VALUE,
+                    action < actionCount ? actionIndices[action] : Integer.MAX_VALUE);
+            spaceWalls.clear();
+            spaceActions.clear();
+            while (wall < wallCount && wallIndices[wall] == index) {
+                for (Heading heading : headings) {
+                    if ((wallMasks[wall] & (1 << heading.ordinal())) != 0) {
+                        spaceWalls.add(heading);
+                    }
+                }
+                wall++;
+            }
+            while (action < actionCount && actionIndices[action] == index) {
+                spaceActions.add(sparseActions.get(action));
+                action++;
+            }
+            addSpace(index % width, index / width);
+        }
+    }
+
+    private void readSpace(JsonReader reader) throws IOException {
+        int x = -1;
+        int y = -1;
+        spaceWalls.clear();
+        spaceActions.clear();
+
+        reader.beginObject();
+        while (reader.hasNext()) {
+            switch (reader.nextName()) {
+                case "x" -> x = reader.nextInt();
+                case "y" -> y = reader.nextInt();
+                case "walls" -> {
+                    reader.beginArray();
+                    while (reader.hasNext()) {
+                        spaceWalls.add(Heading.valueOf(reader.nextString()));
+                    }
+                    reader.endArray();
+                }
+                case "actions" -> {
+                    reader.beginArray();
+                    while (reader.hasNext()) {
+                        ActionTemplate action = LoadBoard.GSON.fromJson(reader, ActionTemplate.class);
+                        if (action != null) {
+                            spaceActions.add(action);
+                        }
+                    }
+                    reader.endArray();
+                }
+                default -> reader.skipValue();
+            }
+        }
+        reader.endObject();
+        addSpace(x, y);
+    }
+
+    private void addSpace(int x, int y) {
+        if (x >= 0 && y >= 0 && (!spaceWalls.isEmpty() || !spaceActions.isEmpty())) {
+            if (spaces == xs.length) {
+                xs = Arrays.copyOf(xs, 2 * spaces);
+                ys = Arrays.copyOf(ys, 2 * spaces);
+            }
+            xs[spaces] = x;
+            ys[spaces] = y;
+            walls.add(spaceWalls.isEmpty() ? NO_WALLS : spaceWalls.toArray(NO_WALLS));
+            actions.add(spaceActions.isEmpty() ? NO_ACTIONS : spaceActions.toArray(NO_ACTIONS));
+            spaces++;
+        }
+    }
+
+    private BoardTemplateCache.CompiledBoard compile(String name, long checksum) {
+        mergeSparse();
+        return new BoardTemplateCache.CompiledBoard(name, checksum, width, height,
+                Arrays.copyOf(xs, spaces), Arrays.copyOf(ys, spaces),
+                walls.toArray(new Heading[0][]), actions.toArray(new ActionTemplate[0][]));
+    }
+
+}
@@ -0,0 +1,285 @@
+/*
+ *  This file is part of the initial project provided for the
+ *  course "Project in Software Development (02362)" held at
+ *  DTU Compute at the Technical University of Denmark.
+ *
+ *  Copyright (C) 2019, 2020: Ekkart Kindler, ekki@dtu.dk
+ *
+ *  This software is free software; you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation; version 2 of the License.
+ *
+ *  This project is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this project; if not, write to the Free Software
+ *  Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ *
+ */
+package dk.dtu.compute.se.pisd.roborally.fileaccess;
+
+import dk.dtu.compute.se.pisd.roborally.controller.FieldAction;
+import dk.dtu.compute.se.pisd.roborally.fileaccess.model.ActionTemplate;
+import dk.dtu.compute.se.pisd.roborally.model.Board;
+import dk.dtu.compute.se.pisd.roborally.model.Heading;
+import dk.dtu.compute.se.pisd.roborally.model.Space;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+
+/**
+ * A process-wide cache of the boards loaded from resources, so that creating
+ * another game on the same board neither reads nor parses the board file
+ * again. The cache is thread-safe; it is implemented as a singleton.
+ *
+ * The boards are cached by name and by a checksum of the contents of their
+ * file: when a board is {@link #invalidate(String) invalidated}, its file is
+ * read again on the next access, but it is only parsed again, if its contents
+ * actually changed. For every board, a compiled layout of the board is kept,
+ * which is read from the board file by the streaming {@link BoardReader}, and
+ * from which new boards are {@link CompiledBoard#instantiate() instantiated}
+ * directly. If the build compiled the board into a binary board, the
+ * compiled layout is read from the memory-mapped binary board instead, which
+ * needs no parsing at all; the binary board is used only if it was compiled
+ * from the current contents of the board file.
+ */
+public class BoardTemplateCache {
+
+    private static final BoardTemplateCache instance = new BoardTemplateCache();
+
+    /**
+     * The key of a cached board: its name and the checksum of its file.
+     */
+    private record Key(String name, long checksum) {
+    }
+
+    /**
+     * A compiled board: the walls and action templates of all spaces
+     * which have walls or actions, in arrays which can be applied to a
+     * new board without any lookups.
+     */
+    public static class CompiledBoard {
+
+        public final String name;
+        public final long checksum;
+        public final int width;
+        public final int height;
+
+        final int[] xs;
+        final int[] ys;
+        final Heading[][] walls;
+        final ActionTemplate[][] actions;
+
+        CompiledBoard(String name, long checksum, int width, int height,
+                      int[] xs, int[] ys, Heading[][] walls, ActionTemplate[][] actions) {
+            this.name = name;
+            this.checksum = checksum;
+            this.width = width;
+            this.height = height;
+            this.xs = xs;
+            this.ys = ys;
+            this.walls = walls;
+            this.actions = actions;
+        }
+
+        /**
+         * Returns the number of spaces with walls or actions.
+         *
+         * @return the number of non-empty spaces
+         */
+        public int getSpaces() {
+            return xs.length;
+        }
+
+        /**
+         * Creates a new board with the layout of this compiled board.
+         *
+         * @return the new board
+         */
+        public Board instantiate() {
+            Board board = new Board(width, height, name);
+            for (int i = 0; i < xs.length; i++) {
+                Space space = board.getSpace(xs[i], ys[i]);
+                if (space == null) {
+                    continue;
+                }
+                for (Heading wall : walls[i]) {
+                    space.getWalls().add(wall);
+                }
+                for (ActionTemplate action : actions[i]) {
+                    FieldAction fieldAction = LoadBoard.convert(action);
+                    if (fieldAction != null) {
+                        space.getActions().add(fieldAction);
+                    }
+                }
+            }
+            return board;
+        }
+    }
+
+    /**
+     * The key of the current version of each board.
+     */
+    private final ConcurrentHashMap<String, Key> current = new ConcurrentHashMap<>();
+
+    private final ConcurrentHashMap<Key, CompiledBoard> boards = new ConcurrentHashMap<>();
+
+    private final AtomicLong hits = new AtomicLong();
+
+    private final AtomicLong misses = new AtomicLong();
+
+    private BoardTemplateCache() {
+    }
+
+    /**
+     * Returns the cache.
+     *
+     * @return the single instance of the cache
+     */
+    public static BoardTemplateCache getInstance() {
+        return instance;
+    }
+
+    /**
+     * Returns the compiled board for the given resources, reading and
+     * compiling it only if it is not in the cache yet. If there is a binary
+     * board for it (see {@link BoardCompiler}), which was compiled from the
+     * JSON board file with the same checksum, the binary board is mapped
+     * into memory and the layout is taken from it directly; otherwise, the
+     * JSON board file is parsed.
+     *
+     * @param name the name of the board
+     * @param resource the path of the resource with the JSON board file
+     * @param binaryResource the path of the resource with the binary board
+     * @return the compiled board, or null if there is no such resource
+     * @throws IOException if the resource could not be read
+     */
+    CompiledBoard get(@NotNull String name, @NotNull String resource, @NotNull String binaryResource) throws IOException {
+        Key key = current.get(name);
+        if (key != null) {
+            CompiledBoard board = boards.get(key);
+            if (board != null) {
+                hits.incrementAndGet();
+                return board;
+            }
+        }
+
+        misses.incrementAndGet();
+        ClassLoader classLoader = LoadBoard.class.getClassLoader();
+
+        // the checksum is computed in a first pass over the file, so that
+        // the file needs to be parsed only if it is not in the cache yet,
+        // without holding the contents of the file in memory
+        long checksum;
+        try (InputStream inputStream = classLoader.getResourceAsStream(resource)) {
+            if (inputStream == null) {
+                return null;
+            }
+            CheckedInputStream checked = new CheckedInputStream(inputStream, new CRC32());
+            byte[] buffer = new byte[8192];
+            while (checked.read(buffer) >= 0) {
+                // just computing the checksum
+            }
+            checksum = checked.getChecksum().getValue();
+        }
+        Key newKey = new Key(name, checksum);
+
+        CompiledBoard board = boards.get(newKey);
+        URL url = classLoader.getResource(binaryResource);
+        if (board == null && url != null) {
+            // the binary board contains the checksum of the JSON board file
+            // it was compiled from; if the JSON board file changed since,
+            // the binary board is outdated and the JSON board file is parsed
+            try {
+                ByteBuffer buffer = BoardCompiler.map(url);
+                if (BoardCompiler.readChecksum(buffer) == checksum) {
+                    board = BoardCompiler.read(name, buffer);
+                }
+            } catch (IllegalArgumentException e) {
+                // TODO error handling; for now, fall back to the JSON board file
+                System.err.println(e.getMessage());
+            }
+        }
+
+        if (board == null) {
+            try (InputStream inputStream = classLoader.getResourceAsStream(resource)) {
+                if (inputStream == null) {
+                    return null;
+                }
+                board = BoardReader.read(name, checksum,
+                        new InputStreamReader(inputStream, StandardCharsets.UTF_8));
+            }
+        }
+
+        CompiledBoard other = boards.putIfAbsent(newKey, board);
+        if (other != null) {
+            board = other;
+        }
+        Key old = current.put(name, newKey);
+        if (old != null && !old.equals(newKey)) {
+            boards.remove(old);
+        }
+        return board;
+    }
+
+    /**
+     * Returns the compiled board for the given name, if it is in the cache,
+     * without reading anything and without counting the access.
+     *
+     * @param name the name of the board
+     * @return the compiled board, or null if it is not in the cache
+     */
+    public CompiledBoard peek(@NotNull String name) {
+        Key key = current.get(name);
+        return key != null ? boards.get(key) : null;
+    }
+
+    /**
+     * Makes the cache read the file of the given board again on the next
+     * access; the board is parsed again only if the file changed.
+     *
+     * @param name the name of the board
+     */
+    public void invalidate(@NotNull String name) {
+        current.remove(name);
+    }
+
+    /**
+     * Removes all boards from the cache.
+     */
+    public void clear() {
+        current.clear();
+        boards.clear();
+    }
+
+    /**
+     * Returns the number of accesses which were answered from the cache.
+     *
+     * @return the number of cache hits
+     */
+    public long getHits() {
+        return hits.get();
+    }
+
+    /**
+     * Returns the number of accesses which needed to read the board file.
+     *
+     * @return the number of cache misses
+     */
+    public long getMisses() {
+        return misses.get();
+    }
+
+}
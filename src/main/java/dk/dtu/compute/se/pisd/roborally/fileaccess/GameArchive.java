@@ -0,0 +1,353 @@
+/*
+ *  This file is part of the initial project provided for the
+ *  course "Project in Software Development (02362)" held at
+ *  DTU Compute at the Technical University of Denmark.
+ *
+ *  Copyright (C) 2019, 2020: Ekkart Kindler, ekki@dtu.dk
+ *
+ *  This software is free software; you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation; version 2 of the License.
+ *
+ *  This project is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this project; if not, write to the Free Software
+ *  Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ *
+ */
+package dk.dtu.compute.se.pisd.roborally.fileaccess;
+
+import dk.dtu.compute.se.pisd.roborally.model.Board;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * An archive of finished games. The games are appended as compressed
+ * records to archive files in a directory; when an archive file reaches
+ * {@link #MAX_FILE_SIZE}, the next one is started. Each record contains a
+ * game in the format of {@link SaveFile} (header and {@link GameSnapshot}),
+ * compressed with {@link Deflater} and prefixed by its compressed and
+ * uncompressed length and a CRC32 checksum of the uncompressed data.
+ *
+ * Next to every archive file, there is an index file with the offset of
+ * every record (as a long), so that the n-th game of a file can be read
+ * without reading the games before it. For going through all games of the
+ * archive, {@link #reader()} provides a reader which reads one game at
+ * a time, so that the memory needed does not depend on the number of
+ * archived games. Records are always located by their offset in the index,
+ * so that a record which was written without its index entry (when the
+ * application crashed in between) is skipped.
+ */
+public class GameArchive {
+
+    /**
+     * The size of an archive file in bytes, beyond which the next archive
+     * file is started.
+     */
+    public static final long MAX_FILE_SIZE = 64L * 1024 * 1024;
+
+    private static final String ARCHIVE_SUFFIX = ".rra";
+
+    private static final String INDEX_SUFFIX = ".idx";
+
+    private static final int RECORD_HEADER_SIZE = 12;
+
+    private static final int INDEX_ENTRY_SIZE = 8;
+
+    private final Path directory;
+
+    private int currentFile;
+
+    private final Deflater deflater = new Deflater(Deflater.BEST_COMPRESSION);
+
+    /**
+     * Opens the archive in the given directory, which is created if it
+     * does not exist yet. New games are appended to the last archive file.
+     *
+     * @param directory the directory of the archive
+     * @throws IOException if the directory could not be created
+     */
+    public GameArchive(@NotNull Path directory) throws IOException {
+        this.directory = directory;
+        Files.createDirectories(directory);
+        currentFile = 0;
+        while (Files.exists(archivePath(currentFile + 1))) {
+            currentFile++;
+        }
+    }
+
+    private Path archivePath(int file) {
+        return directory.resolve(String.format("games-%05d%s", file, ARCHIVE_SUFFIX));
+    }
+
+    private Path indexPath(int file) {
+        return directory.resolve(String.format("games-%05d%s", file, INDEX_SUFFIX));
+    }
+
+    /**
+     * Returns the number of archive files.
+     *
+     * @return the number of archive files
+     */
+    public synchronized int getFiles() {
+        return Files.exists(archivePath(currentFile)) ? currentFile + 1 : currentFile;
+    }
+
+    /**
+     * Returns the number of games in the given archive file.
+     *
+     * @param file the number of the archive file
+     * @return the number of games in this file
+     * @throws IOException if the index of the file could not be read
+     */
+    public int getGames(int file) throws IOException {
+        Path index = indexPath(file);
+        return Files.exists(index) ? (int) (Files.size(index) / INDEX_ENTRY_SIZE) : 0;
+    }
+
+    /**
+     * Appends a game to the archive.
+     *
+     * @param board the game
+     * @throws IOException if the game could not be appended
+     */
+    public void append(@NotNull Board board) throws IOException {
+        append(GameSnapshot.of(board));
+    }
+
+    /**
+     * Appends a snapshot of a game to the archive. Since the snapshot does
+     * not refer to the game anymore, this can be done in a background
+     * thread while the game goes on.
+     *
+     * @param snapshot the snapshot of the game
+     * @throws IOException if the game could not be appended
+     */
+    public synchronized void append(@NotNull GameSnapshot snapshot) throws IOException {
+        ByteBuffer data = ByteBuffer.allocate(SaveFile.encodedSize(snapshot));
+        SaveFile.write(snapshot, System.currentTimeMillis(), data);
+        data.flip();
+
+        CRC32 crc = new CRC32();
+        crc.update(data.array(), 0, data.limit());
+
+        deflater.reset();
+        deflater.setInput(data.array(), 0, data.limit());
+        deflater.finish();
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream(data.limit());
+        byte[] chunk = new byte[1024];
+        while (!deflater.finished()) {
+            int n = deflater.deflate(chunk);
+            compressed.write(chunk, 0, n);
+        }
+
+        ByteBuffer record = ByteBuffer.allocate(RECORD_HEADER_SIZE + compressed.size());
+        record.putInt(compressed.size());
+        record.putInt(data.limit());
+        record.putInt((int) crc.getValue());
+        record.put(compressed.toByteArray());
+        record.flip();
+
+        if (Files.exists(archivePath(currentFile)) &&
+                Files.size(archivePath(currentFile)) + record.limit() > MAX_FILE_SIZE) {
+            currentFile++;
+        }
+        try (FileChannel archive = FileChannel.open(archivePath(currentFile),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+             FileChannel index = FileChannel.open(indexPath(currentFile),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+            ByteBuffer offset = ByteBuffer.allocate(INDEX_ENTRY_SIZE);
+            offset.putLong(archive.size());
+            offset.flip();
+            while (record.hasRemaining()) {
+                archive.write(record);
+            }
+            // the index is written after the record, so that it never
+            // refers to a record which is not there
+            while (offset.hasRemaining()) {
+                index.write(offset);
+            }
+        }
+    }
+
+    /**
+     * Reads the n-th game of an archive file, using the index of the file.
+     *
+     * @param file the number of the archive file
+     * @param game the number of the game within this file
+     * @return the snapshot of the game
+     * @throws IOException if the game could not be read
+     */
+    public GameSnapshot read(int file, int game) throws IOException {
+        long offset;
+        try (FileChannel index = FileChannel.open(indexPath(file), StandardOpenOption.READ)) {
+            ByteBuffer entry = ByteBuffer.allocate(INDEX_ENTRY_SIZE);
+            if (game < 0 || index.read(entry, (long) game * INDEX_ENTRY_SIZE) < INDEX_ENTRY_SIZE) {
+                throw new IOException("No game " + game + " in archive file " + file);
+            }
+            offset = entry.getLong(0);
+        }
+        Inflater inflater = new Inflater();
+        try (FileChannel archive = FileChannel.open(archivePath(file), StandardOpenOption.READ)) {
+            return readRecord(archive, offset, inflater);
+        } finally {
+            inflater.end();
+        }
+    }
+
+    /**
+     * Returns a reader going through all games of the archive, file by file.
+     * The reader must be closed after use.
+     *
+     * @return the reader
+     */
+    public Reader reader() {
+        return new Reader(getFiles());
+    }
+
+    /**
+     * Reads the record at the given offset of an archive file. The lengths
+     * in the header of the record are checked before anything is allocated,
+     * so that a corrupt record cannot exhaust the memory.
+     */
+    private static GameSnapshot readRecord(FileChannel archive, long offset, Inflater inflater) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(RECORD_HEADER_SIZE);
+        readFully(archive, header, offset);
+        int compressedLength = header.getInt(0);
+        int length = header.getInt(4);
+        int checksum = header.getInt(8);
+        if (compressedLength < 0 || compressedLength > archive.size() - offset - RECORD_HEADER_SIZE ||
+                length < SaveFile.HEADER_SIZE || length > MAX_FILE_SIZE) {
+            throw new IOException("Corrupt archive record");
+        }
+        byte[] compressed = new byte[compressedLength];
+        readFully(archive, ByteBuffer.wrap(compressed), offset + RECORD_HEADER_SIZE);
+
+        byte[] data = new byte[length];
+        inflater.reset();
+        inflater.setInput(compressed);
+        try {
+            if (inflater.inflate(data) != length) {
+                throw new IOException("Corrupt archive record");
+            }
+        } catch (DataFormatException e) {
+            throw new IOException("Corrupt archive record", e);
+        }
+        CRC32 crc = new CRC32();
+        crc.update(data);
+        if ((int) crc.getValue() != checksum) {
+            throw new IOException("Checksum mismatch in archive record");
+        }
+        try {
+            return SaveFile.read(ByteBuffer.wrap(data));
+        } catch (IllegalArgumentException e) {
+            throw new IOException("Corrupt archive record", e);
+        }
+    }
+
+    private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new EOFException("Archive record is truncated");
+            }
+        }
+    }
+
+    /**
+     * A reader going through all games of the archive, reading one game
+     * at a time at the offset of the next entry of the index.
+     */
+    public class Reader implements Iterator<GameSnapshot>, Closeable {
+
+        private final int files;
+
+        private final Inflater inflater = new Inflater();
+
+        private int file = -1;
+
+        private FileChannel archive;
+
+        private DataInputStream index;
+
+        /**
+         * The number of games still to be read from the current file,
+         * as recorded in its index.
+         */
+        private int remaining;
+
+        private Reader(int files) {
+            this.files = files;
+        }
+
+        @Override
+        public boolean hasNext() {
+            try {
+                while (remaining <= 0) {
+                    closeFile();
+                    if (++file >= files) {
+                        return false;
+                    }
+                    remaining = getGames(file);
+                    if (remaining > 0) {
+                        archive = FileChannel.open(archivePath(file), StandardOpenOption.READ);
+                        index = new DataInputStream(new BufferedInputStream(
+                                Files.newInputStream(indexPath(file))));
+                    }
+                }
+                return true;
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        @Override
+        public GameSnapshot next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            try {
+                remaining--;
+                return readRecord(archive, index.readLong(), inflater);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            inflater.end();
+            closeFile();
+        }
+
+        private void closeFile() throws IOException {
+            try {
+                if (archive != null) {
+                    archive.close();
+                }
+            } finally {
+                archive = null;
+                if (index != null) {
+                    index.close();
+                    index = null;
+                }
+            }
+        }
+    }
+
+}
@@ -0,0 +1,385 @@
+/*
+ *  This file is part of the initial project provided for the
+ *  course "Project in Software Development (02362)" held at
+ *  DTU Compute at the Technical University of Denmark.
+ *
+ *  Copyright (C) 2019, 2020: Ekkart Kindler, ekki@dtu.dk
+ *
+ *  This software is free software; you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation; version 2 of the License.
+ *
+ *  This project is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this project; if not, write to the Free Software
+ *  Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ *
+ */
+package dk.dtu.compute.se.pisd.roborally.fileaccess;
+
+import dk.dtu.compute.se.pisd.roborally.controller.FieldAction;
+import dk.dtu.compute.se.pisd.roborally.model.*;
+import org.jetbrains.annotations.NotNull;
+
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * A compact, versioned binary snapshot of the complete state of a game:
+ * the board it is played on (by name and a hash of its layout), the phase,
+ * step and current player, and for every player its position, heading,
+ * checkpoint counter, registers and hand.
+ *
+ * A snapshot is an immutable copy of the state: it is taken from the model
+ * with {@link #of(Board)}, can be encoded to and decoded from a byte buffer
+ * without touching the model, and can be turned into a new game again with
+ * {@link #restore()}.
+ *
+ * The encoding starts with a magic number and the format version; all
+ * numbers are stored in big endian byte order, and strings as UTF-8 bytes
+ * prefixed with their length.
+ */
+public class GameSnapshot {
+
+    /**
+     * The version of the encoding written by {@link #writeTo(ByteBuffer)}.
+     */
+    public static final int FORMAT_VERSION = 1;
+
+    private static final int MAGIC = 0x52524753; // "RRGS"
+
+    private static final byte NO_CARD = -1;
+
+    /**
+     * The state of a single player within a snapshot.
+     */
+    public static class PlayerState {
+
+        public final String name;
+        public final String color;
+        public final int x;
+        public final int y;
+        public final Heading heading;
+        public final int checkPoints;
+
+        /** The commands in the registers (ordinals, or -1 for no card) */
+        public final byte[] program;
+        /** The commands of the cards in the hand (ordinals, or -1 for no card) */
+        public final byte[] cards;
+        /** Bit i is set, if register i is visible */
+        public final int programVisible;
+        /** Bit i is set, if card field i is visible */
+        public final int cardsVisible;
+
+        PlayerState(String name, String color, int x, int y, Heading heading, int checkPoints,
+                    byte[] program, byte[] cards, int programVisible, int cardsVisible) {
+            this.name = name;
+            this.color = color;
+            this.x = x;
+            this.y = y;
+            this.heading = heading;
+            this.checkPoints = checkPoints;
+            this.program = program;
+            this.cards = cards;
+            this.programVisible = programVisible;
+            this.cardsVisible = cardsVisible;
+        }
+
+    }
+
+    public final String boardName;
+    public final int boardHash;
+    public final Phase phase;
+    public final int step;
+    public final int currentPlayer;
+    public final int moveCount;
+    public final PlayerState[] players;
+
+    GameSnapshot(String boardName, int boardHash, Phase phase, int step,
+                 int currentPlayer, int moveCount, PlayerState[] players) {
+        this.boardName = boardName;
+        this.boardHash = boardHash;
+        this.phase = phase;
+        this.step = step;
+        this.currentPlayer = currentPlayer;
+        this.moveCount = moveCount;
+        this.players = players;
+    }
+
+    /**
+     * Takes a snapshot of the current state of the given game. This only
+     * copies some primitive values, so that it is cheap enough to be done
+     * in the JavaFX application thread.
+     *
+     * @param board the game
+     * @return the snapshot of the game
+     */
+    public static GameSnapshot of(@NotNull Board board) {
+        PlayerState[] players = new PlayerState[board.getPlayersNumber()];
+        for (int i = 0; i < players.length; i++) {
+            Player player = board.getPlayer(i);
+            byte[] program = new byte[Player.NO_REGISTERS];
+            int programVisible = 0;
+            for (int j = 0; j < program.length; j++) {
+                CommandCardField field = player.getProgramField(j);
+                program[j] = encode(field.getCard());
+                if (field.isVisible()) {
+                    programVisible |= 1 << j;
+                }
+            }
+            byte[] cards = new byte[Player.NO_CARDS];
+            int cardsVisible = 0;
+            for (int j = 0; j < cards.length; j++) {
+                CommandCardField field = player.getCardField(j);
+                cards[j] = encode(field.getCard());
+                if (field.isVisible()) {
+                    cardsVisible |= 1 << j;
+                }
+            }
+            Space space = player.getSpace();
+            players[i] = new PlayerState(player.getName(), player.getColor(),
+                    space != null ? space.x : -1, space != null ? space.y : -1,
+                    player.getHeading(), player.getCheckPointCounter(),
+                    program, cards, programVisible, cardsVisible);
+        }
+
+        Player current = board.getCurrentPlayer();
+        return new GameSnapshot(board.boardName, boardHash(board),
+                board.getPhase(), board.getStep(),
+                current != null ? board.getPlayerNumber(current) : -1,
+                board.getMoveCount(), players);
+    }
+
+    private static byte encode(CommandCard card) {
+        return card != null ? (byte) card.command.ordinal() : NO_CARD;
+    }
+
+    /**
+     * Computes a hash of the layout of a board (its size, walls and field
+     * actions), which is stored along with the name of the board in a
+     * snapshot. This way, a changed board layout can be detected when
+     * the snapshot is restored.
+     *
+     * @param board the board
+     * @return the hash of the board's layout
+     */
+    public static int boardHash(@NotNull Board board) {
+        int hash = 31 * board.width + board.height;
+        for (int y = 0; y < board.height; y++) {
+            for (int x = 0; x < board.width; x++) {
+                Space space = board.getSpace(x, y);
+                for (Heading wall : space.getWalls()) {
+                    hash = 31 * hash + 1 + wall.ordinal();
+                }
+                for (FieldAction action : space.getActions()) {
+                    hash = 31 * hash + action.getClass().getSimpleName().hashCode();
+                    if (action instanceof ConveyorBelt) {
+                        Heading heading = ((ConveyorBelt) action).getHeading();
+                        hash = 31 * hash + (heading != null ? heading.ordinal() : -1);
+                    } else if (action instanceof CheckPoint) {
+                        hash = 31 * hash + ((CheckPoint) action).getX();
+                    }
+                }
+                hash = 31 * hash;
+            }
+        }
+        return hash;
+    }
+
+    /**
+     * Returns the number of bytes that {@link #writeTo(ByteBuffer)} will write.
+     *
+     * @return the size of the encoded snapshot in bytes
+     */
+    public int encodedSize() {
+        int size = 4 + 2 + sizeOf(boardName) + 4 + 1 + 1 + 1 + 4 + 1;
+        for (PlayerState player : players) {
+            size += sizeOf(player.name) + sizeOf(player.color)
+                    + 2 + 2 + 1 + 1
+                    + 1 + player.program.length + 1 + player.cards.length
+                    + 4 + 4;
+        }
+        return size;
+    }
+
+    /**
+     * Writes the encoded snapshot to the given buffer, starting at the
+     * buffer's current position.
+     *
+     * @param buffer the buffer with at least {@link #encodedSize()} bytes remaining
+     */
+    public void writeTo(@NotNull ByteBuffer buffer) {
+        buffer.putInt(MAGIC);
+        buffer.putShort((short) FORMAT_VERSION);
+        putString(buffer, boardName);
+        buffer.putInt(boardHash);
+        buffer.put((byte) phase.ordinal());
+        buffer.put((byte) step);
+        buffer.put((byte) currentPlayer);
+        buffer.putInt(moveCount);
+        buffer.put((byte) players.length);
+        for (PlayerState player : players) {
+            putString(buffer, player.name);
+            putString(buffer, player.color);
+            buffer.putShort((short) player.x);
+            buffer.putShort((short) player.y);
+            buffer.put((byte) player.heading.ordinal());
+            buffer.put((byte) player.checkPoints);
+            buffer.put((byte) player.program.length);
+            buffer.put(player.program);
+            buffer.put((byte) player.cards.length);
+            buffer.put(player.cards);
+            buffer.putInt(player.programVisible);
+            buffer.putInt(player.cardsVisible);
+        }
+    }
+
+    /**
+     * Returns the encoded snapshot as a new byte array.
+     *
+     * @return the encoded snapshot
+     */
+    public byte[] toBytes() {
+        ByteBuffer buffer = ByteBuffer.allocate(encodedSize());
+        writeTo(buffer);
+        return buffer.array();
+    }
+
+    /**
+     * Reads a snapshot from the given buffer, starting at the buffer's
+     * current position.
+     *
+     * @param buffer the buffer containing the encoded snapshot
+     * @return the decoded snapshot
+     * @throws IllegalArgumentException if the buffer does not contain a
+     *         snapshot in a supported version
+     */
+    public static GameSnapshot readFrom(@NotNull ByteBuffer buffer) {
+        try {
+            if (buffer.getInt() != MAGIC) {
+                throw new IllegalArgumentException("Data is not a RoboRally game snapshot");
+            }
+            int version = buffer.getShort();
+            if (version < 1 || version > FORMAT_VERSION) {
+                throw new IllegalArgumentException("Unsupported snapshot version " + version);
+            }
+            String boardName = getString(buffer);
+            int boardHash = buffer.getInt();
+            Phase phase = Phase.values()[buffer.get()];
+            int step = buffer.get();
+            int currentPlayer = buffer.get();
+            int moveCount = buffer.getInt();
+            PlayerState[] players = new PlayerState[buffer.get() & 0xFF];
+            for (int i = 0; i < players.length; i++) {
+                String name = getString(buffer);
+                String color = getString(buffer);
+                int x = buffer.getShort();
+                int y = buffer.getShort();
+                Heading heading = Heading.values()[buffer.get()];
+                int checkPoints = buffer.get();
+                byte[] program = new byte[getCount(buffer, Player.NO_REGISTERS, "registers")];
+                buffer.get(program);
+                byte[] cards = new byte[getCount(buffer, Player.NO_CARDS, "cards")];
+                buffer.get(cards);
+                int programVisible = buffer.getInt();
+                int cardsVisible = buffer.getInt();
+                players[i] = new PlayerState(name, color, x, y, heading, checkPoints,
+                        program, cards, programVisible, cardsVisible);
+            }
+            return new GameSnapshot(boardName, boardHash, phase, step, currentPlayer, moveCount, players);
+        } catch (BufferUnderflowException | IndexOutOfBoundsException e) {
+            throw new IllegalArgumentException("Game snapshot is truncated or corrupt", e);
+        }
+    }
+
+    /**
+     * Creates a new game from this snapshot. The board is created from its
+     * name (see {@link LoadBoard#loadBoard(String)}); if its layout does not
+     * match the hash in the snapshot anymore, a warning is issued, but the
+     * game is restored anyway.
+     *
+     * @return the restored game, or null if the board could not be created
+     */
+    public Board restore() {
+        Board board = LoadBoard.loadBoard(boardName);
+        if (board == null) {
+            return null;
+        }
+        if (boardHash(board) != boardHash) {
+            System.err.println("Board '" + boardName + "' has changed since the game was saved!");
+        }
+
+        for (PlayerState state : players) {
+            Player player = new Player(board, state.color, state.name);
+            board.addPlayer(player);
+            player.setSpace(board.getSpace(state.x, state.y));
+            player.setHeading(state.heading);
+            player.setCheckPointCounter(state.checkPoints);
+            for (int j = 0; j < Player.NO_REGISTERS && j < state.program.length; j++) {
+                restore(player.getProgramField(j), state.program[j], (state.programVisible & (1 << j)) != 0);
+            }
+            for (int j = 0; j < Player.NO_CARDS && j < state.cards.length; j++) {
+                restore(player.getCardField(j), state.cards[j], (state.cardsVisible & (1 << j)) != 0);
+            }
+        }
+
+        board.setPhase(phase);
+        board.setStep(step);
+        board.setMoveCount(moveCount);
+        if (currentPlayer >= 0) {
+            board.setCurrentPlayer(board.getPlayer(currentPlayer));
+        }
+        return board;
+    }
+
+    private static void restore(CommandCardField field, byte command, boolean visible) {
+        if (command >= 0 && command < Command.values().length) {
+            field.setCard(new CommandCard(Command.values()[command]));
+        } else {
+            field.setCard(null);
+        }
+        field.setVisible(visible);
+    }
+
+    private static int sizeOf(String string) {
+        return 2 + (string != null ? string.getBytes(StandardCharsets.UTF_8).length : 0);
+    }
+
+    private static void putString(ByteBuffer buffer, String string) {
+        if (string == null) {
+            buffer.putShort((short) -1);
+        } else {
+            byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+            buffer.putShort((short) bytes.length);
+            buffer.put(bytes);
+        }
+    }
+
+    /**
+     * Reads the unsigned count of an array of a player, which must not
+     * exceed the number of the respective fields of a player.
+     */
+    private static int getCount(ByteBuffer buffer, int max, String what) {
+        int count = buffer.get() & 0xFF;
+        if (count > max) {
+            throw new IllegalArgumentException("Game snapshot has " + count + " " + what + " for a player");
+        }
+        return count;
+    }
+
+    private static String getString(ByteBuffer buffer) {
+        int length = buffer.getShort();
+        if (length < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+}
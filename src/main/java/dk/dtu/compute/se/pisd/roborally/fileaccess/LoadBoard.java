@@ -23,25 +23,37 @@ package dk.dtu.compute.se.pisd.roborally.fileaccess;
 
 import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
-import com.google.gson.stream.JsonReader;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
 import com.google.gson.stream.JsonWriter;
 import dk.dtu.compute.se.pisd.roborally.controller.AppController;
 import dk.dtu.compute.se.pisd.roborally.controller.BoardFactory;
 import dk.dtu.compute.se.pisd.roborally.model.ConveyorBelt;
 import dk.dtu.compute.se.pisd.roborally.controller.FieldAction;
 import dk.dtu.compute.se.pisd.roborally.fileaccess.model.ActionTemplate;
-import dk.dtu.compute.se.pisd.roborally.fileaccess.model.BoardTemplate;
+import dk.dtu.compute.se.pisd.roborally.fileaccess.model.CheckPointTemplate;
 import dk.dtu.compute.se.pisd.roborally.fileaccess.model.ConveyorBeltTemplate;
-import dk.dtu.compute.se.pisd.roborally.fileaccess.model.SpaceTemplate;
 import dk.dtu.compute.se.pisd.roborally.model.Board;
-import dk.dtu.compute.se.pisd.roborally.model.Space;
+import dk.dtu.compute.se.pisd.roborally.model.CheckPoint;
+import dk.dtu.compute.se.pisd.roborally.model.Heading;
+
+import org.jetbrains.annotations.NotNull;
 
-import java.io.FileWriter;
 import java.io.IOException;
-import java.io.InputStream;
-import java.io.InputStreamReader;
+import java.io.Writer;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.ArrayList;
+import java.util.Enumeration;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
 
 /**
  * ...
@@ -54,77 +66,146 @@ public class LoadBoard {
     private static final String DEFAULTBOARD = "defaultboard";
     private static final String JSON_EXT = "json";
 
+    /**
+     * The version of the board files written by {@link #saveBoard(Board, String)}:
+     * version 3 is the sparse format (see {@link BoardReader}).
+     */
+    private static final int FORMAT_VERSION = 3;
+
+    /**
+     * The short type names of the action templates in board files (version 2
+     * of the format). If new action templates are added, they must be
+     * registered here with a new type name; type names must never change.
+     */
+    private static final Map<String, Class<? extends ActionTemplate>> ACTION_TYPES = Map.of(
+            "conveyorBelt", ConveyorBeltTemplate.class,
+            "checkPoint", CheckPointTemplate.class);
+
+    /**
+     * The Gson object for reading boards; Gson objects are thread-safe, so
+     * that this can be shared.
+     */
+    static final Gson GSON = new GsonBuilder().
+            registerTypeAdapter(ActionTemplate.class, new Adapter<>(ACTION_TYPES)).
+            create();
+
     public static Board loadBoard(String boardname) {
         if (boardname == null) {
             boardname = DEFAULTBOARD;
         }
 
-        ClassLoader classLoader = LoadBoard.class.getClassLoader();
-        InputStream inputStream = classLoader.getResourceAsStream(BOARDSFOLDER + "/" + boardname + "." + JSON_EXT);
-        if (inputStream == null) {
+        BoardTemplateCache.CompiledBoard compiled;
+        try {
+            compiled = getCompiledBoard(boardname);
+        } catch (IOException e) {
+            System.err.println(e.getMessage());
+            return null;
+        }
+        if (compiled == null) {
             return BoardFactory.getInstance().createBoard(boardname);
         }
+        return compiled.instantiate();
+    }
 
-		// In simple cases, we can create a Gson object with new Gson():
-        GsonBuilder simpleBuilder = new GsonBuilder().
-                registerTypeAdapter(ActionTemplate.class, new Adapter<ActionTemplate>());
-        Gson gson = simpleBuilder.create();
-
-		Board result;
-        JsonReader reader = null;
-		try {
-			reader = gson.newJsonReader(new InputStreamReader(inputStream));
-			BoardTemplate template = gson.fromJson(reader, BoardTemplate.class);
-			result = convert(template, boardname);
-			reader.close();
-			return result;
-		} catch (IOException e1) {
-            if (reader != null) {
-                try {
-                    reader.close();
-                    inputStream = null;
-                } catch (IOException e2) {}
-            }
-            if (inputStream != null) {
-				try {
-					inputStream.close();
-				} catch (IOException e2) {}
-			}
-		}
-		return null;
+    /**
+     * Loads the board with the given name from the board resources; other
+     * than {@link #loadBoard(String)}, this does not fall back to the boards
+     * of the {@link BoardFactory}.
+     *
+     * @param boardname the name of the board
+     * @return the new board, or null if there is no such board resource
+     */
+    public static Board loadBoardResource(@NotNull String boardname) {
+        try {
+            BoardTemplateCache.CompiledBoard compiled = getCompiledBoard(boardname);
+            return compiled != null ? compiled.instantiate() : null;
+        } catch (IOException e) {
+            System.err.println(e.getMessage());
+            return null;
+        }
     }
 
-    private static Board convert(BoardTemplate template, String boardname) {
-        Board result = new Board(template.width, template.height, boardname);
-        for (SpaceTemplate spaceTemplate: template.spaces) {
-            Space space = result.getSpace(spaceTemplate.x, spaceTemplate.y);
-            if (space != null) {
-                space.getActions().addAll(convert(spaceTemplate.actions));
-                space.getWalls().addAll(spaceTemplate.walls);
-            }
+    /**
+     * Reads the board with the given name from the board resources into the
+     * {@link BoardTemplateCache}, without creating a board, so that boards
+     * can be created from it later on without reading the board file.
+     *
+     * @param boardname the name of the board
+     */
+    public static void preloadBoard(@NotNull String boardname) {
+        try {
+            getCompiledBoard(boardname);
+        } catch (IOException e) {
+            System.err.println(e.getMessage());
         }
-        return result;
     }
 
-    private static List<FieldAction> convert(List<ActionTemplate> actionTemplates) {
-        List<FieldAction> result = new ArrayList<>();
+    private static BoardTemplateCache.CompiledBoard getCompiledBoard(String boardname) throws IOException {
+        return BoardTemplateCache.getInstance().get(boardname,
+                BOARDSFOLDER + "/" + boardname + "." + JSON_EXT,
+                BOARDSFOLDER + "/" + boardname + "." + BoardCompiler.BINARY_EXT);
+    }
 
-        for (ActionTemplate template: actionTemplates) {
-            FieldAction fieldAction = convert(template);
-            if (fieldAction != null) {
-                result.add(fieldAction);
+    /**
+     * Returns the names of all boards in the board resources, in alphabetical
+     * order. The board resources are looked up in the folder or in the jar file,
+     * from which the application was loaded.
+     *
+     * @return the names of the boards in the board resources
+     */
+    public static List<String> getBoardNames() {
+        Set<String> names = new TreeSet<>();
+        try {
+            URL location = LoadBoard.class.getProtectionDomain().getCodeSource().getLocation();
+            Path path = Path.of(location.toURI());
+            if (Files.isDirectory(path)) {
+                Path folder = path.resolve(BOARDSFOLDER);
+                if (Files.isDirectory(folder)) {
+                    try (DirectoryStream<Path> files = Files.newDirectoryStream(folder)) {
+                        for (Path file : files) {
+                            addBoardName(names, file.getFileName().toString());
+                        }
+                    }
+                }
+            } else {
+                try (JarFile jarFile = new JarFile(path.toFile())) {
+                    Enumeration<JarEntry> entries = jarFile.entries();
+                    while (entries.hasMoreElements()) {
+                        String entry = entries.nextElement().getName();
+                        if (entry.startsWith(BOARDSFOLDER + "/")) {
+                            addBoardName(names, entry.substring(BOARDSFOLDER.length() + 1));
+                        }
+                    }
+                }
             }
+        } catch (IOException | URISyntaxException | SecurityException | IllegalArgumentException e) {
+            // TODO error handling
+            System.err.println("Could not discover boards: " + e.getMessage());
         }
+        return new ArrayList<>(names);
+    }
 
-        return result;
+    private static void addBoardName(Set<String> names, String fileName) {
+        if (fileName.indexOf('/') >= 0) {
+            return;
+        }
+        for (String extension : List.of(JSON_EXT, BoardCompiler.BINARY_EXT)) {
+            if (fileName.endsWith("." + extension) && fileName.length() > extension.length() + 1) {
+                names.add(fileName.substring(0, fileName.length() - extension.length() - 1));
+            }
+        }
     }
 
-    private static FieldAction convert(ActionTemplate actionTemplate) {
+    static FieldAction convert(ActionTemplate actionTemplate) {
         if (actionTemplate instanceof ConveyorBeltTemplate) {
             ConveyorBeltTemplate template = (ConveyorBeltTemplate) actionTemplate;
             ConveyorBelt conveyorBelt = new ConveyorBelt();
             conveyorBelt.setHeading(template.heading);
+            conveyorBelt.setExpress(template.express);
             return conveyorBelt;
+        } else if (actionTemplate instanceof CheckPointTemplate) {
+            CheckPointTemplate template = (CheckPointTemplate) actionTemplate;
+            return new CheckPoint(template.number);
         } // else if ...
         // XXX if new field actions are added, the corresponding templates
         //     need to be added to the model subpackage of fileaccess and
@@ -140,10 +221,6 @@ public class LoadBoard {
     // create a first version fof some JSON file of a board.
 
     public static void saveBoard(Board board, String name) {
-        BoardTemplate template = convertToTemplate(board);
-        template.width = board.width;
-        template.height = board.height;
-
         ClassLoader classLoader = AppController.class.getClassLoader();
         // FIXME: this is not very defensive and will result in a NullPointerException
         //         when the folder BOARDSFOLDER does not exist! But, the file does not
@@ -151,71 +228,83 @@ public class LoadBoard {
         String filename =
                 classLoader.getResource(BOARDSFOLDER).getPath() + "/" + name + "." + JSON_EXT;
 
-        // In simple cases, we can create a Gson object with new:
-        //
-        //   Gson gson = new Gson();
-        //
-        // But, if you need to configure it, it is better to create it from
-        // a builder (here, we want to configure the JSON serialisation with
-        // a pretty printer):
-        GsonBuilder simpleBuilder = new GsonBuilder().
-                registerTypeAdapter(ActionTemplate.class, new Adapter<ActionTemplate>()).
-                setPrettyPrinting();
-        Gson gson = simpleBuilder.create();
-
-        FileWriter fileWriter = null;
-        JsonWriter writer = null;
         try {
-            fileWriter = new FileWriter(filename);
-            writer = gson.newJsonWriter(fileWriter);
-            gson.toJson(template, template.getClass(), writer);
-            writer.close();
-        } catch (IOException e1) {
-            if (writer != null) {
-                try {
-                    writer.close();
-                    fileWriter = null;
-                } catch (IOException e2) {}
-            }
-            if (fileWriter != null) {
-                try {
-                    fileWriter.close();
-                } catch (IOException e2) {}
-            }
+            saveBoard(board, Path.of(filename));
+        } catch (IOException e) {
+            // TODO error handling
+            System.err.println("Could not save board " + name + ": " + e.getMessage());
         }
+        BoardTemplateCache.getInstance().invalidate(name);
     }
 
-    private static BoardTemplate convertToTemplate(Board board) {
-        BoardTemplate result = new BoardTemplate();
-        result.width = board.width;
-        result.height = board.height;
-
-        for (int x = 0; x < board.width; x++) {
-            for (int y= 0; y < board.height; y++) {
-                Space space = board.getSpace(x,y);
-                if (space != null && ( !space.getActions().isEmpty() || !space.getWalls().isEmpty()) ) {
-                    SpaceTemplate spaceTemplate = new SpaceTemplate();
-                    spaceTemplate.x = x;
-                    spaceTemplate.y = y;
-                    spaceTemplate.actions = convertToTemplate(space.getActions());
-                    spaceTemplate.walls = new ArrayList<>(space.getWalls());
+    /**
+     * Saves the given board to a board file (in the JSON format). The board
+     * is written in the sparse version of the format (see {@link BoardReader}),
+     * directly from the board, so that no templates are created for its spaces.
+     *
+     * @param board the board
+     * @param file the board file
+     * @throws IOException if the board file could not be written
+     */
+    public static void saveBoard(@NotNull Board board, @NotNull Path file) throws IOException {
+        try (Writer fileWriter = Files.newBufferedWriter(file);
+             JsonWriter writer = GSON.newJsonWriter(fileWriter)) {
+            writer.beginObject();
+            writer.name("version").value(FORMAT_VERSION);
+            writer.name("width").value(board.width);
+            writer.name("height").value(board.height);
+
+            writer.name("walls").beginArray();
+            int end = 0;
+            for (int y = 0; y < board.height; y++) {
+                int x = 0;
+                while (x < board.width) {
+                    if (board.getSpace(x, y).getWalls().isEmpty()) {
+                        x++;
+                        continue;
+                    }
+                    int start = x;
+                    while (x < board.width && !board.getSpace(x, y).getWalls().isEmpty()) {
+                        x++;
+                    }
+                    int index = y * board.width + start;
+                    writer.value(index - end);
+                    writer.value(x - start);
+                    for (int i = start; i < x; i++) {
+                        int mask = 0;
+                        for (Heading wall : board.getSpace(i, y).getWalls()) {
+                            mask |= 1 << wall.ordinal();
+                        }
+                        writer.value(mask);
+                    }
+                    end = y * board.width + x;
                 }
             }
-        }
-        return result;
-    }
+            writer.endArray();
 
-    private static List<ActionTemplate> convertToTemplate(List<FieldAction> actions) {
-        List<ActionTemplate> result = new ArrayList<>();
-
-        for (FieldAction action: actions) {
-            ActionTemplate template = convertToTemplate(action);
-            if (template != null) {
-                result.add(template);
+            writer.name("actions").beginArray();
+            int previous = 0;
+            for (int y = 0; y < board.height; y++) {
+                for (int x = 0; x < board.width; x++) {
+                    for (FieldAction action : board.getSpace(x, y).getActions()) {
+                        ActionTemplate template = convertToTemplate(action);
+                        if (template != null) {
+                            int index = y * board.width + x;
+                            JsonObject object = new JsonObject();
+                            object.addProperty("d", index - previous);
+                            for (Map.Entry<String, JsonElement> property :
+                                    GSON.toJsonTree(template, ActionTemplate.class).getAsJsonObject().entrySet()) {
+                                object.add(property.getKey(), property.getValue());
+                            }
+                            GSON.toJson(object, writer);
+                            previous = index;
+                        }
+                    }
+                }
             }
+            writer.endArray();
+            writer.endObject();
         }
-
-        return result;
     }
 
     private static ActionTemplate convertToTemplate(FieldAction action) {
@@ -223,7 +312,13 @@ public class LoadBoard {
             ConveyorBelt conveyorBelt = (ConveyorBelt) action;
             ConveyorBeltTemplate conveyorBeltTemplate = new ConveyorBeltTemplate();
             conveyorBeltTemplate.heading = conveyorBelt.getHeading();
+            conveyorBeltTemplate.express = conveyorBelt.isExpress();
             return conveyorBeltTemplate;
+        } else if (action instanceof CheckPoint) {
+            CheckPoint checkPoint = (CheckPoint) action;
+            CheckPointTemplate checkPointTemplate = new CheckPointTemplate();
+            checkPointTemplate.number = checkPoint.getX();
+            return checkPointTemplate;
         } // else if ...
         // XXX if new field actions are added, the corresponding templates
         //     need to be added to the model subpackage of fileaccess and
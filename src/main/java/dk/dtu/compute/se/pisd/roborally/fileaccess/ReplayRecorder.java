@@ -0,0 +1,220 @@
+/*
+ *  This file is part of the initial project provided for the
+ *  course "Project in Software Development (02362)" held at
+ *  DTU Compute at the Technical University of Denmark.
+ *
+ *  Copyright (C) 2019, 2020: Ekkart Kindler, ekki@dtu.dk
+ *
+ *  This software is free software; you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation; version 2 of the License.
+ *
+ *  This project is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this project; if not, write to the Free Software
+ *  Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ *
+ */
+package dk.dtu.compute.se.pisd.roborally.fileaccess;
+
+import dk.dtu.compute.se.pisd.roborally.controller.GameController;
+import dk.dtu.compute.se.pisd.roborally.controller.GameListener;
+import dk.dtu.compute.se.pisd.roborally.model.*;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Records a game in a compact binary replay file, from which the game can
+ * be played again by the {@link Replayer}. Since the game controller deals
+ * the cards with a seeded random number generator, and everything else in
+ * the game is deterministic, the recorder only needs to record the setup of
+ * the game and the decisions of the players:
+ * <ul>
+ *     <li>a header with the board name, the seed of the game controller,
+ *     and the name, color, start space and heading of every player;</li>
+ *     <li>for every round, the cards in the registers of all players when
+ *     the programming phase is finished;</li>
+ *     <li>every choice of a player for an interactive command.</li>
+ * </ul>
+ * In addition, a hash of the state of the game (see {@link Replayer#stateHash(Board)})
+ * is recorded after every register, so that the replayer can check that
+ * the game is replayed exactly as it was played.
+ *
+ * The recorder must be started on a new game, after the players are added
+ * and before the first programming phase is finished. Since the cards which
+ * were dealt cannot be undone, the recording stops when an operation of the
+ * game is undone or redone; the replay ends with the state before.
+ * Likewise, the recording stops when the replay file cannot be written:
+ * the error is printed, and the replay file is closed, so that the game
+ * recorded so far can still be replayed. The game itself goes on.
+ */
+public class ReplayRecorder implements GameListener, Closeable {
+
+    /**
+     * The suffix of replay files.
+     */
+    public static final String SUFFIX = ".rrp";
+
+    static final int MAGIC = 0x52525250; // "RRRP"
+
+    static final int VERSION = 1;
+
+    static final byte ROUND = 1;
+    static final byte CHOICE = 2;
+    static final byte HASH = 3;
+    static final byte END = 0;
+
+    static final byte NO_CARD = -1;
+
+    private final GameController gameController;
+
+    private DataOutputStream out;
+
+    private ReplayRecorder(@NotNull GameController gameController, @NotNull DataOutputStream out) {
+        this.gameController = gameController;
+        this.out = out;
+    }
+
+    /**
+     * Starts recording the game of the given controller in the given file.
+     * The recorder is added as a listener to the game controller.
+     *
+     * @param gameController the controller of the game
+     * @param path the replay file
+     * @return the recorder
+     * @throws IOException if the replay file could not be written
+     */
+    public static ReplayRecorder start(@NotNull GameController gameController, @NotNull Path path) throws IOException {
+        Board board = gameController.board;
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(path)));
+        try {
+            out.writeInt(MAGIC);
+            out.writeShort(VERSION);
+            out.writeLong(gameController.getSeed());
+            out.writeUTF(board.boardName);
+            out.writeByte(board.getPlayersNumber());
+            for (int i = 0; i < board.getPlayersNumber(); i++) {
+                Player player = board.getPlayer(i);
+                Space space = player.getSpace();
+                out.writeUTF(player.getName());
+                out.writeUTF(player.getColor());
+                out.writeShort(space != null ? space.x : -1);
+                out.writeShort(space != null ? space.y : -1);
+                out.writeByte(player.getHeading().ordinal());
+            }
+        } catch (IOException e) {
+            out.close();
+            throw e;
+        }
+        ReplayRecorder recorder = new ReplayRecorder(gameController, out);
+        gameController.addGameListener(recorder);
+        return recorder;
+    }
+
+    @Override
+    public void programmingFinished() {
+        if (out != null) {
+            Board board = gameController.board;
+            try {
+                out.writeByte(ROUND);
+                for (int i = 0; i < board.getPlayersNumber(); i++) {
+                    Player player = board.getPlayer(i);
+                    for (int j = 0; j < Player.NO_REGISTERS; j++) {
+                        CommandCard card = player.getProgramField(j).getCard();
+                        out.writeByte(card != null ? card.command.ordinal() : NO_CARD);
+                    }
+                }
+            } catch (IOException e) {
+                failed(e);
+            }
+        }
+    }
+
+    @Override
+    public void turnChosen(Player player, int direction) {
+        if (out != null) {
+            try {
+                out.writeByte(CHOICE);
+                out.writeByte(gameController.board.getPlayerNumber(player));
+                out.writeByte(direction == -1 ? -1 : 1);
+            } catch (IOException e) {
+                failed(e);
+            }
+        }
+    }
+
+    @Override
+    public void registerFinished(int register) {
+        if (out != null) {
+            try {
+                out.writeByte(HASH);
+                out.writeByte(register);
+                out.writeInt(Replayer.stateHash(gameController.board));
+            } catch (IOException e) {
+                failed(e);
+            }
+        }
+    }
+
+    @Override
+    public void stateRestored() {
+        try {
+            close();
+        } catch (IOException e) {
+            System.err.println("Error closing the replay of the RoboRally game: " + e.getMessage());
+        }
+    }
+
+    @Override
+    public void gameFinished(Player winner) {
+        try {
+            close();
+        } catch (IOException e) {
+            System.err.println("Error closing the replay of the RoboRally game: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Finishes the replay file, and stops recording.
+     *
+     * @throws IOException if the replay file could not be written
+     */
+    @Override
+    public void close() throws IOException {
+        if (out != null) {
+            DataOutputStream out = this.out;
+            this.out = null;
+            try {
+                out.writeByte(END);
+            } finally {
+                out.close();
+            }
+        }
+    }
+
+    /**
+     * Stops recording after the replay file could not be written. Since a
+     * replay is not needed for playing the game, this is not reported to
+     * the user; the replay just ends with the last round written.
+     *
+     * @param e the exception writing the replay file
+     */
+    private void failed(IOException e) {
+        System.err.println("Error recording the replay of the RoboRally game: " + e.getMessage());
+        try {
+            close();
+        } catch (IOException ignored) {
+        }
+    }
+
+}
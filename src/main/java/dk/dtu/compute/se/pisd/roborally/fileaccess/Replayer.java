@@ -0,0 +1,220 @@
+/*
+ *  This file is part of the initial project provided for the
+ *  course "Project in Software Development (02362)" held at
+ *  DTU Compute at the Technical University of Denmark.
+ *
+ *  Copyright (C) 2019, 2020: Ekkart Kindler, ekki@dtu.dk
+ *
+ *  This software is free software; you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation; version 2 of the License.
+ *
+ *  This project is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this project; if not, write to the Free Software
+ *  Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ *
+ */
+package dk.dtu.compute.se.pisd.roborally.fileaccess;
+
+import dk.dtu.compute.se.pisd.roborally.controller.BoardFactory;
+import dk.dtu.compute.se.pisd.roborally.controller.GameController;
+import dk.dtu.compute.se.pisd.roborally.controller.GameListener;
+import dk.dtu.compute.se.pisd.roborally.model.*;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+import static dk.dtu.compute.se.pisd.roborally.fileaccess.ReplayRecorder.*;
+
+/**
+ * Replays games recorded by the {@link ReplayRecorder} without any user
+ * interface, as fast as possible: the game is set up as recorded, and the
+ * recorded registers and choices of the players are fed into a
+ * {@link GameController} with the recorded seed, which executes the
+ * programs at once. Optionally, the state of the game is checked against
+ * the hashes recorded after every register, so that a replay which differs
+ * from the recorded game (for example, after a change of the game rules)
+ * is detected at the register where it first differs.
+ *
+ * The replayer can also be run on its own, with the replay files as
+ * arguments, for measuring how fast the game engine replays them.
+ */
+public class Replayer {
+
+    /**
+     * Thrown when a replayed game differs from the recorded game.
+     */
+    public static class ReplayMismatchException extends IOException {
+        public ReplayMismatchException(String message) {
+            super(message);
+        }
+    }
+
+    private Replayer() {
+    }
+
+    /**
+     * Replays the game in the given replay file.
+     *
+     * @param path the replay file
+     * @param checkHashes whether the state of the game is checked after every register
+     * @return the board with the state of the game at the end of the replay
+     * @throws IOException if the replay file could not be read, or the
+     *                     replayed game differs from the recorded one
+     */
+    public static Board replay(@NotNull Path path, boolean checkHashes) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(path)))) {
+            if (in.readInt() != MAGIC) {
+                throw new IOException("Not a RoboRally replay file: " + path);
+            }
+            int version = in.readShort();
+            if (version != VERSION) {
+                throw new IOException("Unsupported version " + version + " of replay file: " + path);
+            }
+            long seed = in.readLong();
+            String boardName = in.readUTF();
+            Board board = BoardFactory.getInstance().createBoard(boardName);
+            GameController gameController = new GameController(board, seed);
+
+            int players = in.readByte();
+            for (int i = 0; i < players; i++) {
+                String name = in.readUTF();
+                String color = in.readUTF();
+                int x = in.readShort();
+                int y = in.readShort();
+                Heading heading = Heading.values()[checkIndex(in.readByte(), Heading.values().length, "heading", path)];
+                Player player = new Player(board, color, name);
+                board.addPlayer(player);
+                player.setSpace(board.getSpace(x, y));
+                player.setHeading(heading);
+            }
+            if (board.getPlayersNumber() > 0) {
+                board.setCurrentPlayer(board.getPlayer(0));
+            }
+
+            Deque<Integer> hashes = new ArrayDeque<>();
+            if (checkHashes) {
+                gameController.addGameListener(new GameListener() {
+                    @Override
+                    public void registerFinished(int register) {
+                        hashes.add(stateHash(board));
+                    }
+                });
+            }
+
+            gameController.startProgrammingPhase();
+            int round = 0;
+            int registers = 0;
+            while (true) {
+                byte record = in.readByte();
+                if (record == END) {
+                    return board;
+                } else if (record == ROUND) {
+                    round++;
+                    for (int i = 0; i < players; i++) {
+                        Player player = board.getPlayer(i);
+                        for (int j = 0; j < Player.NO_REGISTERS; j++) {
+                            int command = in.readByte();
+                            player.getProgramField(j).setCard(command == NO_CARD ? null :
+                                    new CommandCard(Command.values()[checkIndex(command, Command.values().length, "command", path)]));
+                        }
+                    }
+                    gameController.finishProgrammingPhase();
+                    gameController.executePrograms();
+                } else if (record == CHOICE) {
+                    Player player = board.getPlayer(checkIndex(in.readByte(), players, "player", path));
+                    int direction = in.readByte();
+                    if (board.getPhase() != Phase.PLAYER_INTERACTION || board.getCurrentPlayer() != player) {
+                        throw new ReplayMismatchException("Unexpected choice of " + player.getName() + " in round " + round);
+                    }
+                    gameController.playerTurnChoice(direction);
+                    gameController.executePrograms();
+                } else if (record == HASH) {
+                    int register = in.readByte();
+                    int hash = in.readInt();
+                    registers++;
+                    if (checkHashes) {
+                        Integer actual = hashes.poll();
+                        if (actual == null || actual != hash) {
+                            throw new ReplayMismatchException("State differs after register " + register
+                                    + " in round " + round + " (register " + registers + " of the game)");
+                        }
+                    }
+                } else {
+                    throw new IOException("Invalid record " + record + " in replay file: " + path);
+                }
+            }
+        }
+    }
+
+    /**
+     * Checks an index read from a replay file, so that a corrupt file is
+     * reported as such instead of failing with a runtime exception.
+     *
+     * @param index the index read from the file
+     * @param length the number of valid indices
+     * @param what what the index refers to (for the message)
+     * @param path the replay file (for the message)
+     * @return the index
+     * @throws IOException if the index is out of range
+     */
+    private static int checkIndex(int index, int length, String what, Path path) throws IOException {
+        if (index < 0 || index >= length) {
+            throw new IOException("Invalid " + what + " " + index + " in replay file: " + path);
+        }
+        return index;
+    }
+
+    /**
+     * Computes a hash of the state of a game: the positions, headings and
+     * checkpoints of all robots, and the phase, step and current player.
+     *
+     * @param board the game
+     * @return the hash of the state
+     */
+    public static int stateHash(@NotNull Board board) {
+        int hash = board.getPhase().ordinal();
+        hash = 31 * hash + board.getStep();
+        Player current = board.getCurrentPlayer();
+        hash = 31 * hash + (current != null ? board.getPlayerNumber(current) : -1);
+        for (int i = 0; i < board.getPlayersNumber(); i++) {
+            Player player = board.getPlayer(i);
+            Space space = player.getSpace();
+            hash = 31 * hash + (space != null ? space.y * board.width + space.x : -1);
+            hash = 31 * hash + player.getHeading().ordinal();
+            hash = 31 * hash + player.getCheckPointCounter();
+        }
+        return hash;
+    }
+
+    /**
+     * Replays the given replay files, checking the state after every
+     * register, and prints how long every replay took.
+     *
+     * @param args the replay files
+     */
+    public static void main(String[] args) {
+        for (String arg : args) {
+            try {
+                long start = System.nanoTime();
+                Board board = replay(Path.of(arg), true);
+                long time = System.nanoTime() - start;
+                System.out.printf("%s: replayed in %.1f ms, final phase %s%n", arg, time / 1e6, board.getPhase());
+            } catch (IOException e) {
+                System.err.println("Error replaying " + arg + ": " + e.getMessage());
+            }
+        }
+    }
+
+}
@@ -0,0 +1,221 @@
+/*
+ *  This file is part of the initial project provided for the
+ *  course "Project in Software Development (02362)" held at
+ *  DTU Compute at the Technical University of Denmark.
+ *
+ *  Copyright (C) 2019, 2020: Ekkart Kindler, ekki@dtu.dk
+ *
+ *  This software is free software; you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation; version 2 of the License.
+ *
+ *  This project is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this project; if not, write to the Free Software
+ *  Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ *
+ */
+package dk.dtu.compute.se.pisd.roborally.fileaccess;
+
+import dk.dtu.compute.se.pisd.roborally.model.Phase;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.*;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.*;
+
+/**
+ * A catalog of the saved games in a directory, for showing them in a load
+ * dialog. For every save file, only the header (see {@link SaveFile.Header})
+ * is read, and the headers are cached in an index file in the directory,
+ * together with the size and the time of the last modification of the
+ * files. When the catalog is refreshed, only the headers of the files which
+ * are new or were modified since are read again, so that refreshing costs
+ * little more than listing the directory.
+ */
+public class SaveCatalog {
+
+    /**
+     * The name of the index file in the directory.
+     */
+    public static final String INDEX_FILE = "roborally_saves.idx";
+
+    /**
+     * The pattern of the names of save files in the directory.
+     */
+    public static final String SAVE_FILE_PATTERN = "roborally_save*.dat";
+
+    private static final int MAGIC = 0x52524358; // "RRCX"
+
+    private static final int VERSION = 1;
+
+    /**
+     * An entry of the catalog: a save file and its header.
+     */
+    public static class Entry {
+
+        public final String fileName;
+        public final SaveFile.Header header;
+
+        final long size;
+        final long lastModified;
+
+        Entry(String fileName, long size, long lastModified, SaveFile.Header header) {
+            this.fileName = fileName;
+            this.size = size;
+            this.lastModified = lastModified;
+            this.header = header;
+        }
+    }
+
+    private final Path directory;
+
+    private final Map<String, Entry> entries = new HashMap<>();
+
+    /**
+     * Creates the catalog of the save files in the given directory,
+     * starting from the index file if there is one.
+     *
+     * @param directory the directory with the save files
+     */
+    public SaveCatalog(@NotNull Path directory) {
+        this.directory = directory;
+        readIndex();
+    }
+
+    /**
+     * Updates the catalog with the save files currently in the directory
+     * and writes the index file, if anything changed.
+     *
+     * @return the entries of the catalog, the newest save first
+     * @throws IOException if the directory could not be listed
+     */
+    public synchronized List<Entry> refresh() throws IOException {
+        boolean changed = false;
+        Set<String> found = new HashSet<>();
+
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, SAVE_FILE_PATTERN)) {
+            for (Path file : files) {
+                String fileName = file.getFileName().toString();
+                BasicFileAttributes attributes;
+                try {
+                    attributes = Files.readAttributes(file, BasicFileAttributes.class);
+                } catch (IOException e) {
+                    // the file was removed in the meantime
+                    continue;
+                }
+                if (!attributes.isRegularFile()) {
+                    continue;
+                }
+                found.add(fileName);
+
+                long size = attributes.size();
+                long lastModified = attributes.lastModifiedTime().toMillis();
+                Entry entry = entries.get(fileName);
+                if (entry == null || entry.size != size || entry.lastModified != lastModified) {
+                    SaveFile.Header header;
+                    try {
+                        header = SaveFile.readHeader(file);
+                    } catch (IOException e) {
+                        // not a save file (or a broken one), which is not listed,
+                        // but remembered so that it is not read again
+                        header = null;
+                    }
+                    entries.put(fileName, new Entry(fileName, size, lastModified, header));
+                    changed = true;
+                }
+            }
+        }
+        changed |= entries.keySet().retainAll(found);
+
+        if (changed) {
+            writeIndex();
+        }
+        return getEntries();
+    }
+
+    /**
+     * Returns the entries of the catalog as of the last refresh (or as read
+     * from the index file), the newest save first.
+     *
+     * @return the entries of the catalog
+     */
+    public synchronized List<Entry> getEntries() {
+        List<Entry> result = new ArrayList<>();
+        for (Entry entry : entries.values()) {
+            if (entry.header != null) {
+                result.add(entry);
+            }
+        }
+        result.sort(Comparator.comparingLong((Entry entry) -> entry.header.timestamp).reversed());
+        return result;
+    }
+
+    private void readIndex() {
+        Path index = directory.resolve(INDEX_FILE);
+        if (!Files.exists(index)) {
+            return;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(index)))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                return;
+            }
+            int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                String fileName = in.readUTF();
+                long size = in.readLong();
+                long lastModified = in.readLong();
+                SaveFile.Header header = null;
+                if (in.readBoolean()) {
+                    long timestamp = in.readLong();
+                    String boardName = in.readUTF();
+                    int playerCount = in.readUnsignedByte();
+                    int phase = in.readUnsignedByte();
+                    int step = in.readUnsignedByte();
+                    if (phase >= Phase.values().length) {
+                        throw new IOException("Corrupt index");
+                    }
+                    header = new SaveFile.Header(timestamp, boardName, playerCount, Phase.values()[phase], step, 0, 0);
+                }
+                entries.put(fileName, new Entry(fileName, size, lastModified, header));
+            }
+        } catch (IOException e) {
+            // the index is only a cache, which is rebuilt on the next refresh
+            entries.clear();
+        }
+    }
+
+    private void writeIndex() {
+        Path index = directory.resolve(INDEX_FILE);
+        Path temp = directory.resolve(INDEX_FILE + ".tmp");
+        try {
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp)))) {
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                out.writeInt(entries.size());
+                for (Entry entry : entries.values()) {
+                    out.writeUTF(entry.fileName);
+                    out.writeLong(entry.size);
+                    out.writeLong(entry.lastModified);
+                    out.writeBoolean(entry.header != null);
+                    if (entry.header != null) {
+                        out.writeLong(entry.header.timestamp);
+                        out.writeUTF(entry.header.boardName);
+                        out.writeByte(entry.header.playerCount);
+                        out.writeByte(entry.header.phase.ordinal());
+                        out.writeByte(entry.header.step);
+                    }
+                }
+            }
+            Files.move(temp, index, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            System.err.println("Error writing the index of saved games: " + e.getMessage());
+        }
+    }
+
+}
@@ -0,0 +1,300 @@
+/*
+ *  This file is part of the initial project provided for the
+ *  course "Project in Software Development (02362)" held at
+ *  DTU Compute at the Technical University of Denmark.
+ *
+ *  Copyright (C) 2019, 2020: Ekkart Kindler, ekki@dtu.dk
+ *
+ *  This software is free software; you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation; version 2 of the License.
+ *
+ *  This project is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this project; if not, write to the Free Software
+ *  Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ *
+ */
+package dk.dtu.compute.se.pisd.roborally.fileaccess;
+
+import dk.dtu.compute.se.pisd.roborally.model.Board;
+import dk.dtu.compute.se.pisd.roborally.model.Phase;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32;
+
+/**
+ * Reads and writes save files of games. A save file consists of a header
+ * of fixed size followed by a {@link GameSnapshot} of the game as payload.
+ * The header contains everything needed for listing saved games without
+ * decoding the payload: the time of saving, the name of the board, the number
+ * of players, the phase and the step; in addition, it contains the length
+ * and a CRC32 checksum of the payload.
+ *
+ * Save files are written to a temporary file first, which is then moved
+ * to the actual save file atomically. This way, a crash while saving never
+ * leaves a broken save file behind.
+ */
+public class SaveFile {
+
+    /**
+     * The version of the save file format written by {@link #save(Board, Path)}.
+     */
+    public static final short FORMAT_VERSION = 1;
+
+    /**
+     * The size of the header in bytes.
+     */
+    public static final int HEADER_SIZE = 64;
+
+    private static final int MAGIC = 0x52525356; // "RRSV"
+
+    private static final int BOARD_NAME_SIZE = 32;
+
+    private static final String TEMP_SUFFIX = ".tmp";
+
+    /**
+     * The header of a save file.
+     */
+    public static class Header {
+
+        public final long timestamp;
+        public final String boardName;
+        public final int playerCount;
+        public final Phase phase;
+        public final int step;
+
+        final int payloadLength;
+        final int checksum;
+
+        Header(long timestamp, String boardName, int playerCount, Phase phase, int step,
+               int payloadLength, int checksum) {
+            this.timestamp = timestamp;
+            this.boardName = boardName;
+            this.playerCount = playerCount;
+            this.phase = phase;
+            this.step = step;
+            this.payloadLength = payloadLength;
+            this.checksum = checksum;
+        }
+
+        void writeTo(ByteBuffer buffer) {
+            int start = buffer.position();
+            buffer.putInt(MAGIC);
+            buffer.putShort(FORMAT_VERSION);
+            buffer.putShort((short) 0); // reserved
+            buffer.putLong(timestamp);
+            byte[] name = boardName.getBytes(StandardCharsets.UTF_8);
+            int length = Math.min(name.length, BOARD_NAME_SIZE);
+            buffer.put(name, 0, length);
+            for (int i = length; i < BOARD_NAME_SIZE; i++) {
+                buffer.put((byte) 0);
+            }
+            buffer.put((byte) playerCount);
+            buffer.put((byte) phase.ordinal());
+            buffer.put((byte) step);
+            buffer.put((byte) 0); // reserved
+            buffer.putInt(payloadLength);
+            buffer.putInt(checksum);
+            buffer.position(start + HEADER_SIZE);
+        }
+
+        static Header readFrom(ByteBuffer buffer) {
+            int start = buffer.position();
+            if (buffer.remaining() < HEADER_SIZE || buffer.getInt() != MAGIC) {
+                throw new IllegalArgumentException("Not a RoboRally save file");
+            }
+            short version = buffer.getShort();
+            if (version != FORMAT_VERSION) {
+                throw new IllegalArgumentException("Unsupported save file version " + version);
+            }
+            buffer.getShort();
+            long timestamp = buffer.getLong();
+            byte[] name = new byte[BOARD_NAME_SIZE];
+            buffer.get(name);
+            int length = 0;
+            while (length < BOARD_NAME_SIZE && name[length] != 0) {
+                length++;
+            }
+            String boardName = new String(name, 0, length, StandardCharsets.UTF_8);
+            int playerCount = buffer.get() & 0xFF;
+            int phase = buffer.get() & 0xFF;
+            int step = buffer.get() & 0xFF;
+            buffer.get();
+            int payloadLength = buffer.getInt();
+            int checksum = buffer.getInt();
+            buffer.position(start + HEADER_SIZE);
+
+            if (phase >= Phase.values().length || payloadLength < 0) {
+                throw new IllegalArgumentException("Corrupt save file header");
+            }
+            return new Header(timestamp, boardName, playerCount, Phase.values()[phase], step,
+                    payloadLength, checksum);
+        }
+    }
+
+    /**
+     * Saves a game to the given file. The file is replaced atomically,
+     * i.e. it contains either the old or the new game, even if the program
+     * crashes while saving.
+     *
+     * @param board the game to save
+     * @param path the save file
+     * @return the time of saving, as stored in the header of the file
+     * @throws IOException if the game could not be saved
+     */
+    public static long save(@NotNull Board board, @NotNull Path path) throws IOException {
+        long timestamp = System.currentTimeMillis();
+        save(GameSnapshot.of(board), timestamp, path);
+        return timestamp;
+    }
+
+    /**
+     * Saves a snapshot of a game to the given file, like {@link #save(Board, Path)}.
+     * Since the snapshot is independent of the model, this can be done
+     * on another thread than the one playing the game.
+     *
+     * @param snapshot the snapshot of the game
+     * @param timestamp the time of saving to store in the header of the file
+     * @param path the save file
+     * @throws IOException if the game could not be saved
+     */
+    public static void save(@NotNull GameSnapshot snapshot, long timestamp, @NotNull Path path) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocateDirect(encodedSize(snapshot));
+        write(snapshot, timestamp, buffer);
+        buffer.flip();
+
+        Path temp = path.resolveSibling(path.getFileName() + TEMP_SUFFIX);
+        try (FileChannel channel = FileChannel.open(temp,
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            channel.force(false);
+        }
+        Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Returns the number of bytes needed for saving the given snapshot
+     * (including the header).
+     *
+     * @param snapshot the snapshot of the game
+     * @return the size of the saved game in bytes
+     */
+    static int encodedSize(@NotNull GameSnapshot snapshot) {
+        return HEADER_SIZE + snapshot.encodedSize();
+    }
+
+    /**
+     * Writes the header and the snapshot of a game to the buffer, starting at
+     * the current position of the buffer.
+     *
+     * @param snapshot the snapshot of the game
+     * @param timestamp the time of saving
+     * @param buffer the buffer with at least {@link #encodedSize(GameSnapshot)} bytes remaining
+     */
+    static void write(@NotNull GameSnapshot snapshot, long timestamp, @NotNull ByteBuffer buffer) {
+        int start = buffer.position();
+        buffer.position(start + HEADER_SIZE);
+        snapshot.writeTo(buffer);
+        int end = buffer.position();
+
+        CRC32 crc = new CRC32();
+        crc.update(buffer.duplicate().position(start + HEADER_SIZE).limit(end));
+
+        buffer.position(start);
+        new Header(timestamp, snapshot.boardName, snapshot.players.length, snapshot.phase,
+                snapshot.step, end - start - HEADER_SIZE, (int) crc.getValue()).writeTo(buffer);
+        buffer.position(end);
+    }
+
+    /**
+     * Reads a saved game from the buffer, starting at the current position
+     * of the buffer, and checks its checksum.
+     *
+     * @param buffer the buffer
+     * @return the snapshot of the saved game
+     * @throws IllegalArgumentException if the buffer does not contain a valid saved game
+     */
+    static GameSnapshot read(@NotNull ByteBuffer buffer) {
+        Header header = Header.readFrom(buffer);
+        if (buffer.remaining() < header.payloadLength) {
+            throw new IllegalArgumentException("Truncated save file");
+        }
+        ByteBuffer payload = buffer.slice(buffer.position(), header.payloadLength);
+        CRC32 crc = new CRC32();
+        crc.update(payload.duplicate());
+        if ((int) crc.getValue() != header.checksum) {
+            throw new IllegalArgumentException("Checksum mismatch");
+        }
+        buffer.position(buffer.position() + header.payloadLength);
+        return GameSnapshot.readFrom(payload);
+    }
+
+    /**
+     * Reads the header of a save file only, without reading the game.
+     *
+     * @param path the save file
+     * @return the header of the save file
+     * @throws IOException if the file could not be read or is not a save file
+     */
+    public static Header readHeader(@NotNull Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            ByteBuffer buffer = ByteBuffer.allocate(HEADER_SIZE);
+            readFully(channel, buffer);
+            try {
+                return Header.readFrom(buffer);
+            } catch (IllegalArgumentException e) {
+                throw new IOException(path + ": " + e.getMessage(), e);
+            }
+        }
+    }
+
+    /**
+     * Loads a game from the given save file.
+     *
+     * @param path the save file
+     * @return the snapshot of the saved game
+     * @throws IOException if the file could not be read, is not a save file
+     *                     or is corrupt
+     */
+    public static GameSnapshot load(@NotNull Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size < HEADER_SIZE || size > Integer.MAX_VALUE) {
+                throw new IOException(path + ": Not a RoboRally save file");
+            }
+            ByteBuffer buffer = ByteBuffer.allocateDirect((int) size);
+            readFully(channel, buffer);
+
+            try {
+                return read(buffer);
+            } catch (IllegalArgumentException e) {
+                throw new IOException(path + ": " + e.getMessage(), e);
+            }
+        }
+    }
+
+    private static void readFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer) < 0) {
+                break;
+            }
+        }
+        buffer.flip();
+    }
+
+}
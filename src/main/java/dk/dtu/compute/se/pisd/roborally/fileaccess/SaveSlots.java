@@ -0,0 +1,126 @@
+/*
+ *  This file is part of the initial project provided for the
+ *  course "Project in Software Development (02362)" held at
+ *  DTU Compute at the Technical University of Denmark.
+ *
+ *  Copyright (C) 2019, 2020: Ekkart Kindler, ekki@dtu.dk
+ *
+ *  This software is free software; you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation; version 2 of the License.
+ *
+ *  This project is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this project; if not, write to the Free Software
+ *  Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ *
+ */
+package dk.dtu.compute.se.pisd.roborally.fileaccess;
+
+import dk.dtu.compute.se.pisd.roborally.model.Board;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.Path;
+
+/**
+ * The save slots of the game: a {@link SlotSaveFile} with the slots to which
+ * the user saves games explicitly, and a separate {@link SlotSaveFile} for
+ * saving the game automatically. The automatic saves rotate through slots
+ * of their own, so that they never overwrite a game saved by the user.
+ */
+public class SaveSlots implements Closeable {
+
+    private final SlotSaveFile slots;
+
+    private final SlotSaveFile autosaves;
+
+    /**
+     * Opens the save slots, creating the files if they do not exist yet.
+     *
+     * @param slotPath the path of the file with the slots of the user
+     * @param slots the number of slots of the user
+     * @param autosavePath the path of the file with the automatic saves
+     * @param autosaves the number of slots for automatic saves
+     * @throws IOException if one of the files could not be opened
+     */
+    public SaveSlots(@NotNull Path slotPath, int slots, @NotNull Path autosavePath, int autosaves) throws IOException {
+        this.slots = new SlotSaveFile(slotPath, slots, SlotSaveFile.DEFAULT_SLOT_SIZE);
+        try {
+            this.autosaves = new SlotSaveFile(autosavePath, autosaves, SlotSaveFile.DEFAULT_SLOT_SIZE);
+        } catch (IOException e) {
+            this.slots.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Returns the number of slots of the user.
+     *
+     * @return the number of slots
+     */
+    public int getSlots() {
+        return slots.getSlots();
+    }
+
+    /**
+     * Saves the game to the given slot of the user.
+     *
+     * @param board the game
+     * @param slot the slot
+     * @throws IOException if the game does not fit into a slot
+     */
+    public void save(@NotNull Board board, int slot) throws IOException {
+        slots.save(board, slot);
+    }
+
+    /**
+     * Saves the game automatically, to the slot for automatic saves
+     * following the one saved last.
+     *
+     * @param board the game
+     * @throws IOException if the game does not fit into a slot
+     */
+    public void autosave(@NotNull Board board) throws IOException {
+        autosaves.save(board);
+    }
+
+    /**
+     * Loads the game saved in the given slot of the user.
+     *
+     * @param slot the slot
+     * @return the snapshot of the game, or null if the slot is empty or not valid
+     */
+    public GameSnapshot load(int slot) {
+        return slots.load(slot);
+    }
+
+    /**
+     * Loads the game which was saved automatically last.
+     *
+     * @return the snapshot of the game, or null if there is none
+     */
+    public GameSnapshot loadAutosave() {
+        return autosaves.load();
+    }
+
+    /**
+     * Writes all changes to the storage device and closes the files.
+     *
+     * @throws IOException if one of the files could not be closed
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            autosaves.close();
+        } finally {
+            slots.close();
+        }
+    }
+
+}
@@ -0,0 +1,285 @@
+/*
+ *  This file is part of the initial project provided for the
+ *  course "Project in Software Development (02362)" held at
+ *  DTU Compute at the Technical University of Denmark.
+ *
+ *  Copyright (C) 2019, 2020: Ekkart Kindler, ekki@dtu.dk
+ *
+ *  This software is free software; you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation; version 2 of the License.
+ *
+ *  This project is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this project; if not, write to the Free Software
+ *  Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ *
+ */
+package dk.dtu.compute.se.pisd.roborally.fileaccess;
+
+import dk.dtu.compute.se.pisd.roborally.model.Board;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32;
+
+/**
+ * A save file with a fixed number of slots of fixed size, which is mapped
+ * into memory once and then written without creating any files. This makes
+ * saving cheap enough for saving the game automatically after every register.
+ *
+ * The file starts with an index header (magic number, version, number and
+ * size of the slots, the slot saved last and its generation), followed by
+ * the slots. Each slot starts with the generation of the save, the length
+ * and a CRC32 checksum of its contents, followed by a saved game in the
+ * format of {@link SaveFile}. A save writes the slot first and then flips
+ * the pointer in the index header; if the pointer refers to a slot which
+ * is not valid (e.g. after a crash while saving), the newest valid slot is
+ * found by the generations of the slots.
+ */
+public class SlotSaveFile implements Closeable {
+
+    /**
+     * The default size of a slot in bytes, which is plenty for a game
+     * with six players.
+     */
+    public static final int DEFAULT_SLOT_SIZE = 16 * 1024;
+
+    private static final int MAGIC = 0x5252534C; // "RRSL"
+
+    private static final int VERSION = 1;
+
+    /**
+     * The size of the index header at the start of the file.
+     */
+    static final int HEADER_SIZE = 32;
+
+    /**
+     * The size of the header at the start of every slot.
+     */
+    static final int SLOT_HEADER_SIZE = 16;
+
+    private static final int NO_SLOT = -1;
+
+    private final FileChannel channel;
+
+    private final MappedByteBuffer buffer;
+
+    private final int slots;
+
+    private final int slotSize;
+
+    private int lastSlot;
+
+    private long generation;
+
+    /**
+     * Opens the slot save file at the given path, creating and sizing it
+     * if it does not exist yet.
+     *
+     * @param path the path of the file
+     * @param slots the number of slots of a new file
+     * @param slotSize the size of the slots of a new file in bytes
+     * @throws IOException if the file could not be opened or is not a slot save file
+     */
+    public SlotSaveFile(@NotNull Path path, int slots, int slotSize) throws IOException {
+        channel = FileChannel.open(path, StandardOpenOption.CREATE,
+                StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try {
+            if (channel.size() == 0) {
+                buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_SIZE + (long) slots * slotSize);
+                this.slots = slots;
+                this.slotSize = slotSize;
+                this.lastSlot = NO_SLOT;
+                this.generation = 0;
+                writeHeader();
+            } else {
+                ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+                channel.read(header, 0);
+                header.flip();
+                if (header.remaining() < HEADER_SIZE || header.getInt() != MAGIC || header.getInt() != VERSION) {
+                    throw new IOException(path + ": Not a RoboRally slot save file");
+                }
+                this.slots = header.getInt();
+                this.slotSize = header.getInt();
+                this.lastSlot = header.getInt();
+                this.generation = header.getLong();
+                if (this.slots <= 0 || this.slotSize <= SLOT_HEADER_SIZE ||
+                        channel.size() < HEADER_SIZE + (long) this.slots * this.slotSize) {
+                    throw new IOException(path + ": Corrupt slot save file");
+                }
+                buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_SIZE + (long) this.slots * this.slotSize);
+                if (lastSlot < NO_SLOT || lastSlot >= this.slots) {
+                    lastSlot = NO_SLOT;
+                }
+                // after a crash, a slot might be newer than the index header
+                for (int slot = 0; slot < this.slots; slot++) {
+                    generation = Math.max(generation, buffer.getLong(slotOffset(slot)));
+                }
+            }
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Returns the number of slots of this file.
+     *
+     * @return the number of slots
+     */
+    public int getSlots() {
+        return slots;
+    }
+
+    /**
+     * Returns the slot which was saved last, or -1 if no slot was saved yet.
+     *
+     * @return the slot saved last
+     */
+    public int getLastSlot() {
+        return lastSlot;
+    }
+
+    /**
+     * Saves the game to the slot following the one saved last.
+     *
+     * @param board the game
+     * @return the slot the game was saved to
+     * @throws IOException if the game does not fit into a slot
+     */
+    public synchronized int save(@NotNull Board board) throws IOException {
+        int slot = (lastSlot + 1) % slots;
+        save(board, slot);
+        return slot;
+    }
+
+    /**
+     * Saves the game to the given slot.
+     *
+     * @param board the game
+     * @param slot the slot
+     * @throws IOException if the game does not fit into a slot
+     */
+    public synchronized void save(@NotNull Board board, int slot) throws IOException {
+        checkSlot(slot);
+        GameSnapshot snapshot = GameSnapshot.of(board);
+        int length = SaveFile.encodedSize(snapshot);
+        if (SLOT_HEADER_SIZE + length > slotSize) {
+            throw new IOException("Game too large for a slot (" + length + " bytes)");
+        }
+
+        int start = slotOffset(slot);
+        ByteBuffer contents = buffer.slice(start + SLOT_HEADER_SIZE, length);
+        SaveFile.write(snapshot, System.currentTimeMillis(), contents);
+        CRC32 crc = new CRC32();
+        crc.update(contents.flip());
+
+        // the generation is written last, so that a slot which was only
+        // partially written is not considered newer than the other slots
+        buffer.putInt(start + 8, length);
+        buffer.putInt(start + 12, (int) crc.getValue());
+        buffer.putLong(start, ++generation);
+
+        lastSlot = slot;
+        writeHeader();
+    }
+
+    /**
+     * Loads the game which was saved last.
+     *
+     * @return the snapshot of the game, or null if there is no valid slot
+     */
+    public synchronized GameSnapshot load() {
+        if (lastSlot != NO_SLOT) {
+            GameSnapshot snapshot = read(lastSlot);
+            if (snapshot != null) {
+                return snapshot;
+            }
+        }
+
+        // the index header is not valid, fall back to the generations
+        int newest = NO_SLOT;
+        long newestGeneration = 0;
+        for (int slot = 0; slot < slots; slot++) {
+            long slotGeneration = buffer.getLong(slotOffset(slot));
+            if (slotGeneration > newestGeneration && read(slot) != null) {
+                newest = slot;
+                newestGeneration = slotGeneration;
+            }
+        }
+        return newest != NO_SLOT ? read(newest) : null;
+    }
+
+    /**
+     * Loads the game saved in the given slot.
+     *
+     * @param slot the slot
+     * @return the snapshot of the game, or null if the slot is empty or not valid
+     */
+    public synchronized GameSnapshot load(int slot) {
+        checkSlot(slot);
+        return read(slot);
+    }
+
+    private GameSnapshot read(int slot) {
+        int start = slotOffset(slot);
+        long slotGeneration = buffer.getLong(start);
+        int length = buffer.getInt(start + 8);
+        if (slotGeneration <= 0 || length <= 0 || SLOT_HEADER_SIZE + length > slotSize) {
+            return null;
+        }
+        ByteBuffer contents = buffer.slice(start + SLOT_HEADER_SIZE, length);
+        CRC32 crc = new CRC32();
+        crc.update(contents.duplicate());
+        if ((int) crc.getValue() != buffer.getInt(start + 12)) {
+            return null;
+        }
+        try {
+            return SaveFile.read(contents);
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    private void writeHeader() {
+        buffer.putInt(0, MAGIC);
+        buffer.putInt(4, VERSION);
+        buffer.putInt(8, slots);
+        buffer.putInt(12, slotSize);
+        buffer.putInt(16, lastSlot);
+        buffer.putLong(20, generation);
+    }
+
+    private int slotOffset(int slot) {
+        return HEADER_SIZE + slot * slotSize;
+    }
+
+    private void checkSlot(int slot) {
+        if (slot < 0 || slot >= slots) {
+            throw new IllegalArgumentException("No slot " + slot);
+        }
+    }
+
+    /**
+     * Writes all changes to the storage device and closes the file.
+     *
+     * @throws IOException if the file could not be closed
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        buffer.force();
+        channel.close();
+    }
+
+}
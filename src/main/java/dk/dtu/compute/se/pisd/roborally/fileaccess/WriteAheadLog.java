@@ -0,0 +1,753 @@
+/*
+ *  This file is part of the initial project provided for the
+ *  course "Project in Software Development (02362)" held at
+ *  DTU Compute at the Technical University of Denmark.
+ *
+ *  Copyright (C) 2019, 2020: Ekkart Kindler, ekki@dtu.dk
+ *
+ *  This software is free software; you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation; version 2 of the License.
+ *
+ *  This project is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this project; if not, write to the Free Software
+ *  Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ *
+ */
+package dk.dtu.compute.se.pisd.roborally.fileaccess;
+
+import dk.dtu.compute.se.pisd.designpatterns.observer.Observer;
+import dk.dtu.compute.se.pisd.designpatterns.observer.Subject;
+import dk.dtu.compute.se.pisd.roborally.controller.GameListener;
+import dk.dtu.compute.se.pisd.roborally.model.*;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.zip.CRC32;
+
+/**
+ * A write-ahead log of the changes of a game, which is kept next to the
+ * save file of the game (with the suffix {@link #SUFFIX}). Instead of
+ * saving the complete game after every change, the log observes the model
+ * and appends a small record for every change: a robot that moved, turned
+ * or reached a checkpoint, a card that was placed into a register or the
+ * hand, and changes of the phase, step, current player or move count.
+ *
+ * The records are collected in a buffer and written in groups: all changes
+ * of a command or register are written together, when the register is
+ * finished or the phase or step of the game changes; changes made by the
+ * user in the programming phase are written right away. Each group is
+ * written with its number of records and a CRC32 checksum, so that a
+ * group which was only partially written when the program crashed is
+ * ignored when the log is replayed.
+ *
+ * The log refers to the save file it was started on by the time of saving
+ * stored in the header of the save file; when the log grows beyond
+ * {@link #COMPACTION_THRESHOLD}, the game is saved completely and the log
+ * is started from scratch. The snapshot for this save is taken right away,
+ * but it is encoded and written by a background executor; until the save
+ * is written, the previous log is kept (with the suffix {@link #PREVIOUS_SUFFIX}),
+ * so that both logs can be replayed onto the previous save file after a crash.
+ * When the log is started, the game is saved in the same way; if the game
+ * was loaded from the save file, the changes logged since it was saved are
+ * kept as the previous log until the new save is written.
+ */
+public class WriteAheadLog implements Observer, GameListener, Closeable {
+
+    /**
+     * The suffix added to the name of the save file for the name of the log.
+     */
+    public static final String SUFFIX = ".wal";
+
+    /**
+     * The suffix added to the name of the log for the previous log, which
+     * is kept while the game is saved in the background.
+     */
+    public static final String PREVIOUS_SUFFIX = ".prev";
+
+    /**
+     * The size of the log in bytes, beyond which the log is compacted.
+     */
+    public static final int COMPACTION_THRESHOLD = 64 * 1024;
+
+    private static final int MAGIC = 0x5252574C; // "RRWL"
+
+    private static final int VERSION = 1;
+
+    private static final int HEADER_SIZE = 24;
+
+    private static final int GROUP_HEADER_SIZE = 8;
+
+    private static final int RECORD_SIZE = 8;
+
+    private static final int MAX_GROUP_RECORDS = 512;
+
+    private static final byte PLAYER_RECORD = 1;
+    private static final byte CARD_RECORD = 2;
+    private static final byte BOARD_RECORD = 3;
+
+    private static final byte PROGRAM_FIELD = 0;
+    private static final byte CARD_FIELD = 1;
+
+    private static final byte NO_CARD = -1;
+
+    private final Board board;
+
+    private final Path savePath;
+
+    private final Path logPath;
+
+    private final Path previousPath;
+
+    private final Executor executor;
+
+    private FileChannel channel;
+
+    /**
+     * The time of saving of the save file the log refers to.
+     */
+    private long base;
+
+    /**
+     * The save being written in the background, if any.
+     */
+    private CompletableFuture<Void> pendingSave = CompletableFuture.completedFuture(null);
+
+    /**
+     * The save requested while another save was still being written, if any.
+     */
+    private CompletableFuture<Void> deferredSave;
+
+    private final ByteBuffer group =
+            ByteBuffer.allocateDirect(GROUP_HEADER_SIZE + MAX_GROUP_RECORDS * RECORD_SIZE);
+
+    private int records = 0;
+
+    /**
+     * The state of the players and the board as last written to the log,
+     * for finding out what changed.
+     */
+    private final int[] lastX;
+    private final int[] lastY;
+    private final int[] lastHeading;
+    private final int[] lastCheckPoints;
+    private Phase lastPhase;
+    private int lastStep;
+    private int lastCurrent;
+    private int lastMoveCount;
+
+    private WriteAheadLog(Board board, Path savePath, Executor executor) {
+        this.board = board;
+        this.savePath = savePath;
+        this.logPath = logPath(savePath);
+        this.previousPath = previousPath(logPath);
+        this.executor = executor;
+
+        int n = board.getPlayersNumber();
+        lastX = new int[n];
+        lastY = new int[n];
+        lastHeading = new int[n];
+        lastCheckPoints = new int[n];
+    }
+
+    /**
+     * Saves the game completely to the save file and starts a new log for
+     * it, which observes the game from now on. The log must also be added as
+     * a {@link GameListener} to the controller of the game, so that the
+     * changes are written when a register is finished.
+     *
+     * This method must be called on the thread playing the game. The
+     * snapshot of the game is written to the save file by the executor in
+     * the background; errors are reported when it is done.
+     *
+     * @param board the game
+     * @param savePath the save file
+     * @param executor the executor for saving the game in the background
+     * @return the log
+     * @throws IOException if the log could not be started
+     */
+    public static WriteAheadLog start(@NotNull Board board, @NotNull Path savePath,
+                                      @NotNull Executor executor) throws IOException {
+        return start(board, savePath, 0, executor);
+    }
+
+    /**
+     * Starts a new log for a game which was loaded from the given save file,
+     * see {@link #start(Board, Path, Executor)}. Until the game is saved again,
+     * the changes logged since the save file was written are kept as the
+     * previous log, so that the game can still be restored from the save
+     * file and both logs after a crash.
+     *
+     * @param board the game, as restored from the save file and its log
+     * @param savePath the save file
+     * @param previous the time of saving as stored in the header of the save
+     *                 file, or 0 if the game was not loaded from it
+     * @param executor the executor for saving the game in the background
+     * @return the log
+     * @throws IOException if the log could not be started
+     */
+    public static WriteAheadLog start(@NotNull Board board, @NotNull Path savePath, long previous,
+                                      @NotNull Executor executor) throws IOException {
+        WriteAheadLog log = new WriteAheadLog(board, savePath, executor);
+        GameSnapshot snapshot = GameSnapshot.of(board);
+        long timestamp = Math.max(System.currentTimeMillis(), previous + 1);
+        if (previous != 0) {
+            log.keepChanges(previous);
+        } else {
+            Files.deleteIfExists(log.previousPath);
+        }
+        log.restart(timestamp, previous);
+        log.save(snapshot, timestamp).exceptionally(e -> {
+            System.err.println("Error saving the RoboRally game: " + e.getMessage());
+            return null;
+        });
+
+        board.attach(log);
+        for (int i = 0; i < board.getPlayersNumber(); i++) {
+            Player player = board.getPlayer(i);
+            player.attach(log);
+            for (int j = 0; j < Player.NO_REGISTERS; j++) {
+                player.getProgramField(j).attach(log);
+            }
+            for (int j = 0; j < Player.NO_CARDS; j++) {
+                player.getCardField(j).attach(log);
+            }
+        }
+        return log;
+    }
+
+    /**
+     * Returns the path of the log belonging to the given save file.
+     *
+     * @param savePath the save file
+     * @return the path of the log
+     */
+    public static Path logPath(@NotNull Path savePath) {
+        return savePath.resolveSibling(savePath.getFileName() + SUFFIX);
+    }
+
+    private static Path previousPath(Path logPath) {
+        return logPath.resolveSibling(logPath.getFileName() + PREVIOUS_SUFFIX);
+    }
+
+    /**
+     * Replays the log belonging to the given save file onto a game, which
+     * was just restored from this save file. If the log belongs to another
+     * version of the save file, it is ignored, unless the game was being
+     * saved in the background when the program stopped: then, the previous
+     * log and the log are replayed. Groups of records which were not
+     * completely written are ignored.
+     *
+     * @param board the game restored from the save file
+     * @param savePath the save file
+     * @param timestamp the time of saving as stored in the header of the save file
+     * @return the number of changes replayed
+     * @throws IOException if the log could not be read
+     */
+    public static int replay(@NotNull Board board, @NotNull Path savePath, long timestamp) throws IOException {
+        Path logPath = logPath(savePath);
+        ByteBuffer log = readLog(logPath);
+        if (log == null) {
+            return 0;
+        }
+        long logBase = log.getLong();
+        long logPrevious = log.getLong();
+        if (logBase == timestamp) {
+            return replay(board, log);
+        }
+
+        ByteBuffer previous = readLog(previousPath(logPath));
+        if (previous != null && logPrevious == timestamp && previous.getLong() == timestamp) {
+            previous.getLong();
+            return replay(board, previous) + replay(board, log);
+        }
+        return 0;
+    }
+
+    /**
+     * Reads a log and checks its magic number and version. The returned
+     * buffer is positioned at the time of saving of the save file
+     * the log refers to.
+     */
+    private static ByteBuffer readLog(Path path) throws IOException {
+        if (!Files.exists(path)) {
+            return null;
+        }
+        ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(path));
+        if (buffer.remaining() < HEADER_SIZE || buffer.getInt() != MAGIC || buffer.getInt() != VERSION) {
+            return null;
+        }
+        return buffer;
+    }
+
+    private static int replay(Board board, ByteBuffer buffer) {
+        int replayed = 0;
+        ByteBuffer contents;
+        while ((contents = nextGroup(buffer)) != null) {
+            int count = contents.remaining() / RECORD_SIZE;
+            for (int i = 0; i < count; i++) {
+                apply(board, contents);
+            }
+            replayed += count;
+        }
+        return replayed;
+    }
+
+    /**
+     * Reads the next group of records of a log, and returns its records.
+     * If the group was not completely written, null is returned.
+     */
+    private static ByteBuffer nextGroup(ByteBuffer buffer) {
+        if (buffer.remaining() < GROUP_HEADER_SIZE) {
+            return null;
+        }
+        int count = buffer.getInt();
+        int checksum = buffer.getInt();
+        if (count <= 0 || count > MAX_GROUP_RECORDS || buffer.remaining() < count * RECORD_SIZE) {
+            return null;
+        }
+        ByteBuffer contents = buffer.slice(buffer.position(), count * RECORD_SIZE);
+        CRC32 crc = new CRC32();
+        crc.update(contents.duplicate());
+        if ((int) crc.getValue() != checksum) {
+            return null;
+        }
+        buffer.position(buffer.position() + count * RECORD_SIZE);
+        return contents;
+    }
+
+    /**
+     * Returns the completely written groups of records of a log,
+     * starting at the current position of the buffer.
+     */
+    private static ByteBuffer completeGroups(ByteBuffer buffer) {
+        int start = buffer.position();
+        int end = start;
+        while (nextGroup(buffer) != null) {
+            end = buffer.position();
+        }
+        return buffer.slice(start, end - start);
+    }
+
+    /**
+     * Writes the changes logged since the save file with the given time of
+     * saving was written to the previous log, before the log is restarted.
+     * These are the changes which were replayed when the game was loaded:
+     * either the log, or the previous log and the log, if the game was
+     * being saved in the background when the program stopped.
+     */
+    private void keepChanges(long timestamp) throws IOException {
+        List<ByteBuffer> changes = new ArrayList<>();
+        ByteBuffer log = readLog(logPath);
+        if (log != null) {
+            long logBase = log.getLong();
+            long logPrevious = log.getLong();
+            if (logBase == timestamp) {
+                changes.add(completeGroups(log));
+            } else if (logPrevious == timestamp) {
+                ByteBuffer previous = readLog(previousPath);
+                if (previous != null && previous.getLong() == timestamp) {
+                    previous.getLong();
+                    changes.add(completeGroups(previous));
+                    changes.add(completeGroups(log));
+                }
+            }
+        }
+
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        header.putInt(MAGIC);
+        header.putInt(VERSION);
+        header.putLong(timestamp);
+        header.putLong(0);
+        header.flip();
+        changes.addFirst(header);
+
+        // the previous log might still be needed, if writing the new one fails
+        Path temp = previousPath.resolveSibling(previousPath.getFileName() + ".tmp");
+        try (FileChannel out = FileChannel.open(temp, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            for (ByteBuffer buffer : changes) {
+                while (buffer.hasRemaining()) {
+                    out.write(buffer);
+                }
+            }
+            out.force(false);
+        }
+        Files.move(temp, previousPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private static void apply(Board board, ByteBuffer record) {
+        byte type = record.get();
+        switch (type) {
+            case PLAYER_RECORD: {
+                Player player = board.getPlayer(record.get());
+                int x = record.getShort();
+                int y = record.getShort();
+                int heading = record.get();
+                int checkPoints = record.get();
+                if (player != null) {
+                    player.setSpace(board.getSpace(x, y));
+                    player.setHeading(Heading.values()[heading]);
+                    player.setCheckPointCounter(checkPoints);
+                }
+                break;
+            }
+            case CARD_RECORD: {
+                Player player = board.getPlayer(record.get());
+                byte kind = record.get();
+                int index = record.get();
+                byte command = record.get();
+                boolean visible = record.get() != 0;
+                record.getShort();
+                if (player != null) {
+                    CommandCardField field = kind == PROGRAM_FIELD ?
+                            player.getProgramField(index) : player.getCardField(index);
+                    if (field != null) {
+                        field.setCard(command == NO_CARD ? null : new CommandCard(Command.values()[command]));
+                        field.setVisible(visible);
+                    }
+                }
+                break;
+            }
+            case BOARD_RECORD: {
+                int phase = record.get();
+                int step = record.get();
+                int current = record.get();
+                int moveCount = record.getInt();
+                board.setPhase(Phase.values()[phase]);
+                board.setStep(step);
+                if (current >= 0) {
+                    board.setCurrentPlayer(board.getPlayer(current));
+                }
+                board.setMoveCount(moveCount);
+                break;
+            }
+            default:
+                throw new IllegalStateException("Unknown record type " + type);
+        }
+    }
+
+    @Override
+    public synchronized void update(Subject subject) {
+        if (channel == null) {
+            return;
+        }
+        if (subject instanceof Player player) {
+            int i = board.getPlayerNumber(player);
+            if (i >= 0 && i < lastX.length && hasChanged(i, player)) {
+                appendPlayer(i, player);
+            }
+        } else if (subject instanceof CommandCardField field) {
+            appendCard(field);
+            Phase phase = board.getPhase();
+            if (phase == Phase.PROGRAMMING || phase == Phase.INITIALISATION) {
+                commit();
+            }
+        } else if (subject == board) {
+            Player current = board.getCurrentPlayer();
+            int currentNumber = current != null ? board.getPlayerNumber(current) : -1;
+            int moveCount = board.getMoveCount();
+            if (board.getPhase() != lastPhase || board.getStep() != lastStep ||
+                    currentNumber != lastCurrent || moveCount != lastMoveCount) {
+                appendBoard(currentNumber, moveCount);
+                commit();
+            }
+        }
+    }
+
+    @Override
+    public void programmingFinished() {
+        commit();
+    }
+
+    @Override
+    public void registerFinished(int register) {
+        commit();
+    }
+
+    @Override
+    public void stateRestored() {
+        // the changes of undo and redo were logged as any other changes
+        commit();
+    }
+
+    private boolean hasChanged(int i, Player player) {
+        Space space = player.getSpace();
+        return lastX[i] != (space != null ? space.x : -1) ||
+                lastY[i] != (space != null ? space.y : -1) ||
+                lastHeading[i] != player.getHeading().ordinal() ||
+                lastCheckPoints[i] != player.getCheckPointCounter();
+    }
+
+    private void appendPlayer(int i, Player player) {
+        Space space = player.getSpace();
+        lastX[i] = space != null ? space.x : -1;
+        lastY[i] = space != null ? space.y : -1;
+        lastHeading[i] = player.getHeading().ordinal();
+        lastCheckPoints[i] = player.getCheckPointCounter();
+
+        reserveRecord();
+        group.put(PLAYER_RECORD);
+        group.put((byte) i);
+        group.putShort((short) lastX[i]);
+        group.putShort((short) lastY[i]);
+        group.put((byte) lastHeading[i]);
+        group.put((byte) lastCheckPoints[i]);
+    }
+
+    private void appendCard(CommandCardField field) {
+        Player player = field.player;
+        int i = board.getPlayerNumber(player);
+        byte kind = PROGRAM_FIELD;
+        int index = indexOf(field, player, true);
+        if (index < 0) {
+            kind = CARD_FIELD;
+            index = indexOf(field, player, false);
+        }
+        if (i < 0 || index < 0) {
+            return;
+        }
+
+        CommandCard card = field.getCard();
+        reserveRecord();
+        group.put(CARD_RECORD);
+        group.put((byte) i);
+        group.put(kind);
+        group.put((byte) index);
+        group.put(card != null ? (byte) card.command.ordinal() : NO_CARD);
+        group.put((byte) (field.isVisible() ? 1 : 0));
+        group.putShort((short) 0);
+    }
+
+    private static int indexOf(CommandCardField field, Player player, boolean program) {
+        int n = program ? Player.NO_REGISTERS : Player.NO_CARDS;
+        for (int j = 0; j < n; j++) {
+            if ((program ? player.getProgramField(j) : player.getCardField(j)) == field) {
+                return j;
+            }
+        }
+        return -1;
+    }
+
+    private void appendBoard(int current, int moveCount) {
+        lastPhase = board.getPhase();
+        lastStep = board.getStep();
+        lastCurrent = current;
+        lastMoveCount = moveCount;
+
+        reserveRecord();
+        group.put(BOARD_RECORD);
+        group.put((byte) lastPhase.ordinal());
+        group.put((byte) lastStep);
+        group.put((byte) current);
+        group.putInt(moveCount);
+    }
+
+    private void reserveRecord() {
+        if (records == MAX_GROUP_RECORDS) {
+            commit();
+        }
+        if (records == 0) {
+            group.clear();
+            group.position(GROUP_HEADER_SIZE);
+        }
+        records++;
+    }
+
+    /**
+     * Writes the records collected so far as one group to the log, and
+     * compacts the log if it became too large.
+     */
+    private synchronized void commit() {
+        try {
+            boolean written = writeGroup();
+            if (deferredSave != null && pendingSave.isDone()) {
+                CompletableFuture<Void> deferred = deferredSave;
+                deferredSave = null;
+                complete(compactNow(), deferred);
+            } else if (written && deferredSave == null && channel.size() > COMPACTION_THRESHOLD) {
+                compact().exceptionally(e -> {
+                    System.err.println("Error saving the RoboRally game: " + e.getMessage());
+                    return null;
+                });
+            }
+        } catch (IOException e) {
+            System.err.println("Error writing the log of the RoboRally game: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Writes the records collected so far as one group to the log.
+     *
+     * @return true if a group was written
+     */
+    private boolean writeGroup() throws IOException {
+        if (records == 0 || channel == null) {
+            return false;
+        }
+        group.flip();
+        CRC32 crc = new CRC32();
+        crc.update(group.duplicate().position(GROUP_HEADER_SIZE));
+        group.putInt(0, records);
+        group.putInt(4, (int) crc.getValue());
+        records = 0;
+        while (group.hasRemaining()) {
+            channel.write(group);
+        }
+        return true;
+    }
+
+    /**
+     * Saves the game completely and starts the log from scratch. This
+     * is done automatically when the log becomes too large, but can
+     * also be called for saving the game explicitly.
+     *
+     * This method must be called on the thread playing the game. It takes
+     * a snapshot of the game and starts the new log right away; the snapshot
+     * is written to the save file by the executor in the background. If the
+     * last save is still being written, its previous log is still needed;
+     * then, the game is saved by the first change written to the log after
+     * the last save is done (or, if the log is closed before, the game is
+     * saved by the last save and the log).
+     *
+     * @return the future completing when the game is saved
+     */
+    public synchronized CompletableFuture<Void> compact() {
+        if (channel == null) {
+            return CompletableFuture.failedFuture(new IOException("The log is closed"));
+        }
+        if (!pendingSave.isDone()) {
+            if (deferredSave == null) {
+                deferredSave = new CompletableFuture<>();
+            }
+            return deferredSave;
+        }
+        return compactNow();
+    }
+
+    private CompletableFuture<Void> compactNow() {
+        GameSnapshot snapshot = GameSnapshot.of(board);
+        long timestamp = Math.max(System.currentTimeMillis(), base + 1);
+        try {
+            // the pending records are not needed for the snapshot, but
+            // they belong to the previous log in case the save fails
+            writeGroup();
+            channel.close();
+            Files.move(logPath, previousPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            restart(timestamp, base);
+        } catch (IOException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+        return save(snapshot, timestamp);
+    }
+
+    /**
+     * Writes a snapshot of the game to the save file in the background,
+     * and deletes the previous log when it is written.
+     */
+    private CompletableFuture<Void> save(GameSnapshot snapshot, long timestamp) {
+        pendingSave = CompletableFuture.runAsync(() -> {
+            try {
+                SaveFile.save(snapshot, timestamp, savePath);
+                Files.deleteIfExists(previousPath);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }, executor);
+        return pendingSave;
+    }
+
+    private static void complete(CompletableFuture<Void> save, CompletableFuture<Void> future) {
+        save.whenComplete((result, error) -> {
+            if (error == null) {
+                future.complete(null);
+            } else {
+                future.completeExceptionally(error);
+            }
+        });
+    }
+
+    /**
+     * Starts a new log referring to the save file with the given time of
+     * saving, and remembers the current state of the game.
+     */
+    private void restart(long timestamp, long previous) throws IOException {
+        records = 0;
+        base = timestamp;
+        channel = FileChannel.open(logPath, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        header.putInt(MAGIC);
+        header.putInt(VERSION);
+        header.putLong(timestamp);
+        header.putLong(previous);
+        header.flip();
+        while (header.hasRemaining()) {
+            channel.write(header);
+        }
+
+        for (int i = 0; i < lastX.length; i++) {
+            Player player = board.getPlayer(i);
+            Space space = player.getSpace();
+            lastX[i] = space != null ? space.x : -1;
+            lastY[i] = space != null ? space.y : -1;
+            lastHeading[i] = player.getHeading().ordinal();
+            lastCheckPoints[i] = player.getCheckPointCounter();
+        }
+        Player current = board.getCurrentPlayer();
+        lastPhase = board.getPhase();
+        lastStep = board.getStep();
+        lastCurrent = current != null ? board.getPlayerNumber(current) : -1;
+        lastMoveCount = board.getMoveCount();
+    }
+
+    /**
+     * Writes the pending records, stops observing the game and closes the log.
+     * A save which is still being written in the background is not affected;
+     * a save requested in the meantime completes with it.
+     *
+     * @throws IOException if the log could not be closed
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        writeGroup();
+        board.detach(this);
+        for (int i = 0; i < board.getPlayersNumber(); i++) {
+            Player player = board.getPlayer(i);
+            player.detach(this);
+            for (int j = 0; j < Player.NO_REGISTERS; j++) {
+                player.getProgramField(j).detach(this);
+            }
+            for (int j = 0; j < Player.NO_CARDS; j++) {
+                player.getCardField(j).detach(this);
+            }
+        }
+        if (channel != null) {
+            channel.force(false);
+            channel.close();
+            channel = null;
+        }
+        if (deferredSave != null) {
+            complete(pendingSave, deferredSave);
+            deferredSave = null;
+        }
+    }
+
+}
@@ -33,6 +33,12 @@ import java.util.List;
  */
 public class BoardTemplate {
 
+    /**
+     * The version of the format of the board file; files without a version
+     * are in the original format (version 1).
+     */
+    public int version;
+
     public int width;
     public int height;
 
@@ -6,4 +6,6 @@ public class ConveyorBeltTemplate extends ActionTemplate {
 
     public Heading heading;
 
+    public boolean express;
+
 }
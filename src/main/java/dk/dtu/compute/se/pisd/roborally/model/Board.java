@@ -381,6 +381,19 @@ public class Board extends Subject {
         return moveCount;
     }
 
+    /**
+     * Sets the move count, which is needed when a game is restored from
+     * a saved state, and notifies observers if the count changes.
+     *
+     * @param moveCount the new move count
+     */
+    public void setMoveCount(int moveCount) {
+        if (moveCount != this.moveCount) {
+            this.moveCount = moveCount;
+            notifyChange();
+        }
+    }
+
     /**
      * Updates the board and notifies observers of the change.
      */
@@ -1,7 +1,9 @@
 package dk.dtu.compute.se.pisd.roborally.model;
 
+import dk.dtu.compute.se.pisd.roborally.controller.ActivationStage;
 import dk.dtu.compute.se.pisd.roborally.controller.FieldAction;
 import dk.dtu.compute.se.pisd.roborally.controller.GameController;
+import dk.dtu.compute.se.pisd.roborally.controller.MovementTimeline;
 
 
 /**
@@ -47,7 +49,8 @@ public class CheckPoint extends FieldAction {
      * Performs the action of reaching the checkpoint. If the player has not
      * yet reached this checkpoint (based on the player's checkpoint counter),
      * it increments the player's checkpoint counter. If the player reaches 3
-     * checkpoints, they are declared the winner of the game.
+     * checkpoints, they are declared the winner of the game, which finishes
+     * the game.
      *
      * @param gameController the game controller to manage game logic
      * @param space the space on the board where the checkpoint is located
@@ -60,14 +63,22 @@ public class CheckPoint extends FieldAction {
         Player player = space.getPlayer();
         if(player.getCheckPointCounter() == x){
             System.out.println(player + "has reached checkpoint " + x);
+            gameController.getUndoHistory().recordCheckPoint(player, x, x + 1);
             player.setCheckPointCounter(player.getCheckPointCounter() + 1);
+            gameController.getMovementTimeline().record(MovementTimeline.Type.CHECKPOINT, player, space, space,
+                    player.getHeading(), player.getHeading());
             if(player.getCheckPointCounter() == 4){
                 System.out.println(player + " has won the game");
-                System.exit(0);
+                gameController.finishGame(player);
 
                 return true;
             }
         }
         return false;
     }
+
+    @Override
+    public ActivationStage getActivationStage() {
+        return ActivationStage.CHECKPOINTS;
+    }
 }
@@ -22,6 +22,7 @@
 package dk.dtu.compute.se.pisd.roborally.model;
 
 
+import dk.dtu.compute.se.pisd.roborally.controller.ActivationStage;
 import dk.dtu.compute.se.pisd.roborally.controller.FieldAction;
 import dk.dtu.compute.se.pisd.roborally.controller.GameController;
 import org.jetbrains.annotations.NotNull;
@@ -36,6 +37,11 @@ public class ConveyorBelt extends FieldAction {
 
     private Heading heading;
 
+    /**
+     * Whether this is an express belt, which moves robots twice per register.
+     */
+    private boolean express;
+
     public ConveyorBelt() {
         super();
     }
@@ -48,8 +54,18 @@ public class ConveyorBelt extends FieldAction {
         this.heading = heading;
     }
 
+    public boolean isExpress() {
+        return express;
+    }
+
+    public void setExpress(boolean express) {
+        this.express = express;
+    }
+
     /**
-     * Implementation of the action of a conveyor belt. Needs to be implemented for A3.
+     * Implementation of the action of a conveyor belt for a single robot. Note that
+     * during the game, all belts are activated at once by the
+     * {@link dk.dtu.compute.se.pisd.roborally.controller.ConveyorBeltGraph}.
      */
     @Override
     public boolean doAction(@NotNull GameController gameController, @NotNull Space space) {
@@ -70,4 +86,9 @@ public class ConveyorBelt extends FieldAction {
         }
         return false;
     }
+
+    @Override
+    public ActivationStage getActivationStage() {
+        return ActivationStage.CONVEYOR_BELTS;
+    }
 }
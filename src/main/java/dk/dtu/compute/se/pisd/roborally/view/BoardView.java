@@ -29,9 +29,12 @@ import dk.dtu.compute.se.pisd.roborally.model.ConveyorBelt;
 import dk.dtu.compute.se.pisd.roborally.model.Phase;
 import dk.dtu.compute.se.pisd.roborally.model.Space;
 import javafx.event.EventHandler;
+import javafx.geometry.Pos;
 import javafx.scene.control.Label;
 import javafx.scene.input.MouseEvent;
 import javafx.scene.layout.GridPane;
+import javafx.scene.layout.Pane;
+import javafx.scene.layout.StackPane;
 import javafx.scene.layout.VBox;
 import org.jetbrains.annotations.NotNull;
 
@@ -66,6 +69,9 @@ public class BoardView extends VBox implements ViewObserver {
     /** Event handler for handling clicks on spaces */
     private SpaceEventHandler spaceEventHandler;
 
+    /** Plays back the movements of the robots on top of the board */
+    private MovementAnimator movementAnimator;
+
     /**
      * Constructs a BoardView instance for the given game controller.
      *
@@ -79,7 +85,11 @@ public class BoardView extends VBox implements ViewObserver {
         playersView = new PlayersView(gameController);
         statusLabel = new Label("<no status>");
 
-        this.getChildren().add(mainBoardPane);
+        Pane overlay = new Pane();
+        StackPane boardPane = new StackPane(mainBoardPane, overlay);
+        boardPane.setAlignment(Pos.TOP_LEFT);
+
+        this.getChildren().add(boardPane);
         this.getChildren().add(playersView);
         this.getChildren().add(statusLabel);
 
@@ -104,11 +114,27 @@ public class BoardView extends VBox implements ViewObserver {
                 spaceView.setOnMouseClicked(spaceEventHandler);
             }
         }
+        movementAnimator = new MovementAnimator(board, this, overlay);
+        gameController.addGameListener(movementAnimator);
+
         // Attach the view to the board so it can be updated
         board.attach(this);
         update(board);
     }
 
+    /**
+     * Sets whether the robots are shown on the spaces of the board.
+     *
+     * @param visible whether the robots are shown
+     */
+    void setPlayersVisible(boolean visible) {
+        for (int x = 0; x < board.width; x++) {
+            for (int y = 0; y < board.height; y++) {
+                spaces[x][y].setPlayerVisible(visible);
+            }
+        }
+    }
+
     /**
      * Updates the view when the state of the subject changes.
      *
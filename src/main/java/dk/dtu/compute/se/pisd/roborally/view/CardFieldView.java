@@ -23,7 +23,6 @@ package dk.dtu.compute.se.pisd.roborally.view;
 
 import dk.dtu.compute.se.pisd.designpatterns.observer.Subject;
 import dk.dtu.compute.se.pisd.roborally.controller.GameController;
-import dk.dtu.compute.se.pisd.roborally.model.Command;
 import dk.dtu.compute.se.pisd.roborally.model.CommandCard;
 import dk.dtu.compute.se.pisd.roborally.model.CommandCardField;
 import dk.dtu.compute.se.pisd.roborally.model.Phase;
@@ -263,17 +262,15 @@ public class CardFieldView extends GridPane implements ViewObserver {
                         cardField.player != null &&
                         cardField.player.board != null) {
                     if (event.getGestureSource() != target &&
+                            event.getGestureSource() instanceof CardFieldView &&
                             db.hasContent(ROBO_RALLY_CARD)) {
-                        Object object = db.getContent(ROBO_RALLY_CARD);
-                        if (object instanceof Integer) {
-                            int number = (Integer) object;
-                            if (number < Command.values().length) {
-                                Command command = Command.values()[number];
-                                cardField.setCard(new CommandCard(command));
-                                event.setDropCompleted(true);
-                                event.consume();
-                                return;
-                            }
+                        // the card is moved by the game controller, so that
+                        // the move can be undone
+                        CardFieldView source = (CardFieldView) event.getGestureSource();
+                        if (gameController.moveCards(source.field, cardField)) {
+                            event.setDropCompleted(true);
+                            event.consume();
+                            return;
                         }
                     }
                 }
@@ -294,8 +291,8 @@ public class CardFieldView extends GridPane implements ViewObserver {
             if (t instanceof CardFieldView) {
                 CardFieldView source = (CardFieldView) t;
                 if (event.isAccepted()) {
-                    source.field.setCard(null);
-                    // the view will update automatically since the field changed
+                    // the card was already moved away from the source field,
+                    // and the view will update automatically since the field changed
                     // source.setBackground(BG_NONE);
                 } else {
                     // leave the card on the field, since drag and drop was cancelled
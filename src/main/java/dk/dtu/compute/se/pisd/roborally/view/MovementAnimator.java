@@ -0,0 +1,262 @@
+/*
+ *  This file is part of the initial project provided for the
+ *  course "Project in Software Development (02362)" held at
+ *  DTU Compute at the Technical University of Denmark.
+ *
+ *  Copyright (C) 2019, 2020: Ekkart Kindler, ekki@dtu.dk
+ *
+ *  This software is free software; you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation; version 2 of the License.
+ *
+ *  This project is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this project; if not, write to the Free Software
+ *  Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ *
+ */
+package dk.dtu.compute.se.pisd.roborally.view;
+
+import dk.dtu.compute.se.pisd.roborally.controller.GameListener;
+import dk.dtu.compute.se.pisd.roborally.controller.MovementTimeline;
+import dk.dtu.compute.se.pisd.roborally.model.Board;
+import dk.dtu.compute.se.pisd.roborally.model.Player;
+import dk.dtu.compute.se.pisd.roborally.model.Space;
+import javafx.animation.AnimationTimer;
+import javafx.application.Platform;
+import javafx.scene.layout.Pane;
+import javafx.scene.paint.Color;
+import javafx.scene.shape.Polygon;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+/**
+ * Plays back the {@link MovementTimeline movement timelines} of the registers
+ * on an overlay over the board, with a fixed frame rate of 60 frames per
+ * second. Every beat of a timeline takes the same time, and the robots are
+ * moved and turned smoothly in between. Since the game controller finishes
+ * the registers right away, the timelines of several registers may be waiting
+ * to be played back; while they are played back, the robots are shown on the
+ * overlay only, and not on the spaces of the board.
+ */
+class MovementAnimator extends AnimationTimer implements GameListener {
+
+    /**
+     * The time between two frames, in nanoseconds.
+     */
+    static final long FRAME_NANOS = 1_000_000_000L / 60;
+
+    /**
+     * The time of a beat of a timeline, in nanoseconds.
+     */
+    static final long BEAT_NANOS = 250_000_000L;
+
+    private static final double ARROW_SIZE = 20.0;
+
+    private final Board board;
+
+    private final BoardView boardView;
+
+    private final Pane overlay;
+
+    private final Deque<MovementTimeline> timelines = new ArrayDeque<>();
+
+    private MovementTimeline.Event[] events;
+
+    private int beats;
+
+    private Polygon[] robots;
+
+    private double[] baseX;
+    private double[] baseY;
+    private double[] baseAngle;
+
+    private long start = -1;
+
+    private long lastFrame;
+
+    private boolean running = false;
+
+    MovementAnimator(@NotNull Board board, @NotNull BoardView boardView, @NotNull Pane overlay) {
+        this.board = board;
+        this.boardView = boardView;
+        this.overlay = overlay;
+        overlay.setMouseTransparent(true);
+    }
+
+    @Override
+    public void movementsRecorded(int register, MovementTimeline timeline) {
+        if (Platform.isFxApplicationThread()) {
+            enqueue(timeline);
+        } else {
+            Platform.runLater(() -> enqueue(timeline));
+        }
+    }
+
+    private void enqueue(MovementTimeline timeline) {
+        if (timeline.size() == 0) {
+            return;
+        }
+        timelines.add(timeline);
+        if (!running) {
+            running = true;
+            boardView.setPlayersVisible(false);
+            createRobots();
+            next();
+            start();
+        }
+    }
+
+    private void createRobots() {
+        overlay.getChildren().clear();
+        int players = board.getPlayersNumber();
+        robots = new Polygon[players];
+        baseX = new double[players];
+        baseY = new double[players];
+        baseAngle = new double[players];
+        for (int i = 0; i < players; i++) {
+            Player player = board.getPlayer(i);
+            Polygon arrow = new Polygon(0.0, 0.0, ARROW_SIZE / 2, ARROW_SIZE, ARROW_SIZE, 0.0);
+            try {
+                arrow.setFill(Color.valueOf(player.getColor()));
+            } catch (Exception e) {
+                arrow.setFill(Color.MEDIUMPURPLE);
+            }
+            robots[i] = arrow;
+            overlay.getChildren().add(arrow);
+        }
+    }
+
+    /**
+     * Starts playing back the next timeline: the robots start from their
+     * positions before the first event of the timeline. Robots which do not
+     * move in the timeline stay where the previous timeline left them; only
+     * if no timeline was played back before, they start from their current
+     * positions on the board. Since the registers are finished right away,
+     * the board might already show the positions after later registers.
+     */
+    private void next() {
+        MovementTimeline timeline = timelines.poll();
+        if (events != null) {
+            for (MovementTimeline.Event event : events) {
+                int i = event.player();
+                if (i >= 0 && i < robots.length) {
+                    baseX[i] = event.toX();
+                    baseY[i] = event.toY();
+                    baseAngle[i] = angle(event.toHeading().ordinal());
+                }
+            }
+        } else {
+            for (int i = 0; i < robots.length; i++) {
+                Player player = board.getPlayer(i);
+                Space space = player.getSpace();
+                baseX[i] = space != null ? space.x : 0;
+                baseY[i] = space != null ? space.y : 0;
+                baseAngle[i] = angle(player.getHeading().ordinal());
+            }
+        }
+
+        events = new MovementTimeline.Event[timeline.size()];
+        for (int i = 0; i < events.length; i++) {
+            events[i] = timeline.get(i);
+        }
+        beats = timeline.getBeats();
+        start = -1;
+
+        for (int i = events.length - 1; i >= 0; i--) {
+            MovementTimeline.Event event = events[i];
+            if (event.player() >= 0 && event.player() < robots.length) {
+                baseX[event.player()] = event.fromX();
+                baseY[event.player()] = event.fromY();
+                baseAngle[event.player()] = angle(event.fromHeading().ordinal());
+            }
+        }
+    }
+
+    @Override
+    public void handle(long now) {
+        if (start < 0) {
+            start = now;
+            lastFrame = now - FRAME_NANOS;
+        }
+        if (now - lastFrame < FRAME_NANOS) {
+            return;
+        }
+        lastFrame = now;
+
+        double beat = (now - start) / (double) BEAT_NANOS;
+        if (beat >= beats) {
+            if (timelines.isEmpty()) {
+                stop();
+                running = false;
+                events = null;
+                overlay.getChildren().clear();
+                boardView.setPlayersVisible(true);
+                return;
+            }
+            next();
+            start = now;
+            beat = 0;
+        }
+        render(beat);
+    }
+
+    /**
+     * Shows the robots at the given time of the current timeline: the events
+     * of earlier beats are finished, and the events of the current beat are
+     * interpolated.
+     *
+     * @param beat the time in beats
+     */
+    private void render(double beat) {
+        int current = (int) beat;
+        double t = beat - current;
+        double[] x = baseX.clone();
+        double[] y = baseY.clone();
+        double[] angle = baseAngle.clone();
+
+        for (MovementTimeline.Event event : events) {
+            int i = event.player();
+            if (i < 0 || i >= robots.length || event.beat() > current) {
+                continue;
+            }
+            double progress = event.beat() < current ? 1.0 : t;
+            double dx = event.toX() - event.fromX();
+            double dy = event.toY() - event.fromY();
+            if (Math.abs(dx) > 1 || Math.abs(dy) > 1) {
+                // moves over the edge of the board are not interpolated
+                progress = progress < 0.5 ? 0.0 : 1.0;
+            }
+            x[i] = event.fromX() + dx * progress;
+            y[i] = event.fromY() + dy * progress;
+            double from = angle(event.fromHeading().ordinal());
+            double turn = angle(event.toHeading().ordinal()) - from;
+            if (turn > 180) {
+                turn -= 360;
+            } else if (turn < -180) {
+                turn += 360;
+            }
+            angle[i] = from + turn * progress;
+        }
+
+        double offsetX = (SpaceView.SPACE_WIDTH - ARROW_SIZE) / 2;
+        double offsetY = (SpaceView.SPACE_HEIGHT - ARROW_SIZE) / 2;
+        for (int i = 0; i < robots.length; i++) {
+            robots[i].setTranslateX(x[i] * SpaceView.SPACE_WIDTH + offsetX);
+            robots[i].setTranslateY(y[i] * SpaceView.SPACE_HEIGHT + offsetY);
+            robots[i].setRotate(angle[i]);
+        }
+    }
+
+    private static double angle(int heading) {
+        // the same as the rotation of the robots in the space views
+        return (90 * heading) % 360;
+    }
+
+}
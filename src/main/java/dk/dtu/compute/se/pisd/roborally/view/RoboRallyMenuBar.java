@@ -25,12 +25,14 @@ import dk.dtu.compute.se.pisd.roborally.controller.AppController;
 import javafx.scene.control.Menu;
 import javafx.scene.control.MenuBar;
 import javafx.scene.control.MenuItem;
+import javafx.scene.input.KeyCombination;
 
 /**
  * Represents the menu bar for the RoboRally game.
  *
  * The menu bar contains options such as starting a new game, stopping the current game,
- * saving the game, loading a game, and exiting the application. The visibility of these options
+ * saving the game, loading a game (also to and from the save slots), and exiting the application,
+ * as well as undoing and redoing the operations of the game. The visibility of the file options
  * is dynamically updated based on whether a game is running or not.
  *
  * This class extends the {@link MenuBar} class and is used in the RoboRally game's graphical user interface.
@@ -51,10 +53,16 @@ public class RoboRallyMenuBar extends MenuBar {
 
     private MenuItem loadGame;
 
+    private Menu saveSlot;
+
+    private Menu loadSlot;
+
     private MenuItem stopGame;
 
     private MenuItem exitApp;
 
+    private Menu editMenu;
+
     /**
      * Constructs a new RoboRallyMenuBar with the given AppController.
      *
@@ -91,6 +99,29 @@ public class RoboRallyMenuBar extends MenuBar {
         loadGame.setOnAction( e -> this.appController.loadGame());
         controlMenu.getItems().add(loadGame);
 
+        // Save to Slot Menu
+        saveSlot = new Menu("Save to Slot");
+        for (int i = 0; i < AppController.NO_SLOTS; i++) {
+            int slot = i;
+            MenuItem item = new MenuItem("Slot " + (slot + 1));
+            item.setOnAction( e -> this.appController.saveGame(slot));
+            saveSlot.getItems().add(item);
+        }
+        controlMenu.getItems().add(saveSlot);
+
+        // Load from Slot Menu (including the latest automatic save)
+        loadSlot = new Menu("Load from Slot");
+        MenuItem latest = new MenuItem("Latest Automatic Save");
+        latest.setOnAction( e -> this.appController.loadGame(AppController.LATEST_SLOT));
+        loadSlot.getItems().add(latest);
+        for (int i = 0; i < AppController.NO_SLOTS; i++) {
+            int slot = i;
+            MenuItem item = new MenuItem("Slot " + (slot + 1));
+            item.setOnAction( e -> this.appController.loadGame(slot));
+            loadSlot.getItems().add(item);
+        }
+        controlMenu.getItems().add(loadSlot);
+
         // Exit Application Menu Item
         exitApp = new MenuItem("Exit");
         exitApp.setOnAction( e -> this.appController.exit());
@@ -100,6 +131,20 @@ public class RoboRallyMenuBar extends MenuBar {
         controlMenu.setOnShowing(e -> update());
         controlMenu.setOnShown(e -> this.updateBounds());
 
+        // Edit Menu with Undo and Redo of the operations of the game
+        editMenu = new Menu("Edit");
+        this.getMenus().add(editMenu);
+
+        MenuItem undo = new MenuItem("Undo");
+        undo.setAccelerator(KeyCombination.keyCombination("Shortcut+Z"));
+        undo.setOnAction( e -> this.appController.undo());
+        editMenu.getItems().add(undo);
+
+        MenuItem redo = new MenuItem("Redo");
+        redo.setAccelerator(KeyCombination.keyCombination("Shortcut+Y"));
+        redo.setOnAction( e -> this.appController.redo());
+        editMenu.getItems().add(redo);
+
         // Initial update of menu visibility
         update();
     }
@@ -117,11 +162,15 @@ public class RoboRallyMenuBar extends MenuBar {
             stopGame.setVisible(true);
             saveGame.setVisible(true);
             loadGame.setVisible(false);
+            saveSlot.setVisible(true);
+            loadSlot.setVisible(false);
         } else {
             newGame.setVisible(true);
             stopGame.setVisible(false);
             saveGame.setVisible(false);
             loadGame.setVisible(true);
+            saveSlot.setVisible(false);
+            loadSlot.setVisible(true);
         }
     }
 
@@ -64,6 +64,12 @@ public class SpaceView extends StackPane implements ViewObserver {
 
     public final Space space;
 
+    /**
+     * Whether the robot on this space is shown; it is not shown while the
+     * movements of the robots are played back on top of the board.
+     */
+    private boolean playerVisible = true;
+
     /**
      * Constructs a new SpaceView for the given space.
      * The view initializes the space's graphical representation, sets its size, and
@@ -105,7 +111,7 @@ public class SpaceView extends StackPane implements ViewObserver {
         this.getChildren().removeIf(node -> node instanceof Polygon && node.getOpacity() != 0.7); // Remove previous player arrows only
 
         Player player = space.getPlayer();
-        if (player != null) {
+        if (player != null && playerVisible) {
             Polygon arrow = new Polygon(0.0, 0.0, 10.0, 20.0, 20.0, 0.0);
             try {
                 arrow.setFill(Color.valueOf(player.getColor()));
@@ -186,6 +192,18 @@ public class SpaceView extends StackPane implements ViewObserver {
         }
     }
 
+    /**
+     * Sets whether the robot on this space is shown.
+     *
+     * @param playerVisible whether the robot is shown
+     */
+    void setPlayerVisible(boolean playerVisible) {
+        if (playerVisible != this.playerVisible) {
+            this.playerVisible = playerVisible;
+            updatePlayer();
+        }
+    }
+
     void drawConveyorBelt(Heading heading) {
         System.out.println("🎨 Drawing conveyor belt at " + space.x + "," + space.y + " Heading: " + heading);
 
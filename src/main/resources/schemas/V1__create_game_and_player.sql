@@ -30,5 +30,3 @@ CREATE TABLE IF NOT EXISTS Player (
 );;
 
 SET FOREIGN_KEY_CHECKS = 1;;
-
-// TODO still some stuff missing here
\ No newline at end of file
@@ -0,0 +1,3 @@
+/* The binary snapshot of the complete game state (see GameSnapshot), which
+   is used when the repository is in the persistence mode SNAPSHOT. */
+ALTER TABLE Game ADD COLUMN snapshot mediumblob NULL;;
@@ -0,0 +1,30 @@
+/* The append-only journal of games in the persistence mode JOURNAL: one row
+   for every change of a robot by a command or at the end of a register. */
+CREATE TABLE IF NOT EXISTS MoveJournal (
+  gameID int NOT NULL,
+  seq int NOT NULL,
+
+  playerID tinyint NOT NULL,
+  command tinyint NULL,
+  step tinyint,
+
+  positionX int,
+  positionY int,
+  heading tinyint,
+  checkpoints tinyint,
+
+  PRIMARY KEY (gameID, seq),
+  FOREIGN KEY (gameID) REFERENCES Game(gameID)
+);;
+
+/* The snapshots of journaled games; a snapshot covers all rows of the
+   journal up to (and including) its sequence number. */
+CREATE TABLE IF NOT EXISTS JournalSnapshot (
+  gameID int NOT NULL,
+  seq int NOT NULL,
+
+  snapshot mediumblob NOT NULL,
+
+  PRIMARY KEY (gameID, seq),
+  FOREIGN KEY (gameID) REFERENCES Game(gameID)
+);;
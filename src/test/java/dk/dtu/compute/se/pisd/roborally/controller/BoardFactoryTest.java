@@ -1,5 +1,6 @@
 package dk.dtu.compute.se.pisd.roborally.controller;
 
+import dk.dtu.compute.se.pisd.roborally.fileaccess.BoardTemplateCache;
 import dk.dtu.compute.se.pisd.roborally.model.Board;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
@@ -27,15 +28,30 @@ class BoardFactoryTest {
     }
 
     /**
-     * Test that getAvailableBoardNames() returns correct board names.
+     * Test that getAvailableBoardNames() returns the built-in boards first,
+     * followed by the boards discovered in the board resources.
      */
     @Test
     void testGetAvailableBoardNames() {
         List<String> boardNames = boardFactory.getAvailableBoardNames();
         assertNotNull(boardNames, "Board names list should not be null.");
-        assertEquals(2, boardNames.size(), "BoardFactory should return exactly two board names.");
-        assertTrue(boardNames.contains("Board1"), "Board1 should be in the available board names.");
-        assertTrue(boardNames.contains("Board2"), "Board2 should be in the available board names.");
+        assertEquals(List.of("Board1", "Board2"), boardNames.subList(0, 2),
+                "Board1 and Board2 should be the first available board names.");
+        assertTrue(boardNames.contains("defaultboard"), "Board resources should be discovered.");
+        assertEquals(boardNames.stream().distinct().count(), boardNames.size(), "Board names should be unique.");
+    }
+
+    /**
+     * Test that preloading puts the discovered boards into the cache and that
+     * they can be created by the factory afterwards.
+     */
+    @Test
+    void testPreload() {
+        boardFactory.preload().join();
+        assertNotNull(BoardTemplateCache.getInstance().peek("defaultboard"), "Discovered boards should be preloaded.");
+
+        Board board = boardFactory.createBoardAsync("defaultboard").join();
+        assertEquals("defaultboard", board.getName(), "Discovered board should be created from its resource.");
     }
 
     /**
@@ -0,0 +1,86 @@
+package dk.dtu.compute.se.pisd.roborally.controller;
+
+import dk.dtu.compute.se.pisd.roborally.fileaccess.LoadBoard;
+import dk.dtu.compute.se.pisd.roborally.model.Board;
+import dk.dtu.compute.se.pisd.roborally.model.CheckPoint;
+import dk.dtu.compute.se.pisd.roborally.model.ConveyorBelt;
+import dk.dtu.compute.se.pisd.roborally.model.Space;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for the {@link BoardGenerator}.
+ */
+class BoardGeneratorTest {
+
+    /**
+     * Tests that the same seed results in the same board.
+     */
+    @Test
+    void testSameSeed() {
+        Board first = new BoardGenerator(17).setWallDensity(0.3).generate(64, 48, "generated");
+        Board second = new BoardGenerator(17).setWallDensity(0.3).generate(64, 48, "generated");
+
+        for (int x = 0; x < first.width; x++) {
+            for (int y = 0; y < first.height; y++) {
+                Space space = first.getSpace(x, y);
+                Space other = second.getSpace(x, y);
+                assertEquals(space.getWalls(), other.getWalls(), "Walls should be the same for the same seed!");
+                assertEquals(space.hasAction(ConveyorBelt.class), other.hasAction(ConveyorBelt.class),
+                        "Conveyor belts should be the same for the same seed!");
+                assertEquals(space.hasAction(CheckPoint.class), other.hasAction(CheckPoint.class),
+                        "Checkpoints should be the same for the same seed!");
+            }
+        }
+    }
+
+    /**
+     * Tests that each checkpoint can be reached from the previous one.
+     */
+    @Test
+    void testCheckPointsReachable() {
+        Board board = new BoardGenerator(4711).setWallDensity(0.5).setCheckPoints(5).generate(40, 30, "generated");
+
+        Space[] checkPoints = new Space[6];
+        checkPoints[0] = board.getSpace(0, 0);
+        for (int x = 0; x < board.width; x++) {
+            for (int y = 0; y < board.height; y++) {
+                Space space = board.getSpace(x, y);
+                if (!space.getActions().isEmpty() && space.getActions().getLast() instanceof CheckPoint checkPoint) {
+                    assertNull(checkPoints[checkPoint.getX()], "Checkpoint numbers should be unique!");
+                    checkPoints[checkPoint.getX()] = space;
+                }
+            }
+        }
+
+        int[] distances = new int[board.width * board.height];
+        int[] queue = new int[board.width * board.height];
+        for (int i = 1; i < checkPoints.length; i++) {
+            assertNotNull(checkPoints[i], "Checkpoint " + i + " should be placed!");
+            BoardGenerator.reachable(board, checkPoints[i - 1], distances, queue);
+            Space target = checkPoints[i];
+            assertTrue(distances[target.y * board.width + target.x] > 0,
+                    "Checkpoint " + i + " should be reachable from the previous one!");
+        }
+    }
+
+    /**
+     * Tests that a generated board can be saved to a board file.
+     */
+    @Test
+    void testSaveBoard(@TempDir Path directory) throws IOException {
+        Board board = new BoardGenerator(3).generate(16, 16, "generated");
+        Path file = directory.resolve("generated.json");
+        LoadBoard.saveBoard(board, file);
+
+        String json = Files.readString(file);
+        assertTrue(json.contains("\"checkPoint\""), "Checkpoints should be saved!");
+        assertTrue(json.contains("\"walls\""), "Walls should be saved!");
+    }
+}
@@ -0,0 +1,94 @@
+package dk.dtu.compute.se.pisd.roborally.controller;
+
+import dk.dtu.compute.se.pisd.roborally.model.Board;
+import dk.dtu.compute.se.pisd.roborally.model.ConveyorBelt;
+import dk.dtu.compute.se.pisd.roborally.model.Heading;
+import dk.dtu.compute.se.pisd.roborally.model.Player;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for moving robots by the {@link ConveyorBeltGraph}.
+ */
+class ConveyorBeltGraphTest {
+
+    private Board board;
+
+    @BeforeEach
+    void setUp() {
+        board = new Board(8, 8);
+    }
+
+    private void addBelt(int x, int y, Heading heading, boolean express) {
+        ConveyorBelt belt = new ConveyorBelt();
+        belt.setHeading(heading);
+        belt.setExpress(express);
+        board.getSpace(x, y).getActions().add(belt);
+    }
+
+    private Player addPlayer(int x, int y, Heading heading) {
+        Player player = new Player(board, "red", "Player " + board.getPlayersNumber());
+        board.addPlayer(player);
+        player.setSpace(board.getSpace(x, y));
+        player.setHeading(heading);
+        return player;
+    }
+
+    /**
+     * Tests that a chain of robots on a belt is moved as a whole.
+     */
+    @Test
+    void testChainMoves() {
+        addBelt(1, 0, Heading.EAST, false);
+        addBelt(2, 0, Heading.EAST, false);
+        addBelt(3, 0, Heading.EAST, false);
+        Player first = addPlayer(1, 0, Heading.NORTH);
+        Player second = addPlayer(2, 0, Heading.NORTH);
+        Player third = addPlayer(3, 0, Heading.NORTH);
+
+        new ConveyorBeltGraph(board).move(false);
+
+        assertEquals(board.getSpace(2, 0), first.getSpace(), "First robot should be moved!");
+        assertEquals(board.getSpace(3, 0), second.getSpace(), "Second robot should be moved!");
+        assertEquals(board.getSpace(4, 0), third.getSpace(), "Third robot should be moved!");
+    }
+
+    /**
+     * Tests that two robots moved to the same space both stay, and that
+     * this blocks the robots behind them.
+     */
+    @Test
+    void testConflict() {
+        addBelt(0, 1, Heading.EAST, false);
+        addBelt(1, 1, Heading.EAST, false);
+        addBelt(3, 1, Heading.WEST, false);
+        Player behind = addPlayer(0, 1, Heading.NORTH);
+        Player left = addPlayer(1, 1, Heading.NORTH);
+        Player right = addPlayer(3, 1, Heading.NORTH);
+
+        new ConveyorBeltGraph(board).move(false);
+
+        assertEquals(board.getSpace(1, 1), left.getSpace(), "Robot entering a contested space should stay!");
+        assertEquals(board.getSpace(3, 1), right.getSpace(), "Robot entering a contested space should stay!");
+        assertEquals(board.getSpace(0, 1), behind.getSpace(), "Robot behind a staying robot should stay!");
+    }
+
+    /**
+     * Tests that a robot is turned when moved onto a turning belt, and
+     * that express belts move robots twice.
+     */
+    @Test
+    void testTurningExpressBelt() {
+        addBelt(4, 6, Heading.EAST, true);
+        addBelt(5, 6, Heading.EAST, true);
+        addBelt(6, 6, Heading.SOUTH, true);
+        Player player = addPlayer(4, 6, Heading.EAST);
+
+        new ConveyorBeltGraph(board).activate();
+
+        assertEquals(board.getSpace(6, 6), player.getSpace(), "Express belt should move the robot twice!");
+        assertEquals(Heading.SOUTH, player.getHeading(), "Turning belt should turn the robot!");
+    }
+}
@@ -1,9 +1,17 @@
 package dk.dtu.compute.se.pisd.roborally.controller;
 
+import dk.dtu.compute.se.pisd.designpatterns.observer.Observer;
+import dk.dtu.compute.se.pisd.designpatterns.observer.Subject;
 import dk.dtu.compute.se.pisd.roborally.model.*;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
 import static org.junit.jupiter.api.Assertions.*;
 
 /**
@@ -156,4 +164,256 @@ class GameControllerTest {
         gameController.uTurn(player);
         assertEquals(Heading.NORTH, player.getHeading(), "Player should be facing NORTH after second U-Turn!");
     }
+
+    /**
+     * Tests that a multi-step move pushes the robots in the way, which end
+     * up in a row in front of the player.
+     */
+    @Test
+    void testMoveThreePushes() {
+        player.setSpace(board.getSpace(0, 6));
+        player.setHeading(Heading.EAST);
+        Player first = new Player(board, "blue", "Player 2");
+        board.addPlayer(first);
+        first.setSpace(board.getSpace(2, 6));
+        Player second = new Player(board, "green", "Player 3");
+        board.addPlayer(second);
+        second.setSpace(board.getSpace(4, 6));
+
+        int moved = gameController.move(player, Heading.EAST, 3);
+
+        assertEquals(3, moved, "Player should have moved three spaces!");
+        assertEquals(board.getSpace(3, 6), player.getSpace(), "Player should be three spaces ahead!");
+        assertEquals(board.getSpace(4, 6), first.getSpace(), "First robot should be pushed in front of the player!");
+        assertEquals(board.getSpace(5, 6), second.getSpace(), "Second robot should be pushed in front of the first!");
+    }
+
+    /**
+     * Tests that a long chain of robots is pushed as a whole, and that it
+     * is not moved at all if a wall blocks the robot in front.
+     */
+    @Test
+    void testPushLongChain() {
+        Board wideBoard = new Board(64, 8);
+        GameController controller = new GameController(wideBoard);
+        Player[] chain = new Player[40];
+        for (int i = 0; i < chain.length; i++) {
+            chain[i] = new Player(wideBoard, "red", "Player " + i);
+            wideBoard.addPlayer(chain[i]);
+            chain[i].setSpace(wideBoard.getSpace(10 + i, 1));
+            chain[i].setHeading(Heading.EAST);
+        }
+
+        assertTrue(controller.moveForward(chain[0]), "Chain should be pushed!");
+        for (int i = 0; i < chain.length; i++) {
+            assertEquals(wideBoard.getSpace(11 + i, 1), chain[i].getSpace(), "Every robot of the chain should be pushed!");
+        }
+
+        chain[chain.length - 1].getSpace().getWalls().add(Heading.EAST);
+        assertFalse(controller.moveForward(chain[0]), "Chain in front of a wall should not be pushed!");
+        assertEquals(wideBoard.getSpace(11, 1), chain[0].getSpace(), "Blocked player should stay!");
+    }
+
+    /**
+     * Tests that the activation schedule groups the field actions by stage,
+     * and activates checkpoints after the conveyor belts moved the robots.
+     */
+    @Test
+    void testActivationSchedule() {
+        ConveyorBelt belt = new ConveyorBelt();
+        belt.setHeading(Heading.EAST);
+        board.getSpace(0, 6).getActions().add(belt);
+        board.getSpace(1, 6).getActions().add(new CheckPoint(player.getCheckPointCounter()));
+        player.setSpace(board.getSpace(0, 6));
+        int checkPoints = player.getCheckPointCounter();
+
+        ActivationSchedule schedule = new ActivationSchedule(board);
+        assertEquals(1, schedule.getSpaces(ActivationStage.CHECKPOINTS), "Checkpoint should be scheduled!");
+        assertEquals(0, schedule.getSpaces(ActivationStage.GEARS), "No gears should be scheduled!");
+        assertTrue(schedule.getConveyorBelts().isConveyorBelt(board.getSpace(0, 6)), "Belt should be in the graph!");
+
+        schedule.activate(gameController);
+        assertEquals(board.getSpace(1, 6), player.getSpace(), "Conveyor belt should move the player!");
+        assertEquals(checkPoints + 1, player.getCheckPointCounter(), "Checkpoint should be reached after moving!");
+    }
+
+    /**
+     * Tests that executing the programs notifies every changed subject
+     * only once, at the end.
+     */
+    @Test
+    void testExecuteProgramsNotifiesOnce() {
+        for (int i = 0; i < Player.NO_REGISTERS; i++) {
+            player.getProgramField(i).setCard(new CommandCard(Command.FORWARD));
+        }
+        board.setPhase(Phase.ACTIVATION);
+        board.setStep(0);
+
+        Map<Subject, Integer> updates = new HashMap<>();
+        Observer observer = subject -> updates.merge(subject, 1, Integer::sum);
+        board.attach(observer);
+        player.attach(observer);
+
+        gameController.executePrograms();
+
+        assertEquals(Phase.PROGRAMMING, board.getPhase(), "All registers should be executed!");
+        assertEquals(1, updates.get(board), "Board should be updated once!");
+        assertEquals(1, updates.get(player), "Player should be updated once!");
+    }
+
+    /**
+     * Tests that the movements of every register are recorded in a timeline,
+     * which is handed to the game listeners when the register is finished.
+     */
+    @Test
+    void testMovementTimeline() {
+        for (int i = 0; i < Player.NO_REGISTERS; i++) {
+            player.getProgramField(i).setCard(new CommandCard(Command.FORWARD));
+        }
+        board.setPhase(Phase.ACTIVATION);
+        board.setStep(0);
+
+        List<MovementTimeline> timelines = new ArrayList<>();
+        gameController.addGameListener(new GameListener() {
+            @Override
+            public void movementsRecorded(int register, MovementTimeline timeline) {
+                timelines.add(timeline);
+            }
+        });
+
+        gameController.executePrograms();
+
+        assertEquals(Player.NO_REGISTERS, timelines.size(), "Every register should have a timeline!");
+        for (MovementTimeline timeline : timelines) {
+            boolean moved = false;
+            for (int i = 0; i < timeline.size(); i++) {
+                MovementTimeline.Event event = timeline.get(i);
+                if (event.type() == MovementTimeline.Type.MOVE && event.player() == board.getPlayerNumber(player)) {
+                    moved = true;
+                }
+            }
+            assertTrue(moved, "Player should move in every register!");
+        }
+        assertEquals(0, gameController.getMovementTimeline().size(), "Timeline should be cleared after the register!");
+    }
+
+    /**
+     * Tests that steps and card moves can be undone and redone, restoring the
+     * positions, headings, cards and the step of the game.
+     */
+    @Test
+    void testUndoRedo() {
+        player.getProgramField(0).setCard(new CommandCard(Command.FORWARD));
+        player.getProgramField(1).setCard(new CommandCard(Command.RIGHT));
+        board.setPhase(Phase.ACTIVATION);
+        board.setStep(0);
+
+        gameController.executeStep();
+        gameController.executeStep();
+        assertEquals(board.getSpace(0, 7), player.getSpace(), "Player should have moved!");
+        assertEquals(Heading.EAST, player.getHeading(), "Player should have turned!");
+        assertEquals(2, board.getStep(), "Two registers should be executed!");
+
+        assertTrue(gameController.undo(), "Second step should be undone!");
+        assertEquals(Heading.NORTH, player.getHeading(), "Turn should be undone!");
+        assertEquals(1, board.getStep(), "Step should be undone!");
+        assertTrue(gameController.undo(), "First step should be undone!");
+        assertEquals(board.getSpace(0, 0), player.getSpace(), "Move should be undone!");
+        assertEquals(player, board.getSpace(0, 0).getPlayer(), "Space should have the player again!");
+        assertNull(board.getSpace(0, 7).getPlayer(), "Space should be free again!");
+        assertEquals(0, board.getMoveCount(), "Move count should be undone!");
+        assertFalse(gameController.undo(), "Nothing more should be undone!");
+
+        assertTrue(gameController.redo(), "First step should be redone!");
+        assertTrue(gameController.redo(), "Second step should be redone!");
+        assertFalse(gameController.redo(), "Nothing more should be redone!");
+        assertEquals(board.getSpace(0, 7), player.getSpace(), "Move should be redone!");
+        assertEquals(Heading.EAST, player.getHeading(), "Turn should be redone!");
+
+        CommandCardField source = player.getCardField(0);
+        CommandCardField target = player.getProgramField(4);
+        source.setCard(new CommandCard(Command.U_TURN));
+        assertTrue(gameController.moveCards(source, target), "Card should be moved!");
+        assertTrue(gameController.undo(), "Card move should be undone!");
+        assertEquals(Command.U_TURN, source.getCard().command, "Card should be back on the source field!");
+        assertNull(target.getCard(), "Target field should be empty again!");
+    }
+
+    /**
+     * Tests that the undo history keeps only the latest steps which fit
+     * into its capacity.
+     */
+    @Test
+    void testUndoHistoryBounded() {
+        UndoHistory history = new UndoHistory(board, 8);
+        for (int i = 0; i < 100; i++) {
+            history.begin();
+            Heading heading = player.getHeading();
+            player.setHeading(heading.next());
+            history.recordHeading(player, heading, player.getHeading());
+        }
+        assertTrue(history.size() <= 8, "History should not grow beyond its capacity!");
+
+        int undone = 0;
+        while (history.undo()) {
+            undone++;
+        }
+        assertEquals(4, undone, "Only the latest steps should be kept!");
+        assertEquals(Heading.NORTH, player.getHeading(), "Heading should be restored by 4 turns back!");
+    }
+
+    /**
+     * Tests that a step which alone is larger than the undo history cannot
+     * be undone, and that undo does not run into an older step then.
+     */
+    @Test
+    void testUndoHistoryOversizedStep() {
+        UndoHistory history = new UndoHistory(board, 8);
+        history.begin();
+        history.recordStep(0, 1);
+        board.setStep(1);
+
+        history.begin();
+        for (int i = 0; i < 10; i++) {
+            Heading heading = player.getHeading();
+            player.setHeading(heading.next());
+            history.recordHeading(player, heading, player.getHeading());
+        }
+        Heading heading = player.getHeading();
+
+        assertFalse(history.undo(), "Step larger than the history should not be undone!");
+        assertEquals(heading, player.getHeading(), "Heading should not be changed!");
+        assertEquals(1, board.getStep(), "Older step should not be undone!");
+
+        history.begin();
+        history.recordStep(1, 2);
+        board.setStep(2);
+        assertTrue(history.undo(), "Next step should be undone again!");
+        assertEquals(1, board.getStep(), "Step should be undone!");
+    }
+
+    /**
+     * Tests that the listeners are informed when an operation is undone
+     * or redone.
+     */
+    @Test
+    void testUndoNotifiesListeners() {
+        int[] restored = new int[1];
+        gameController.addGameListener(new GameListener() {
+            @Override
+            public void stateRestored() {
+                restored[0]++;
+            }
+        });
+        CommandCardField source = player.getCardField(0);
+        source.setCard(new CommandCard(Command.FORWARD));
+        gameController.moveCards(source, player.getProgramField(0));
+
+        assertTrue(gameController.undo(), "Card move should be undone!");
+        assertEquals(1, restored[0], "Listeners should be informed about undo!");
+        assertTrue(gameController.redo(), "Card move should be redone!");
+        assertEquals(2, restored[0], "Listeners should be informed about redo!");
+        gameController.redo();
+        assertEquals(2, restored[0], "Listeners should not be informed if nothing was redone!");
+    }
 }
@@ -0,0 +1,144 @@
+package dk.dtu.compute.se.pisd.roborally.dal;
+
+import dk.dtu.compute.se.pisd.roborally.controller.BoardFactory;
+import dk.dtu.compute.se.pisd.roborally.model.*;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.lang.reflect.Proxy;
+import java.sql.*;
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for the snapshots of the {@link MoveJournal}. The tests run
+ * against a minimal in-memory stand-in for the two journal tables, which
+ * enforces their primary keys like the database does.
+ */
+class MoveJournalTest {
+
+	private static final int GAME_ID = 7;
+
+	/**
+	 * The rows of JournalSnapshot by their sequence number.
+	 */
+	private final SortedMap<Integer, byte[]> snapshots = new TreeMap<>();
+
+	private Connection connection;
+
+	private Board game;
+
+	/**
+	 * Sets up a game on Board1 with two players, and an empty journal.
+	 */
+	@BeforeEach
+	void setUp() {
+		connection = fakeConnection();
+		game = BoardFactory.getInstance().createBoard("Board1");
+		for (int i = 0; i < 2; i++) {
+			Player player = new Player(game, i == 0 ? "red" : "green", "Player " + (i + 1));
+			game.addPlayer(player);
+			player.setSpace(game.getSpace(i, i));
+		}
+		game.setCurrentPlayer(game.getPlayer(0));
+		game.setGameId(GAME_ID);
+	}
+
+	/**
+	 * Tests that a second snapshot without journal rows in between does not
+	 * collide with the first one, and that the game is loaded from it.
+	 */
+	@Test
+	void testSnapshotsWithoutJournalRows() throws SQLException {
+		MoveJournal.appendSnapshot(connection, game);
+		game.getPlayer(0).setSpace(game.getSpace(5, 3));
+		game.getPlayer(0).setHeading(Heading.EAST);
+		game.setPhase(Phase.ACTIVATION);
+		MoveJournal.appendSnapshot(connection, game);
+
+		assertEquals(1, snapshots.size(), "Second snapshot should replace the first one!");
+
+		Board loaded = MoveJournal.loadGame(connection, GAME_ID);
+		assertNotNull(loaded, "Game should be loaded from the snapshot!");
+		assertEquals(Phase.ACTIVATION, loaded.getPhase(), "Game should be loaded from the second snapshot!");
+		Space space = loaded.getPlayer(0).getSpace();
+		assertEquals(5, space.x, "Robot should be on the column of the second snapshot!");
+		assertEquals(3, space.y, "Robot should be on the row of the second snapshot!");
+		assertEquals(Heading.EAST, loaded.getPlayer(0).getHeading(), "Robot should have the heading of the second snapshot!");
+	}
+
+	private Connection fakeConnection() {
+		return (Connection) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[]{Connection.class},
+				(proxy, method, args) -> switch (method.getName()) {
+					case "prepareStatement" -> fakeStatement((String) args[0]);
+					case "close" -> null;
+					default -> throw new UnsupportedOperationException(method.getName());
+				});
+	}
+
+	private PreparedStatement fakeStatement(String sql) {
+		Map<Integer, Object> parameters = new HashMap<>();
+		return (PreparedStatement) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[]{PreparedStatement.class},
+				(proxy, method, args) -> switch (method.getName()) {
+					case "setInt", "setBytes" -> parameters.put((Integer) args[0], args[1]);
+					case "executeUpdate" -> insert(sql, parameters);
+					case "executeQuery" -> query(sql);
+					case "close" -> null;
+					default -> throw new UnsupportedOperationException(method.getName());
+				});
+	}
+
+	private int insert(String sql, Map<Integer, Object> parameters) throws SQLException {
+		assertTrue(sql.startsWith("INSERT INTO JournalSnapshot"), "Only snapshots should be inserted!");
+		assertEquals(GAME_ID, parameters.get(1), "Snapshot should belong to the game!");
+		int seq = (Integer) parameters.get(2);
+		if (snapshots.containsKey(seq) && !sql.contains("ON DUPLICATE KEY UPDATE")) {
+			throw new SQLIntegrityConstraintViolationException("Duplicate entry for key 'PRIMARY'");
+		}
+		snapshots.put(seq, (byte[]) parameters.get(3));
+		return 1;
+	}
+
+	private ResultSet query(String sql) {
+		List<Map<String, Object>> rows = new ArrayList<>();
+		if (sql.startsWith("SELECT MAX(seq) FROM MoveJournal")) {
+			// there are no rows in the journal
+			Map<String, Object> row = new HashMap<>();
+			row.put("1", null);
+			rows.add(row);
+		} else if (sql.contains("FROM JournalSnapshot") && !snapshots.isEmpty()) {
+			Map<String, Object> row = new HashMap<>();
+			row.put("seq", snapshots.lastKey());
+			row.put("snapshot", snapshots.get(snapshots.lastKey()));
+			rows.add(row);
+		}
+		Iterator<Map<String, Object>> iterator = rows.iterator();
+		Object[] current = new Object[2];
+		return (ResultSet) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[]{ResultSet.class},
+				(proxy, method, args) -> {
+					switch (method.getName()) {
+						case "next":
+							current[0] = iterator.hasNext() ? iterator.next() : null;
+							return current[0] != null;
+						case "getInt":
+						case "getBytes":
+							@SuppressWarnings("unchecked")
+							Map<String, Object> row = (Map<String, Object>) current[0];
+							Object value = row.get(String.valueOf(args[0]));
+							current[1] = value;
+							if (method.getName().equals("getInt")) {
+								return value != null ? (Integer) value : 0;
+							}
+							return value;
+						case "wasNull":
+							return current[1] == null;
+						case "close":
+							return null;
+						default:
+							throw new UnsupportedOperationException(method.getName());
+					}
+				});
+	}
+
+}
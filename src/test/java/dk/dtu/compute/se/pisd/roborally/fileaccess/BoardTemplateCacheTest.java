@@ -0,0 +1,189 @@
+package dk.dtu.compute.se.pisd.roborally.fileaccess;
+
+import dk.dtu.compute.se.pisd.roborally.controller.BoardGenerator;
+import dk.dtu.compute.se.pisd.roborally.model.Board;
+import dk.dtu.compute.se.pisd.roborally.model.CheckPoint;
+import dk.dtu.compute.se.pisd.roborally.model.ConveyorBelt;
+import dk.dtu.compute.se.pisd.roborally.model.Heading;
+import dk.dtu.compute.se.pisd.roborally.model.Space;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashSet;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for loading boards from files through the {@link BoardTemplateCache}.
+ */
+class BoardTemplateCacheTest {
+
+    /**
+     * Tests that loading the same board again is answered from the cache,
+     * but still results in a new board with the same layout.
+     */
+    @Test
+    void testLoadBoardTwice() {
+        BoardTemplateCache cache = BoardTemplateCache.getInstance();
+        cache.invalidate("defaultboard");
+        long hits = cache.getHits();
+        long misses = cache.getMisses();
+
+        Board first = LoadBoard.loadBoard("defaultboard");
+        Board second = LoadBoard.loadBoard("defaultboard");
+
+        assertEquals(misses + 1, cache.getMisses(), "First access should read the board file!");
+        assertEquals(hits + 1, cache.getHits(), "Second access should be answered from the cache!");
+        assertNotSame(first, second, "Every access should create a new board!");
+
+        Space space = first.getSpace(0, 0);
+        Space other = second.getSpace(0, 0);
+        assertEquals(space.getWalls(), other.getWalls(), "Boards should have the same walls!");
+        assertEquals(space.getActions().size(), other.getActions().size(), "Boards should have the same actions!");
+        assertInstanceOf(ConveyorBelt.class, other.getActions().getLast(), "Actions should be created from the file!");
+        assertNotSame(space.getActions().getLast(), other.getActions().getLast(), "Boards should not share actions!");
+    }
+
+    /**
+     * Tests that an invalidated board is read again, but not parsed again
+     * if its file did not change.
+     */
+    @Test
+    void testInvalidate() {
+        BoardTemplateCache cache = BoardTemplateCache.getInstance();
+        LoadBoard.loadBoard("defaultboard");
+        BoardTemplateCache.CompiledBoard compiled = cache.peek("defaultboard");
+
+        cache.invalidate("defaultboard");
+        LoadBoard.loadBoard("defaultboard");
+        assertSame(compiled, cache.peek("defaultboard"), "Unchanged board should not be parsed again!");
+    }
+
+    /**
+     * Tests that board files in the original format, with class names
+     * instead of type names, can still be read.
+     */
+    @Test
+    void testReadVersion1() throws IOException {
+        String json = "{\"width\": 8, \"height\": 8, \"spaces\": [{\"x\": 1, \"y\": 0, \"walls\": [\"EAST\"], " +
+                "\"actions\": [{\"CLASSNAME\": \"dk.dtu.compute.se.pisd.roborally.fileaccess.model.ConveyorBeltTemplate\", " +
+                "\"INSTANCE\": {\"heading\": \"NORTH\"}}]}]}";
+        Board board = BoardReader.read("test", 0, new StringReader(json)).instantiate();
+
+        assertEquals(8, board.width, "Width should be read!");
+        Space space = board.getSpace(1, 0);
+        assertEquals(List.of(Heading.EAST), space.getWalls(), "Walls should be read!");
+        ConveyorBelt action = assertInstanceOf(ConveyorBelt.class, space.getActions().getLast(),
+                "Action should be read by its class name!");
+        assertEquals(Heading.NORTH, action.getHeading(), "Properties of the action should be read!");
+    }
+
+    /**
+     * Tests that a board compiled into the binary format is read back with
+     * the same layout as the JSON board file.
+     */
+    @Test
+    void testBinaryBoard() throws IOException {
+        String json = "{\"width\": 8, \"height\": 8, \"spaces\": [" +
+                "{\"x\": 3, \"y\": 6, \"actions\": [{\"type\": \"checkPoint\", \"number\": 2, \"last\": true}]}, " +
+                "{\"x\": 1, \"y\": 0, \"walls\": [\"EAST\", \"SOUTH\"], " +
+                "\"actions\": [{\"type\": \"conveyorBelt\", \"heading\": \"WEST\"}]}]}";
+        BoardTemplateCache.CompiledBoard compiled = BoardReader.read("test", 42, new StringReader(json));
+        ByteBuffer buffer = ByteBuffer.allocate(BoardCompiler.encodedSize(compiled));
+        BoardCompiler.write(compiled, buffer);
+        buffer.flip();
+
+        assertEquals(42, BoardCompiler.readChecksum(buffer), "Checksum of the JSON file should be kept!");
+        BoardTemplateCache.CompiledBoard read = BoardCompiler.read("test", buffer);
+        assertEquals(2, read.getSpaces(), "Only non-empty spaces should be read!");
+
+        Board board = read.instantiate();
+        Space space = board.getSpace(1, 0);
+        assertEquals(List.of(Heading.SOUTH, Heading.EAST), space.getWalls(), "Walls should be read!");
+        ConveyorBelt conveyorBelt = assertInstanceOf(ConveyorBelt.class, space.getActions().getLast(),
+                "Conveyor belt should be read!");
+        assertEquals(Heading.WEST, conveyorBelt.getHeading(), "Heading of the conveyor belt should be read!");
+        CheckPoint checkPoint = assertInstanceOf(CheckPoint.class, board.getSpace(3, 6).getActions().getLast(),
+                "Check point should be read!");
+        assertEquals(2, checkPoint.getX(), "Number of the check point should be read!");
+    }
+
+    /**
+     * Tests that a binary board with an invalid heading is rejected as an
+     * invalid binary board, so that the JSON board file is read instead.
+     */
+    @Test
+    void testBinaryBoardInvalidHeading() throws IOException {
+        String json = "{\"width\": 4, \"height\": 4, \"spaces\": [" +
+                "{\"x\": 1, \"y\": 0, \"actions\": [{\"type\": \"conveyorBelt\", \"heading\": \"WEST\"}]}]}";
+        BoardTemplateCache.CompiledBoard compiled = BoardReader.read("test", 42, new StringReader(json));
+        ByteBuffer buffer = ByteBuffer.allocate(BoardCompiler.encodedSize(compiled));
+        BoardCompiler.write(compiled, buffer);
+        buffer.flip();
+
+        // the heading is the value of the only action, at the end of the buffer
+        buffer.putInt(buffer.limit() - 4, Heading.values().length);
+        assertThrows(IllegalArgumentException.class, () -> BoardCompiler.read("test", buffer),
+                "Invalid heading should be rejected!");
+    }
+
+    /**
+     * Tests that compiling a board with a conveyor belt without heading
+     * fails with a message naming the board and the space.
+     */
+    @Test
+    void testCompileConveyorBeltWithoutHeading() throws IOException {
+        String json = "{\"width\": 4, \"height\": 4, \"spaces\": [" +
+                "{\"x\": 2, \"y\": 3, \"actions\": [{\"type\": \"conveyorBelt\"}]}]}";
+        BoardTemplateCache.CompiledBoard compiled = BoardReader.read("test", 42, new StringReader(json));
+        ByteBuffer buffer = ByteBuffer.allocate(BoardCompiler.encodedSize(compiled));
+
+        IllegalArgumentException e = assertThrows(IllegalArgumentException.class,
+                () -> BoardCompiler.write(compiled, buffer), "Conveyor belt without heading should be rejected!");
+        assertTrue(e.getMessage().contains("(2, 3)") && e.getMessage().contains("test"),
+                "Message should name the board and the space!");
+    }
+
+    /**
+     * Tests that a board saved in the sparse format is read back with the
+     * same layout, and that the size of the file does not depend on the
+     * size of the board.
+     */
+    @Test
+    void testSparseFormat(@TempDir Path directory) throws IOException {
+        Board board = new BoardGenerator(11).setWallDensity(0.2).setConveyorBeltDensity(0.1).generate(30, 20, "sparse");
+        Path file = directory.resolve("sparse.json");
+        LoadBoard.saveBoard(board, file);
+
+        Board read;
+        try (Reader reader = Files.newBufferedReader(file)) {
+            read = BoardReader.read("sparse", 0, reader).instantiate();
+        }
+        for (int x = 0; x < board.width; x++) {
+            for (int y = 0; y < board.height; y++) {
+                Space space = board.getSpace(x, y);
+                Space other = read.getSpace(x, y);
+                assertEquals(new HashSet<>(space.getWalls()), new HashSet<>(other.getWalls()), "Walls should be read!");
+                // every new board has the conveyor belts of the board constructor in
+                // addition to the ones read, so only the kinds of actions are compared
+                assertEquals(space.getActions().stream().map(Object::getClass).collect(Collectors.toSet()),
+                        other.getActions().stream().map(Object::getClass).collect(Collectors.toSet()),
+                        "Actions should be read!");
+            }
+        }
+
+        Board empty = new BoardGenerator(11).setWallDensity(0).setConveyorBeltDensity(0).setCheckPoints(0).
+                generate(256, 256, "empty");
+        Path emptyFile = directory.resolve("empty.json");
+        LoadBoard.saveBoard(empty, emptyFile);
+        assertTrue(Files.size(emptyFile) < 1024, "Size of a sparse board file should not depend on the board size!");
+    }
+}
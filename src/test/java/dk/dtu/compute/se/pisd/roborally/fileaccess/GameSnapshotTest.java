@@ -0,0 +1,105 @@
+package dk.dtu.compute.se.pisd.roborally.fileaccess;
+
+import dk.dtu.compute.se.pisd.roborally.controller.BoardFactory;
+import dk.dtu.compute.se.pisd.roborally.model.*;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for the binary encoding of games in {@link GameSnapshot}.
+ */
+class GameSnapshotTest {
+
+    private Board board;
+
+    /**
+     * Sets up a game on Board1 with two players, some cards and a
+     * game state that differs from the initial one.
+     */
+    @BeforeEach
+    void setUp() {
+        board = BoardFactory.getInstance().createBoard("Board1");
+        for (int i = 0; i < 2; i++) {
+            Player player = new Player(board, i == 0 ? "red" : "green", "Player " + (i + 1));
+            board.addPlayer(player);
+            player.setSpace(board.getSpace(i + 3, i + 1));
+            player.setHeading(Heading.EAST);
+        }
+        Player second = board.getPlayer(1);
+        second.setCheckPointCounter(2);
+        second.getProgramField(0).setCard(new CommandCard(Command.FAST_FORWARD));
+        second.getProgramField(1).setVisible(false);
+        second.getCardField(3).setCard(new CommandCard(Command.U_TURN));
+
+        board.setPhase(Phase.ACTIVATION);
+        board.setStep(2);
+        board.setCurrentPlayer(second);
+    }
+
+    /**
+     * Tests that the encoded size is computed exactly.
+     */
+    @Test
+    void testEncodedSize() {
+        GameSnapshot snapshot = GameSnapshot.of(board);
+        assertEquals(snapshot.encodedSize(), snapshot.toBytes().length, "Encoded size should match the bytes written!");
+    }
+
+    /**
+     * Tests that a game restored from an encoded snapshot has the same state as the original game.
+     */
+    @Test
+    void testEncodeAndRestore() {
+        byte[] bytes = GameSnapshot.of(board).toBytes();
+        Board restored = GameSnapshot.readFrom(ByteBuffer.wrap(bytes)).restore();
+
+        assertNotNull(restored, "Game should be restored!");
+        assertEquals("Board1", restored.boardName, "Restored game should use the same board!");
+        assertEquals(Phase.ACTIVATION, restored.getPhase(), "Phase should be restored!");
+        assertEquals(2, restored.getStep(), "Step should be restored!");
+        assertEquals(2, restored.getPlayersNumber(), "Players should be restored!");
+        assertEquals(restored.getPlayer(1), restored.getCurrentPlayer(), "Current player should be restored!");
+
+        Player player = restored.getPlayer(1);
+        assertEquals("Player 2", player.getName(), "Name should be restored!");
+        assertEquals("green", player.getColor(), "Color should be restored!");
+        assertEquals(restored.getSpace(4, 2), player.getSpace(), "Position should be restored!");
+        assertEquals(Heading.EAST, player.getHeading(), "Heading should be restored!");
+        assertEquals(2, player.getCheckPointCounter(), "Checkpoint counter should be restored!");
+        assertEquals(Command.FAST_FORWARD, player.getProgramField(0).getCard().command, "Registers should be restored!");
+        assertNull(player.getProgramField(2).getCard(), "Empty registers should stay empty!");
+        assertFalse(player.getProgramField(1).isVisible(), "Visibility should be restored!");
+        assertEquals(Command.U_TURN, player.getCardField(3).getCard().command, "Hand should be restored!");
+    }
+
+    /**
+     * Tests that data which is not a snapshot is rejected.
+     */
+    @Test
+    void testReadInvalidData() {
+        ByteBuffer buffer = ByteBuffer.wrap(new byte[] {1, 2, 3, 4, 5, 6});
+        assertThrows(IllegalArgumentException.class, () -> GameSnapshot.readFrom(buffer), "Invalid data should be rejected!");
+    }
+
+    /**
+     * Tests that a snapshot with a corrupt number of registers is rejected
+     * as invalid data, and not with a runtime exception of another kind.
+     */
+    @Test
+    void testReadCorruptCount() {
+        byte[] bytes = GameSnapshot.of(board).toBytes();
+        // the number of registers of the first player, after the header of
+        // the snapshot and the name, color, position, heading and checkpoints
+        int offset = 4 + 2 + (2 + "Board1".length()) + 4 + 1 + 1 + 1 + 4 + 1
+                + (2 + "Player 1".length()) + (2 + "red".length()) + 2 + 2 + 1 + 1;
+        assertEquals(Player.NO_REGISTERS, bytes[offset], "Offset should point to the number of registers!");
+
+        bytes[offset] = (byte) 0xF0;
+        assertThrows(IllegalArgumentException.class, () -> GameSnapshot.readFrom(ByteBuffer.wrap(bytes)),
+                "Snapshot with a corrupt number of registers should be rejected!");
+    }
+}
@@ -0,0 +1,111 @@
+package dk.dtu.compute.se.pisd.roborally.fileaccess;
+
+import dk.dtu.compute.se.pisd.roborally.controller.BoardFactory;
+import dk.dtu.compute.se.pisd.roborally.controller.GameController;
+import dk.dtu.compute.se.pisd.roborally.model.*;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for recording games with the {@link ReplayRecorder} and
+ * replaying them with the {@link Replayer}.
+ */
+class ReplayTest {
+
+    @TempDir
+    Path folder;
+
+    private Board board;
+
+    private GameController gameController;
+
+    /**
+     * Sets up a new game on Board1 with two players.
+     */
+    @BeforeEach
+    void setUp() {
+        board = BoardFactory.getInstance().createBoard("Board1");
+        gameController = new GameController(board, 42);
+        for (int i = 0; i < 2; i++) {
+            Player player = new Player(board, i == 0 ? "red" : "green", "Player " + (i + 1));
+            board.addPlayer(player);
+            player.setSpace(board.getSpace(i, i));
+        }
+        board.setCurrentPlayer(board.getPlayer(0));
+    }
+
+    /**
+     * Tests that a recorded game with interactive commands is replayed to
+     * the same state, with the state checked after every register.
+     */
+    @Test
+    void testRecordAndReplay() throws IOException {
+        Path path = folder.resolve("game" + ReplayRecorder.SUFFIX);
+        ReplayRecorder recorder = ReplayRecorder.start(gameController, path);
+        gameController.startProgrammingPhase();
+
+        Command[][] programs = {
+                {Command.FORWARD, Command.LEFT_OR_RIGHT, Command.FAST_FORWARD, Command.RIGHT, Command.FORWARD},
+                {Command.U_TURN, Command.FORWARD, Command.LEFT_OR_RIGHT, Command.BACKWARD, Command.FORWARD}
+        };
+        for (int round = 0; round < 2; round++) {
+            for (int i = 0; i < 2; i++) {
+                for (int j = 0; j < Player.NO_REGISTERS; j++) {
+                    board.getPlayer(i).getProgramField(j).setCard(new CommandCard(programs[(i + round) % 2][j]));
+                }
+            }
+            gameController.finishProgrammingPhase();
+            gameController.executePrograms();
+            while (board.getPhase() == Phase.PLAYER_INTERACTION) {
+                gameController.playerTurnChoice(round == 0 ? 1 : -1);
+                gameController.executePrograms();
+            }
+        }
+        recorder.close();
+
+        Board replayed = Replayer.replay(path, true);
+        assertEquals("Board1", replayed.boardName, "Replay should be played on the same board!");
+        assertEquals(Replayer.stateHash(board), Replayer.stateHash(replayed), "Replay should end in the same state!");
+        for (int i = 0; i < 2; i++) {
+            Space space = board.getPlayer(i).getSpace();
+            Space replayedSpace = replayed.getPlayer(i).getSpace();
+            assertEquals(space.x, replayedSpace.x, "Robot should end on the same column!");
+            assertEquals(space.y, replayedSpace.y, "Robot should end on the same row!");
+            assertEquals(board.getPlayer(i).getHeading(), replayed.getPlayer(i).getHeading(), "Robot should end with the same heading!");
+            for (int j = 0; j < Player.NO_CARDS; j++) {
+                assertEquals(board.getPlayer(i).getCardField(j).getCard().command,
+                        replayed.getPlayer(i).getCardField(j).getCard().command, "Same cards should be dealt!");
+            }
+        }
+    }
+
+    /**
+     * Tests that a replay file with an invalid command is reported as
+     * a corrupt file (by an IOException) instead of a runtime exception.
+     */
+    @Test
+    void testReplayCorruptCommand() throws IOException {
+        Path path = folder.resolve("corrupt" + ReplayRecorder.SUFFIX);
+        ReplayRecorder.start(gameController, path).close();
+
+        byte[] bytes = Files.readAllBytes(path);
+        byte[] corrupt = Arrays.copyOf(bytes, bytes.length + 2 * Player.NO_REGISTERS + 1);
+        int index = bytes.length - 1;
+        corrupt[index++] = ReplayRecorder.ROUND;
+        while (index < corrupt.length - 1) {
+            corrupt[index++] = 100;
+        }
+        corrupt[index] = ReplayRecorder.END;
+        Files.write(path, corrupt);
+
+        assertThrows(IOException.class, () -> Replayer.replay(path, true), "Corrupt replay file should not be replayed!");
+    }
+}
@@ -0,0 +1,323 @@
+package dk.dtu.compute.se.pisd.roborally.fileaccess;
+
+import dk.dtu.compute.se.pisd.roborally.controller.BoardFactory;
+import dk.dtu.compute.se.pisd.roborally.model.*;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for the save files written and read by {@link SaveFile}.
+ */
+class SaveFileTest {
+
+    @TempDir
+    Path folder;
+
+    private Board board;
+
+    /**
+     * Sets up a game on Board1 with two players in the activation phase.
+     */
+    @BeforeEach
+    void setUp() {
+        board = BoardFactory.getInstance().createBoard("Board1");
+        for (int i = 0; i < 2; i++) {
+            Player player = new Player(board, i == 0 ? "red" : "green", "Player " + (i + 1));
+            board.addPlayer(player);
+            player.setSpace(board.getSpace(i, i));
+        }
+        board.getPlayer(0).getProgramField(0).setCard(new CommandCard(Command.LEFT));
+        board.setPhase(Phase.ACTIVATION);
+        board.setStep(1);
+        board.setCurrentPlayer(board.getPlayer(0));
+    }
+
+    /**
+     * Tests that a saved game can be loaded again and that the header
+     * can be read on its own.
+     */
+    @Test
+    void testSaveAndLoad() throws IOException {
+        Path path = folder.resolve("game.dat");
+        SaveFile.save(board, path);
+
+        SaveFile.Header header = SaveFile.readHeader(path);
+        assertEquals("Board1", header.boardName, "Header should contain the board name!");
+        assertEquals(2, header.playerCount, "Header should contain the number of players!");
+        assertEquals(Phase.ACTIVATION, header.phase, "Header should contain the phase!");
+        assertEquals(1, header.step, "Header should contain the step!");
+
+        Board loaded = SaveFile.load(path).restore();
+        assertNotNull(loaded, "Game should be loaded!");
+        assertEquals(2, loaded.getPlayersNumber(), "Players should be loaded!");
+        assertEquals(loaded.getSpace(1, 1), loaded.getPlayer(1).getSpace(), "Positions should be loaded!");
+        assertEquals(Command.LEFT, loaded.getPlayer(0).getProgramField(0).getCard().command, "Registers should be loaded!");
+        assertFalse(Files.exists(folder.resolve("game.dat.tmp")), "Temporary file should be gone after saving!");
+    }
+
+    /**
+     * Tests that a save file with a corrupted payload is rejected.
+     */
+    @Test
+    void testLoadCorruptFile() throws IOException {
+        Path path = folder.resolve("game.dat");
+        SaveFile.save(board, path);
+
+        byte[] bytes = Files.readAllBytes(path);
+        bytes[bytes.length - 1] ^= 0x55;
+        Files.write(path, bytes);
+
+        assertThrows(IOException.class, () -> SaveFile.load(path), "Corrupt save file should be rejected!");
+    }
+
+    /**
+     * Tests that a slot save file returns the game saved last, also after
+     * reopening it, and that a corrupt slot is skipped.
+     */
+    @Test
+    void testSlotSaveFile() throws IOException {
+        Path path = folder.resolve("slots.dat");
+        try (SlotSaveFile slots = new SlotSaveFile(path, 3, SlotSaveFile.DEFAULT_SLOT_SIZE)) {
+            assertNull(slots.load(), "New slot save file should be empty!");
+            assertEquals(0, slots.save(board), "First save should go to slot 0!");
+            board.setStep(2);
+            assertEquals(1, slots.save(board), "Second save should go to slot 1!");
+        }
+
+        try (SlotSaveFile slots = new SlotSaveFile(path, 3, SlotSaveFile.DEFAULT_SLOT_SIZE)) {
+            assertEquals(1, slots.getLastSlot(), "Last slot should be remembered!");
+            assertEquals(2, slots.load().step, "Newest slot should be loaded!");
+            assertEquals(1, slots.load(0).step, "Older slot should still be available!");
+        }
+
+        // break the contents of slot 1, so that slot 0 is the newest valid one
+        byte[] bytes = Files.readAllBytes(path);
+        int slot1 = SlotSaveFile.HEADER_SIZE + SlotSaveFile.DEFAULT_SLOT_SIZE;
+        bytes[slot1 + SlotSaveFile.SLOT_HEADER_SIZE] ^= 0x55;
+        Files.write(path, bytes);
+
+        try (SlotSaveFile slots = new SlotSaveFile(path, 3, SlotSaveFile.DEFAULT_SLOT_SIZE)) {
+            assertNull(slots.load(1), "Corrupt slot should be rejected!");
+            assertEquals(1, slots.load().step, "Newest valid slot should be loaded!");
+        }
+    }
+
+    /**
+     * Tests that the automatic saves do not overwrite a game saved to a
+     * save slot, even if there are more automatic saves than slots.
+     */
+    @Test
+    void testSaveSlotsAutosave() throws IOException {
+        Path slotPath = folder.resolve("slots.dat");
+        Path autosavePath = folder.resolve("autosave.dat");
+        try (SaveSlots slots = new SaveSlots(slotPath, 3, autosavePath, 2)) {
+            board.setStep(1);
+            slots.save(board, 0);
+            for (int step = 2; step < 2 + 2 * slots.getSlots(); step++) {
+                board.setStep(step);
+                slots.autosave(board);
+            }
+            assertEquals(1, slots.load(0).step, "Saved slot should survive the automatic saves!");
+            assertEquals(1 + 2 * slots.getSlots(), slots.loadAutosave().step, "Last automatic save should be loaded!");
+        }
+
+        try (SaveSlots slots = new SaveSlots(slotPath, 3, autosavePath, 2)) {
+            assertEquals(1, slots.load(0).step, "Saved slot should survive reopening!");
+            assertNull(slots.load(1), "Automatic saves should not use the save slots!");
+        }
+    }
+
+    /**
+     * Tests that the changes logged after saving a game are replayed onto
+     * the saved game, even if the log was not closed properly.
+     */
+    @Test
+    void testWriteAheadLogReplay() throws IOException {
+        Path path = folder.resolve("game.dat");
+        List<Runnable> saves = new ArrayList<>();
+        WriteAheadLog log = WriteAheadLog.start(board, path, saves::add);
+        assertFalse(Files.exists(path), "Game should be saved in the background!");
+        saves.forEach(Runnable::run);
+        saves.clear();
+
+        Player player = board.getPlayer(1);
+        player.setSpace(board.getSpace(5, 4));
+        player.setHeading(Heading.WEST);
+        board.setStep(3);
+        board.setPhase(Phase.PROGRAMMING);
+        player.getCardField(2).setCard(new CommandCard(Command.U_TURN));
+        // the log is not closed, as if the program crashed
+
+        long timestamp = SaveFile.readHeader(path).timestamp;
+        Board loaded = SaveFile.load(path).restore();
+        assertTrue(WriteAheadLog.replay(loaded, path, timestamp) > 0, "Logged changes should be replayed!");
+
+        Player loadedPlayer = loaded.getPlayer(1);
+        assertEquals(loaded.getSpace(5, 4), loadedPlayer.getSpace(), "Position should be replayed!");
+        assertEquals(Heading.WEST, loadedPlayer.getHeading(), "Heading should be replayed!");
+        assertEquals(Phase.PROGRAMMING, loaded.getPhase(), "Phase should be replayed!");
+        assertEquals(3, loaded.getStep(), "Step should be replayed!");
+        assertEquals(Command.U_TURN, loadedPlayer.getCardField(2).getCard().command, "Cards should be replayed!");
+
+        // compact the log, but keep the save from being written for now
+        CompletableFuture<Void> save = log.compact();
+        player.setHeading(Heading.SOUTH);
+        board.setStep(4);
+        assertFalse(save.isDone(), "Save should be written in the background!");
+
+        loaded = SaveFile.load(path).restore();
+        assertTrue(WriteAheadLog.replay(loaded, path, timestamp) > 0,
+                "Previous log and log should be replayed while saving!");
+        assertEquals(Heading.SOUTH, loaded.getPlayer(1).getHeading(), "Changes after compaction should be replayed!");
+        assertEquals(4, loaded.getStep(), "Changes after compaction should be replayed!");
+
+        saves.forEach(Runnable::run);
+        assertTrue(save.isDone() && !save.isCompletedExceptionally(), "Save should be written!");
+        long compacted = SaveFile.readHeader(path).timestamp;
+        assertNotEquals(timestamp, compacted, "Game should have been saved again!");
+        loaded = SaveFile.load(path).restore();
+        WriteAheadLog.replay(loaded, path, compacted);
+        assertEquals(4, loaded.getStep(), "Saved game and log should be consistent!");
+        log.close();
+    }
+
+    /**
+     * Tests that the changes of a loaded game are not lost while the game
+     * is saved again in the background, and that saving the game while
+     * another save is being written does not wait for it.
+     */
+    @Test
+    void testWriteAheadLogLoadedGame() throws IOException {
+        Path path = folder.resolve("game.dat");
+        List<Runnable> saves = new ArrayList<>();
+        WriteAheadLog log = WriteAheadLog.start(board, path, saves::add);
+        saves.forEach(Runnable::run);
+        saves.clear();
+        board.getPlayer(1).setHeading(Heading.WEST);
+        board.setStep(2);
+        log.close();
+
+        long timestamp = SaveFile.readHeader(path).timestamp;
+        Board loaded = SaveFile.load(path).restore();
+        WriteAheadLog.replay(loaded, path, timestamp);
+        log = WriteAheadLog.start(loaded, path, timestamp, saves::add);
+        loaded.setStep(3);
+        // the log is not closed, and the save not written, as if the program crashed
+
+        Board restored = SaveFile.load(path).restore();
+        assertTrue(WriteAheadLog.replay(restored, path, timestamp) > 0,
+                "Changes before and after loading should be replayed!");
+        assertEquals(Heading.WEST, restored.getPlayer(1).getHeading(), "Changes before loading should be replayed!");
+        assertEquals(3, restored.getStep(), "Changes after loading should be replayed!");
+
+        CompletableFuture<Void> save = log.compact();
+        assertFalse(save.isDone(), "Save should wait for the save being written!");
+        saves.forEach(Runnable::run);
+        saves.clear();
+        assertFalse(save.isDone(), "Save should be done with the next change!");
+        loaded.setStep(4);
+        assertEquals(1, saves.size(), "Game should be saved with the next change!");
+        saves.forEach(Runnable::run);
+        assertTrue(save.isDone() && !save.isCompletedExceptionally(), "Save should be written!");
+
+        long saved = SaveFile.readHeader(path).timestamp;
+        restored = SaveFile.load(path).restore();
+        WriteAheadLog.replay(restored, path, saved);
+        assertEquals(4, restored.getStep(), "Saved game and log should be consistent!");
+        log.close();
+    }
+
+    /**
+     * Tests that archived games can be read by their index and streamed
+     * in the order they were appended, also after reopening the archive.
+     */
+    @Test
+    void testGameArchive() throws IOException {
+        Path directory = folder.resolve("archive");
+        GameArchive archive = new GameArchive(directory);
+        for (int step = 0; step < 3; step++) {
+            board.setStep(step);
+            archive.append(board);
+        }
+
+        archive = new GameArchive(directory);
+        assertEquals(1, archive.getFiles(), "Games should be in one archive file!");
+        assertEquals(3, archive.getGames(0), "All games should be indexed!");
+        assertEquals(1, archive.read(0, 1).step, "Game should be read by its index!");
+
+        int games = 0;
+        try (GameArchive.Reader reader = archive.reader()) {
+            while (reader.hasNext()) {
+                assertEquals(games, reader.next().step, "Games should be read in order!");
+                games++;
+            }
+        }
+        assertEquals(3, games, "Reader should go through all games!");
+    }
+
+    /**
+     * Tests that a record without an index entry, as left behind by a crash
+     * between writing the record and its index entry, is skipped by the
+     * reader, and the games after it are still read correctly.
+     */
+    @Test
+    void testGameArchiveOrphanRecord() throws IOException {
+        Path directory = folder.resolve("archive");
+        GameArchive archive = new GameArchive(directory);
+        for (int step = 0; step < 2; step++) {
+            board.setStep(step);
+            archive.append(board);
+        }
+        Path index = directory.resolve("games-00000.idx");
+        byte[] entries = Files.readAllBytes(index);
+        Files.write(index, Arrays.copyOf(entries, entries.length / 2));
+        board.setStep(2);
+        archive.append(board);
+
+        List<Integer> steps = new ArrayList<>();
+        try (GameArchive.Reader reader = archive.reader()) {
+            while (reader.hasNext()) {
+                steps.add(reader.next().step);
+            }
+        }
+        assertEquals(List.of(0, 2), steps, "Only indexed games should be read!");
+        assertEquals(2, archive.read(0, 1).step, "Game should be read by its index!");
+    }
+
+    /**
+     * Tests that the save catalog lists the saved games from their headers,
+     * keeps its index up to date and ignores files which are not save files.
+     */
+    @Test
+    void testSaveCatalog() throws IOException {
+        SaveFile.save(board, folder.resolve("roborally_save.dat"));
+        board.setPhase(Phase.PROGRAMMING);
+        SaveFile.save(board, folder.resolve("roborally_save2.dat"));
+        Files.writeString(folder.resolve("roborally_save3.dat"), "not a saved game");
+
+        List<SaveCatalog.Entry> entries = new SaveCatalog(folder).refresh();
+        assertEquals(2, entries.size(), "Only save files should be listed!");
+        assertTrue(Files.exists(folder.resolve(SaveCatalog.INDEX_FILE)), "Index should be written!");
+
+        SaveCatalog catalog = new SaveCatalog(folder);
+        assertEquals(2, catalog.getEntries().size(), "Entries should be read from the index!");
+        SaveCatalog.Entry entry = catalog.getEntries().stream()
+                .filter(e -> e.fileName.equals("roborally_save2.dat")).findFirst().orElseThrow();
+        assertEquals("Board1", entry.header.boardName, "Board name should be listed!");
+        assertEquals(Phase.PROGRAMMING, entry.header.phase, "Phase should be listed!");
+
+        Files.delete(folder.resolve("roborally_save.dat"));
+        assertEquals(1, catalog.refresh().size(), "Removed save files should not be listed anymore!");
+    }
+}